@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Similarity data for the benchmarks: a clustered synthetic graph in which
+ * each term is linked to its DEGREE nearest terms, generated from a fixed
+ * seed so that every run and every fork measures the same input. Term "t0"
+ * is the reference term.
+ */
+package visualiser.distancemodel.benchmark;
+
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.io.SimilarityGraph;
+import visualiser.distancemodel.io.SyntheticSimilaritySource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	static final String REFERENCE = SyntheticSimilaritySource.REFERENCE;
+	private static final int DEGREE = 10;               //links per term
+	private static final int CLUSTERS = 10;
+	private static final long SEED = 20120101L;
+
+	/***********Constructors and Static Factory Methods*************/
+	private BenchmarkData() {
+		throw new AssertionError();                     //prevents construction
+	}
+
+	/**
+	 * @param terms number of terms
+	 * @return the similarity graph over the terms
+	 */
+	static SimilarityGraph graph(int terms) {
+		return source(terms).toGraph();
+	}
+
+	/**
+	 * @return a model of graph(terms), with random starting positions
+	 */
+	static Model model(int terms) {
+		return new Model(graph(terms), REFERENCE);
+	}
+
+	/**
+	 * Write graph(terms) as an "entry1 entry2 similarity" file
+	 */
+	static File file(int terms) throws IOException {
+		File file = File.createTempFile("benchmark-" + terms + "-", ".txt");
+		file.deleteOnExit();
+		source(terms).write(file);
+		return file;
+	}
+
+	/*********************Utility Methods***************************/
+	private static SyntheticSimilaritySource source(int terms) {
+		return new SyntheticSimilaritySource(terms).setDegree(DEGREE)
+		.setClusters(CLUSTERS).setSeed(SEED);
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Growing a field (Field.expandField), as Model.readData does each time the
+ * terms read outgrow it. Each call doubles a full field made just before it,
+ * outside the timing but not outside the GC profiler's allocation figures,
+ * which therefore include that field too. Kept apart from LoadBenchmark so
+ * that the per-call field isn't charged to the loads.
+ */
+package visualiser.distancemodel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import visualiser.distancemodel.Field;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to double the capacity of a field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FieldBenchmark {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	@Param({"100", "400", "1600"})
+	public int terms;
+
+	private Field field;                                //full, to be expanded
+
+	/************************Mutators*******************************/
+	@Setup(Level.Invocation)
+	public void setUp() {
+		field = new Field(terms);
+	}
+
+	/************************Benchmarks*****************************/
+	/**
+	 * Double a full field
+	 */
+	@Benchmark
+	public Field expandField() {
+		field.expandField(terms);
+		return field;
+	}
+}
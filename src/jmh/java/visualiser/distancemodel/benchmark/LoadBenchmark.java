@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Loading: building a Model from a similarity file (parsing, Model.readData
+ * and the field growing by Field.expandField as terms arrive), or from
+ * relations already in memory. Results are per load, in the average time
+ * mode, since a load of a large file takes far longer than a simulation step.
+ * FieldBenchmark times growing a field on its own.
+ */
+package visualiser.distancemodel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.io.FileSimilaritySource;
+import visualiser.distancemodel.io.SimilarityGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load similarity data into a model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	@Param({"100", "400", "1600"})
+	public int terms;
+
+	private File file;
+	private SimilarityGraph graph;
+
+	/************************Mutators*******************************/
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = BenchmarkData.file(terms);
+		graph = BenchmarkData.graph(terms);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	/************************Benchmarks*****************************/
+	/**
+	 * Parse a file into a model
+	 */
+	@Benchmark
+	public Model readFile() {
+		return new Model(new FileSimilaritySource(file), BenchmarkData
+		.REFERENCE);
+	}
+
+	/**
+	 * Build a model from relations already in memory, without parsing
+	 */
+	@Benchmark
+	public Model readGraph() {
+		return new Model(graph, BenchmarkData.REFERENCE);
+	}
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * End-to-end benchmark: whole layouts, loaded, explored from NUMBER_OF_STARTS
+ * random starts and solved by the headless control flow, over a matrix of
+ * datasets (the sample data and synthetic graphs of several sizes and degree
+ * distributions) and input configurations (all relations, or each term's
+ * TOP_K strongest). For every cell it records
+ *
+ *   load, starts, solve   wall-clock seconds of each phase
+ *   heap                  peak heap in MB (sum of the heap pools' peaks)
+ *   error                 the model's final summed distortion
+ *   stress                normalised stress, sqrt(sum (d - ideal)^2 /
+ *                         sum ideal^2) over all pairs of terms
+ *   recall                kNN recall: the share of each term's RECALL_K
+ *                         most similar terms that are among its RECALL_K
+ *                         nearest in the layout, averaged over the terms
+ *
+ * so a change that makes layouts faster can be seen not to make them worse.
+ * Stress and recall are always scored against a model of the dataset's full
+ * data, never the configuration's own input, so a sparsified layout is held
+ * to the relations it was not given too; recall ranks only the relations
+ * read, not those filled in at the least similarity.
+ * Starting positions are random, so each cell is run -repeat times and the
+ * median of each figure reported.
+ *
+ * Results are written as a tab separated file. Given a baseline (a results
+ * file from an earlier run on the same machine), each cell is compared with
+ * it and flagged if its total time grew by more than TIME_TOLERANCE, its
+ * stress by more than STRESS_TOLERANCE, or its recall fell by more than
+ * RECALL_TOLERANCE; the exit status is then 1, so a build can fail on it.
+ *
+ * Usage (from the jmh build, java -cp target/benchmarks.jar):
+ *     MacroBenchmark [-out file] [-baseline file] [-sizes 50,100,200]
+ *                    [-repeat n]
+ */
+package visualiser.distancemodel.benchmark;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.controlflow.HeadlessControlFlow;
+import visualiser.distancemodel.io.FileSimilaritySource;
+import visualiser.distancemodel.io.SimilaritySource;
+import visualiser.distancemodel.io.SparsifyingSource;
+import visualiser.distancemodel.io.SyntheticSimilaritySource;
+import visualiser.distancemodel.io.SyntheticSimilaritySource.Degrees;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+import static visualiser.distancemodel.GlobalParameters.Sparsify;
+
+/**
+ * Time and layout quality of complete layouts, against a baseline.
+ */
+public class MacroBenchmark {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final String SAMPLE = "sampledata/tim_lewis";
+	private static final String SAMPLE_TERM = "tim_lewis";
+	private static final int[] SIZES = {50, 100, 200};  //synthetic terms
+	private static final int DEGREE = 10;
+	private static final int CLUSTERS = 5;
+	private static final long SEED = 20120101L;
+	private static final int TOP_K = 5;                 //sparse configuration
+	private static final int RECALL_K = 10;
+	private static final double TIME_TOLERANCE = 0.25;  //relative
+	private static final double STRESS_TOLERANCE = 0.10;//relative
+	private static final double RECALL_TOLERANCE = 0.05;//absolute
+	private static final String HEADER = "dataset\tconfig\tterms\tload\t"
+	+ "starts\tsolve\ttotal\theap\terror\tstress\trecall";
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final List<Dataset> datasets = new ArrayList<Dataset>();
+	private int repeat = 3;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param sizes numbers of terms of the synthetic datasets
+	 */
+	public MacroBenchmark(int[] sizes) {
+		if (new File(SAMPLE).exists()) {
+			datasets.add(new Dataset("tim_lewis", SAMPLE_TERM,
+			new FileSimilaritySource(new File(SAMPLE))));
+		}
+		for (int size : sizes) {
+			datasets.add(synthetic("knn", size, Degrees.KNN, 0));
+			datasets.add(synthetic("clustered", size, Degrees.KNN, CLUSTERS));
+			datasets.add(synthetic("powerlaw", size, Degrees.POWER_LAW,
+			CLUSTERS));
+		}
+	}
+
+	/************************Mutators*******************************/
+	public void setRepeat(int r) {
+		repeat = Math.max(1, r);
+	}
+
+	/**
+	 * Run every dataset in every configuration
+	 *
+	 * @return one result per cell of the matrix
+	 */
+	public List<Result> run() {
+		List<Result> results = new ArrayList<Result>();
+		for (Dataset dataset : datasets) {
+			for (String config : new String[]{"full", "top" + TOP_K}) {
+				Result[] runs = new Result[repeat];
+				for (int r = 0; r < repeat; r++) {
+					runs[r] = run(dataset, config);
+				}
+				Result result = Result.median(runs);
+				System.out.println(result);
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	/*********************Utility Methods***************************/
+	private static Dataset synthetic(String name, int size, Degrees degrees,
+	                                 int clusters) {
+		return new Dataset(name + "-" + size, SyntheticSimilaritySource
+		.REFERENCE, new SyntheticSimilaritySource(size).setDegree(DEGREE)
+		.setDistribution(degrees).setClusters(clusters).setSeed(SEED)
+		.toGraph());
+	}
+
+	/**
+	 * One layout of a dataset, measured
+	 */
+	private Result run(Dataset dataset, String config) {
+		Model truth = dataset.getTruth();
+		SimilaritySource source = config.equals("full") ? dataset.source
+		: new SparsifyingSource(dataset.source, TOP_K, 0,
+		Sparsify.SYMMETRIC_UNION);
+		System.gc();
+		List<MemoryPoolMXBean> pools = heapPools();
+		for (MemoryPoolMXBean pool : pools) {
+			pool.resetPeakUsage();
+		}
+		long start = System.nanoTime();
+		TimedControlFlow flow = new TimedControlFlow(source,
+		dataset.reference);
+		long peak = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+		Result result = new Result(dataset.name, config);
+		Layout layout = flow.getLayout();
+		result.terms = layout.size();
+		result.load = (flow.loaded - start) / 1e9;
+		result.starts = (flow.explored - flow.loaded) / 1e9;
+		result.solve = (flow.solved - flow.explored) / 1e9;
+		result.heap = peak / (1024.0 * 1024.0);
+		result.error = layout.getError();
+		result.stress = stress(truth, layout);
+		result.recall = recall(truth, layout);
+		return result;
+	}
+
+	private static List<MemoryPoolMXBean> heapPools() {
+		List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory
+		.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heap.add(pool);
+			}
+		}
+		return heap;
+	}
+
+	/**
+	 * Normalised stress of a layout against a model's ideal distances. Terms
+	 * are matched by identifier; any the model lacks are left out.
+	 */
+	static double stress(Model truth, Layout layout) {
+		int[] index = truthIndices(truth, layout);
+		double residual = 0;
+		double total = 0;
+		for (int i = 0; i < layout.size(); i++) {
+			for (int j = i + 1; j < layout.size(); j++) {
+				if (index[i] < 0 || index[j] < 0) {
+					continue;
+				}
+				double ideal = truth.getIdealDistance(index[i], index[j]);
+				double difference = distance(layout, i, j) - ideal;
+				residual += difference * difference;
+				total += ideal * ideal;
+			}
+		}
+		return (total > 0) ? Math.sqrt(residual / total) : 0;
+	}
+
+	/**
+	 * Mean share of each term's RECALL_K most similar terms, by the
+	 * relations a model read, that are among its RECALL_K nearest in the
+	 * layout
+	 */
+	static double recall(Model truth, Layout layout) {
+		int n = layout.size();
+		int k = Math.min(RECALL_K, n - 1);
+		if (k <= 0) {
+			return 1;
+		}
+		int[] index = truthIndices(truth, layout);
+		int[] position = new int[truth.getNumberOfTerms()];  //in layout
+		Arrays.fill(position, -1);
+		for (int i = 0; i < n; i++) {
+			if (index[i] >= 0) {
+				position[index[i]] = i;
+			}
+		}
+		long[] keys = new long[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			int count = 0;
+			for (int j = 0; j < n; j++) {
+				if (j != i) {
+					keys[count++] = ((long) Float.floatToIntBits((float)
+					distance(layout, i, j)) << 32) | j;
+				}
+			}
+			Arrays.sort(keys, 0, count);
+			int[] similar = mostSimilar(truth, index[i], position, k);
+			int found = 0;
+			for (int s : similar) {
+				for (int m = 0; m < k; m++) {
+					if ((int) keys[m] == s) {
+						found++;
+						break;
+					}
+				}
+			}
+			sum += (similar.length == 0) ? 1 : (double) found / similar.length;
+		}
+		return sum / n;
+	}
+
+	/**
+	 * @return the model's index of each term of the layout, -1 if absent
+	 */
+	private static int[] truthIndices(Model truth, Layout layout) {
+		int[] index = new int[layout.size()];
+		for (int i = 0; i < index.length; i++) {
+			index[i] = truth.getReference(layout.getIdentifier(i));
+		}
+		return index;
+	}
+
+	/**
+	 * Up to k terms most similar to a term by the relations the model read,
+	 * as layout indices, leaving out any not in the layout
+	 *
+	 * @param t        the term's index in the model, or -1
+	 * @param position layout index of each of the model's terms, or -1
+	 */
+	private static int[] mostSimilar(Model truth, int t, int[] position,
+	                                 int k) {
+		if (t < 0) {
+			return new int[0];
+		}
+		int[] related = truth.getRelatedTerms(t, truth.getNumberOfTerms());
+		int[] similar = new int[k];
+		int count = 0;
+		for (int r = 0; r < related.length && count < k; r++) {
+			if (truth.isMeasured(t, related[r]) && position[related[r]] >= 0) {
+				similar[count++] = position[related[r]];
+			}
+		}
+		return Arrays.copyOf(similar, count);
+	}
+
+	private static double distance(Layout layout, int i, int j) {
+		double sum = 0;
+		for (int d = 0; d < DIMENSIONS; d++) {
+			double delta = layout.getCoord(i, d) - layout.getCoord(j, d);
+			sum += delta * delta;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Write results as a tab separated file with a header line
+	 */
+	static void write(List<Result> results, File file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write(HEADER + "\n");
+			for (Result result : results) {
+				out.write(result + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read a results file written by write()
+	 *
+	 * @return results by dataset and configuration
+	 */
+	static HashMap<String, Result> read(File file) throws IOException {
+		HashMap<String, Result> results = new HashMap<String, Result>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line = in.readLine();                //header
+			while ((line = in.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					Result result = Result.parse(line);
+					results.put(result.key(), result);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Report each result's change from its baseline
+	 *
+	 * @return number of regressions
+	 */
+	static int compare(List<Result> results,
+	                   HashMap<String, Result> baseline) {
+		int regressions = 0;
+		for (Result result : results) {
+			Result base = baseline.get(result.key());
+			if (base == null) {
+				System.out.println(result.key() + "\tno baseline");
+				continue;
+			}
+			List<String> problems = new ArrayList<String>();
+			if (result.total() > base.total() * (1 + TIME_TOLERANCE)) {
+				problems.add(String.format("time %.2fs -> %.2fs",
+				base.total(), result.total()));
+			}
+			if (result.stress > base.stress * (1 + STRESS_TOLERANCE)) {
+				problems.add(String.format("stress %.4f -> %.4f", base.stress,
+				result.stress));
+			}
+			if (result.recall < base.recall - RECALL_TOLERANCE) {
+				problems.add(String.format("recall %.3f -> %.3f", base.recall,
+				result.recall));
+			}
+			System.out.println(result.key() + "\t" + (problems.isEmpty()
+			? String.format("OK (time %+.0f%%, stress %+.1f%%, recall %+.3f)",
+			100 * (result.total() / base.total() - 1),
+			100 * (result.stress / base.stress - 1),
+			result.recall - base.recall) : "REGRESSION " + problems));
+			if (!problems.isEmpty()) {
+				regressions++;
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * A named input and its reference term
+	 */
+	private static class Dataset {
+
+		private final String name;
+		private final String reference;
+		private final SimilaritySource source;
+		private Model truth;                            //all of source
+
+		private Dataset(String name, String reference,
+		                SimilaritySource source) {
+			this.name = name;
+			this.reference = reference;
+			this.source = source;
+		}
+
+		/**
+		 * @return a model of all the dataset's relations, to score every
+		 * configuration's layouts against, built on first use
+		 */
+		private Model getTruth() {
+			if (truth == null) {
+				truth = new Model(source, reference);
+			}
+			return truth;
+		}
+	}
+
+	/**
+	 * The headless solve, noting the time at the end of each phase. The
+	 * whole layout runs in the superclass constructor, so these fields must
+	 * have no initialisers, which would run afterwards and reset them.
+	 */
+	private static class TimedControlFlow extends HeadlessControlFlow {
+
+		private long loaded;                            //end of loading
+		private long explored;                          //end of random starts
+		private long solved;                            //end of final solve
+
+		private TimedControlFlow(SimilaritySource source, String refTerm) {
+			super(source, refTerm);
+		}
+
+		@Override
+		protected double[][] findBestStartingPositions(Model model) {
+			loaded = System.nanoTime();
+			double[][] best = super.findBestStartingPositions(model);
+			explored = System.nanoTime();
+			return best;
+		}
+
+		@Override
+		protected void getSolution(Model model) {
+			super.getSolution(model);
+			solved = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Measurements of one cell of the matrix
+	 */
+	static class Result {
+
+		private final String dataset;
+		private final String config;
+		private int terms;
+		private double load;                            //seconds
+		private double starts;
+		private double solve;
+		private double heap;                            //MB
+		private double error;
+		private double stress;
+		private double recall;
+
+		private Result(String dataset, String config) {
+			this.dataset = dataset;
+			this.config = config;
+		}
+
+		private String key() {
+			return dataset + "\t" + config;
+		}
+
+		private double total() {
+			return load + starts + solve;
+		}
+
+		/**
+		 * Median of each figure over repeated runs of one cell
+		 */
+		private static Result median(Result[] runs) {
+			Result median = new Result(runs[0].dataset, runs[0].config);
+			median.terms = runs[0].terms;
+			double[] values = new double[runs.length];
+			for (int f = 0; f < 7; f++) {
+				for (int r = 0; r < runs.length; r++) {
+					values[r] = runs[r].get(f);
+				}
+				Arrays.sort(values);
+				median.set(f, values[values.length / 2]);
+			}
+			return median;
+		}
+
+		private double get(int figure) {
+			switch (figure) {
+				case 0:
+					return load;
+				case 1:
+					return starts;
+				case 2:
+					return solve;
+				case 3:
+					return heap;
+				case 4:
+					return error;
+				case 5:
+					return stress;
+				default:
+					return recall;
+			}
+		}
+
+		private void set(int figure, double value) {
+			switch (figure) {
+				case 0:
+					load = value;
+					break;
+				case 1:
+					starts = value;
+					break;
+				case 2:
+					solve = value;
+					break;
+				case 3:
+					heap = value;
+					break;
+				case 4:
+					error = value;
+					break;
+				case 5:
+					stress = value;
+					break;
+				default:
+					recall = value;
+			}
+		}
+
+		private static Result parse(String line) {
+			String[] fields = line.split("\t");
+			Result result = new Result(fields[0], fields[1]);
+			result.terms = Integer.parseInt(fields[2]);
+			result.load = Double.parseDouble(fields[3]);
+			result.starts = Double.parseDouble(fields[4]);
+			result.solve = Double.parseDouble(fields[5]);
+			result.heap = Double.parseDouble(fields[7]);
+			result.error = Double.parseDouble(fields[8]);
+			result.stress = Double.parseDouble(fields[9]);
+			result.recall = Double.parseDouble(fields[10]);
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s\t%s\t%d\t%.3f\t%.3f\t%.3f"
+			+ "\t%.3f\t%.1f\t%.2f\t%.5f\t%.4f", dataset, config, terms,
+			load, starts, solve, total(), heap, error, stress, recall);
+		}
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * @param args options (see above)
+	 */
+	public static void main(String[] args) throws IOException {
+		File out = new File("macro-benchmark.tsv");
+		File baseline = null;
+		int[] sizes = SIZES;
+		int repeat = 3;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-out") && i + 1 < args.length) {
+				out = new File(args[++i]);
+			} else if (args[i].equals("-baseline") && i + 1 < args.length) {
+				baseline = new File(args[++i]);
+			} else if (args[i].equals("-sizes") && i + 1 < args.length) {
+				String[] values = args[++i].split(",");
+				sizes = new int[values.length];
+				for (int s = 0; s < values.length; s++) {
+					sizes[s] = Integer.parseInt(values[s].trim());
+				}
+			} else if (args[i].equals("-repeat") && i + 1 < args.length) {
+				repeat = Integer.parseInt(args[++i]);
+			} else {
+				System.err.println("Usage: MacroBenchmark [-out file]"
+				+ " [-baseline file] [-sizes 50,100,200] [-repeat n]");
+				System.exit(1);
+			}
+		}
+		MacroBenchmark benchmark = new MacroBenchmark(sizes);
+		benchmark.setRepeat(repeat);
+		System.out.println(HEADER);
+		List<Result> results = benchmark.run();
+		write(results, out);
+		System.out.println("Results written to " + out);
+		if (baseline != null) {
+			int regressions = compare(results, read(baseline));
+			System.out.println(regressions + " regression(s) against "
+			+ baseline);
+			if (regressions > 0) {
+				System.exit(1);
+			}
+		}
+	}
+}
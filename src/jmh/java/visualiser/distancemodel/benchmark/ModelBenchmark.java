@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * The simulation loop: one force pass (Model.imposeForces), one time step
+ * (Model.advanceTime) and the two together, as run FINAL_ITERATIONS times by
+ * every control flow. With SET_MISSING_TO_MIN every pair of terms is linked,
+ * so a force pass grows with the square of the number of terms.
+ *
+ * DIMENSIONS is a compile-time constant, so these run in the dimensions the
+ * project was built with; TermBenchmark covers 2 and 3 dimensions.
+ */
+package visualiser.distancemodel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import visualiser.distancemodel.GlobalParameters;
+import visualiser.distancemodel.Model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the force and integration steps of a model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	@Param({"100", "400", "1600"})
+	public int terms;
+
+	@Param({"" + GlobalParameters.DIMENSIONS})
+	public int dimensions;                              //for the report only
+
+	private Model model;
+
+	/************************Mutators*******************************/
+	@Setup(Level.Trial)
+	public void setUp() {
+		model = BenchmarkData.model(terms);
+	}
+
+	/************************Benchmarks*****************************/
+	@Benchmark
+	public double imposeForces() {
+		return model.imposeForces();
+	}
+
+	@Benchmark
+	public void advanceTime() {
+		model.advanceTime();
+	}
+
+	@Benchmark
+	public double iteration() {
+		double error = model.imposeForces();
+		model.advanceTime();
+		return error;
+	}
+}
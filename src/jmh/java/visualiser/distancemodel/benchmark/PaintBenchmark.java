@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Drawing one animation frame offscreen: PlotDistances.paintComponent, by
+ * way of JComponent.paint, into a DISPLAY_SIZE square image, as the event
+ * dispatch thread does for each frame the simulation publishes. Runs in a
+ * headless JVM.
+ */
+package visualiser.distancemodel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.PlotDistances;
+import visualiser.distancemodel.render.FrameSlot;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import static visualiser.distancemodel.GlobalParameters.DISPLAY_SIZE;
+
+/**
+ * Frame rate of the plot panel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	@Param({"100", "400", "1600"})
+	public int terms;
+
+	private PlotDistances plot;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	/************************Mutators*******************************/
+	@Setup(Level.Trial)
+	public void setUp() {
+		Model model = BenchmarkData.model(terms);
+		for (int i = 0; i < 200; i++) {                //spread the terms out
+			model.imposeForces();
+			model.advanceTime();
+		}
+		FrameSlot frames = new FrameSlot();
+		frames.publish(model.getLayout());
+		plot = new PlotDistances(frames, model);
+		plot.setSize(DISPLAY_SIZE, DISPLAY_SIZE);
+		image = new BufferedImage(DISPLAY_SIZE, DISPLAY_SIZE,
+		BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	/************************Benchmarks*****************************/
+	@Benchmark
+	public BufferedImage paint() {
+		plot.paint(graphics);
+		return image;
+	}
+}
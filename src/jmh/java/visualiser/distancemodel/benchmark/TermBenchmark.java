@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Integration of one term (Term.imposeForce): friction, acceleration,
+ * velocity and position update, done for every term in every iteration. Runs
+ * over an array of TERMS terms so the figures include the memory traffic of a
+ * real pass rather than one term kept hot in cache; results are per term.
+ */
+package visualiser.distancemodel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import visualiser.distancemodel.terms.Term;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a term's integration step in 2 and 3 dimensions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermBenchmark {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int TERMS = 1024;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	@Param({"2", "3"})
+	public int dimensions;
+
+	private Term[] terms;
+	private double[][] forces;
+
+	/************************Mutators*******************************/
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(1);
+		terms = new Term[TERMS];
+		forces = new double[TERMS][dimensions];
+		for (int i = 0; i < TERMS; i++) {
+			terms[i] = new Term(dimensions, i, "t" + i);
+			for (int k = 0; k < dimensions; k++) {
+				forces[i][k] = random.nextGaussian();
+			}
+		}
+	}
+
+	/************************Benchmarks*****************************/
+	@Benchmark
+	@OperationsPerInvocation(TERMS)
+	public void imposeForce() {
+		for (int i = 0; i < TERMS; i++) {
+			terms[i].imposeForce(forces[i], 1.0);
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Lays out many reference terms of a thesaurus in one headless JVM. Each term's
+ * neighbourhood is extracted from a ThesaurusStore and solved on a bounded pool
+ * of worker threads (one per core by default); coordinates and images are
+ * written on a separate small I/O pool so the workers never wait on the disk.
+ * Only a fixed number of jobs are in flight at once, so memory is bounded
+ * however many terms are requested.
+ *
+ * With -store, every layout is also appended to a LayoutStore, from which
+ * the LayoutServer can serve it. A term whose neighbourhood is unchanged since
+ * it was stored is not laid out again, so rerunning a batch after the
+ * thesaurus is updated recomputes only the entries that changed; such a
+ * term's line in the summary says STORED. An entry that did change is warm
+ * started from its latest stored layout (see Model.warmStart), skipping the
+ * exploratory starts, and says WARM. It is stored under its own key
+ * (LayoutStore.warmParameters), so it is never served as a cold layout,
+ * and is found there if the batch is run again unchanged.
+ *
+ * For every term TERM the output directory gets TERM.tsv (coordinates) and
+ * TERM.png or TERM.svg (rendered plot), and a line in summary.tsv recording
+ * success or the failure, the timing of each stage and the final distortion.
+ *
+ * Usage:
+ *     BatchMain thesaurus outputDir [-terms file] [-workers n] [-hops n]
+ *               [-neighbours n] [-store file] [-svg | -noimages]
+ * Without -terms every head term of the thesaurus is laid out.
+ */
+package visualiser.distancemodel;
+
+import visualiser.distancemodel.controlflow.HeadlessControlFlow;
+import visualiser.distancemodel.io.LayoutStore;
+import visualiser.distancemodel.io.SimilarityGraph;
+import visualiser.distancemodel.io.ThesaurusStore;
+import visualiser.distancemodel.render.LayoutRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * Headless batch layout of a list of reference terms.
+ */
+public class BatchMain {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final String SUMMARY = "summary.tsv";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int IO_THREADS = 2;
+	private static final int JOBS_PER_WORKER = 2;       //in flight per worker
+	private static final LayoutRenderer RENDERER = new LayoutRenderer();
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final ThesaurusStore store;
+	private final File outputDir;
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private int hops = 1;                               //neighbourhood depth
+	private int maxNeighbours = 0;                      //0 = all
+	private boolean images = true;
+	private boolean svg = false;                        //SVG rather than PNG
+	private LayoutStore layoutStore;                    //or null
+	private Writer summary;
+	private final AtomicInteger succeeded = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param store     thesaurus from which neighbourhoods are taken
+	 * @param outputDir directory for results (created if necessary)
+	 */
+	public BatchMain(ThesaurusStore store, File outputDir) {
+		this.store = store;
+		this.outputDir = outputDir;
+	}
+
+	/************************Mutators*******************************/
+	public void setWorkers(int n) {
+		workers = n;
+	}
+
+	public void setHops(int n) {
+		hops = n;
+	}
+
+	public void setMaxNeighbours(int n) {
+		maxNeighbours = n;
+	}
+
+	public void setImages(boolean write) {
+		images = write;
+	}
+
+	public void setSvg(boolean write) {
+		svg = write;
+	}
+
+	/**
+	 * @param layouts store to which layouts are appended, and from which
+	 *                any unchanged ones are taken instead of being laid out
+	 */
+	public void setLayoutStore(LayoutStore layouts) {
+		layoutStore = layouts;
+	}
+
+	/**
+	 * Lay out every term, blocking until all are done
+	 *
+	 * @param refTerms reference terms, one layout each
+	 * @throws IOException if the output directory or summary can't be written
+	 */
+	public void run(List<String> refTerms) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Unable to create " + outputDir);
+		}
+		summary = new BufferedWriter(new OutputStreamWriter(
+		new FileOutputStream(new File(outputDir, SUMMARY)), UTF8));
+		summary.write("term\tstatus\tterms\tload_ms\tlayout_ms\twrite_ms"
+		+ "\terror\tmessage\n");
+		ExecutorService compute = Executors.newFixedThreadPool(workers,
+		daemonThreads("layout"));
+		final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS,
+		daemonThreads("layout-io"));
+		final Semaphore inFlight = new Semaphore(workers * JOBS_PER_WORKER);
+		long startTime = System.nanoTime();
+		try {
+			for (final String refTerm : refTerms) {
+				inFlight.acquireUninterruptibly();
+				compute.execute(new Runnable() {
+					public void run() {
+						Job job = new Job(refTerm);
+						if (job.layOut()) {
+							io.execute(new Runnable() {
+								public void run() {
+									job.write();
+									finish(job, inFlight);
+								}
+							});
+						} else {
+							finish(job, inFlight);
+						}
+					}
+				});
+			}
+			inFlight.acquireUninterruptibly(workers * JOBS_PER_WORKER);
+		} finally {
+			compute.shutdown();
+			io.shutdown();
+			synchronized (this) {
+				summary.close();
+			}
+		}
+		System.out.println("Laid out " + succeeded.get() + " terms, "
+		+ failed.get() + " failed, in " + (System.nanoTime() - startTime)
+		/ 1e9 + " sec. See " + new File(outputDir, SUMMARY));
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Record a finished job and free its slot
+	 */
+	private void finish(Job job, Semaphore inFlight) {
+		try {
+			(job.failure == null ? succeeded : failed).incrementAndGet();
+			synchronized (this) {
+				summary.write(job.toString());
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to write summary: " + e.getMessage());
+		} finally {
+			inFlight.release();
+		}
+	}
+
+	/**
+	 * Output file for a term. Characters that are unsafe in file names are
+	 * replaced, with the term's hash added to keep such names distinct.
+	 */
+	private File outputFile(String term, String suffix) {
+		String name = term.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+		if (!name.equals(term) || name.startsWith(".")) {
+			name += "_" + Integer.toHexString(term.hashCode());
+		}
+		return new File(outputDir, name + suffix);
+	}
+
+	static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-"
+				+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	private static String message(Throwable e) {
+		String message = e.toString();
+		return message.replace('\t', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * ******************INNER CLASSES****************************
+	 */
+	/**
+	 * One reference term: its layout, outputs and timings
+	 */
+	private class Job {
+
+		private final String refTerm;
+		private Layout layout;
+		private String parameters;                  //key in layoutStore
+		private boolean stored;                     //already in layoutStore
+		private boolean warm;                       //from an older layout
+		private BufferedImage image;
+		private long loadTime;                      //nanoseconds
+		private long layoutTime;
+		private long writeTime;
+		private Throwable failure;
+
+		Job(String term) {
+			refTerm = term;
+		}
+
+		/**
+		 * Load and solve. Runs on a compute worker.
+		 *
+		 * @return true if successful
+		 */
+		boolean layOut() {
+			try {
+				long start = System.nanoTime();
+				SimilarityGraph graph = store.getNeighbourhood(refTerm, hops,
+				maxNeighbours);
+				if (layoutStore != null) {
+					parameters = LayoutStore.parameters(graph,
+					NUMBER_OF_STARTS, FINAL_ITERATIONS);
+					layout = layoutStore.get(refTerm, parameters);
+					if (layout == null) {
+						layout = layoutStore.get(refTerm, LayoutStore
+						.warmParameters(graph, WARM_ITERATIONS));
+					}
+					stored = layout != null;
+				}
+				Model model = stored ? null : new Model(graph, refTerm);
+				if (model != null && layoutStore != null) {
+					Layout previous = layoutStore.getLatest(refTerm);
+					warm = previous != null && model.warmStart(previous) > 0;
+					if (warm) {
+						parameters = LayoutStore.warmParameters(graph,
+						WARM_ITERATIONS);
+					}
+				}
+				long loaded = System.nanoTime();
+				loadTime = loaded - start;
+				if (model != null) {
+					HeadlessControlFlow flow = new HeadlessControlFlow(model);
+					layout = flow.getLayout();
+				}
+				if (images && !svg) {
+					image = RENDERER.renderImage(layout, DISPLAY_SIZE,
+					DISPLAY_SIZE);
+				}
+				layoutTime = System.nanoTime() - loaded;
+				return true;
+			} catch (Throwable e) {                 //incl. OutOfMemoryError
+				failure = e;
+				return false;
+			}
+		}
+
+		/**
+		 * Write coordinates and image. Runs on an I/O thread, which also
+		 * streams any SVG since that is cheap text output.
+		 */
+		void write() {
+			long start = System.nanoTime();
+			try {
+				if (layoutStore != null && !stored) {
+					layoutStore.put(refTerm, parameters, layout);
+				}
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(outputFile(refTerm, ".tsv")), UTF8));
+				try {
+					layout.writeCoordinates(out);
+				} finally {
+					out.close();
+				}
+				if (image != null) {
+					ImageIO.write(image, "png", outputFile(refTerm, ".png"));
+					image = null;
+				} else if (images && svg) {
+					OutputStream svgOut = new BufferedOutputStream(
+					new FileOutputStream(outputFile(refTerm, ".svg")));
+					try {
+						RENDERER.writeSvg(layout, DISPLAY_SIZE, DISPLAY_SIZE,
+						svgOut);
+					} finally {
+						svgOut.close();
+					}
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+			writeTime = System.nanoTime() - start;
+		}
+
+		/**
+		 * Summary line
+		 */
+		@Override
+		public String toString() {
+			return refTerm + "\t" + (failure != null ? "FAILED"
+			: stored ? "STORED" : warm ? "WARM" : "OK")
+			+ "\t" + (layout == null ? 0 : layout.size())
+			+ "\t" + loadTime / 1000000 + "\t" + layoutTime / 1000000
+			+ "\t" + writeTime / 1000000
+			+ "\t" + (layout == null ? "" : layout.getError())
+			+ "\t" + (failure == null ? "" : message(failure)) + "\n";
+		}
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * @param args thesaurus, output directory, then options (see above)
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 2) {
+			System.err.println("Usage: BatchMain thesaurus outputDir"
+			+ " [-terms file] [-workers n] [-hops n] [-neighbours n]"
+			+ " [-store file] [-svg | -noimages]");
+			System.exit(1);
+		}
+		ThesaurusStore store = ThesaurusStore.open(new File(args[0]));
+		BatchMain batch = new BatchMain(store, new File(args[1]));
+		List<String> refTerms = null;
+		LayoutStore layoutStore = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-terms")) {
+				refTerms = readTerms(new File(args[++i]));
+			} else if (args[i].equals("-workers")) {
+				batch.setWorkers(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-hops")) {
+				batch.setHops(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-neighbours")) {
+				batch.setMaxNeighbours(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-store")) {
+				layoutStore = LayoutStore.open(new File(args[++i]));
+				batch.setLayoutStore(layoutStore);
+			} else if (args[i].equals("-svg")) {
+				batch.setSvg(true);
+			} else if (args[i].equals("-noimages")) {
+				batch.setImages(false);
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+		try {
+			batch.run(refTerms == null ? store.getHeads() : refTerms);
+		} finally {
+			store.close();
+			if (layoutStore != null) {
+				layoutStore.close();
+			}
+		}
+	}
+
+	/**
+	 * Read reference terms, one per line, skipping blank lines
+	 */
+	private static List<String> readTerms(File file) throws IOException {
+		List<String> terms = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+		new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0) {
+					terms.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return terms;
+	}
+}
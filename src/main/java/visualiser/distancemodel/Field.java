@@ -38,6 +38,7 @@
 package visualiser.distancemodel;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 import static visualiser.distancemodel.GlobalParameters.*;
 
@@ -54,6 +55,9 @@ public class Field {
 	private double[][] idealDistance;                   //ideal distance
 	private double[][] forceRate;                       //inv spring constant
 	private boolean[][] dataPresent;
+	private boolean[][] measured;                       //read, not filled in
+	private int[][] neighbours;                         //linked terms per row
+	private int neighboursFor = -1;                     //terms covered, -1=stale
 
 	/***********Constructors and Static Factory Methods*************/
 	/**
@@ -68,6 +72,7 @@ public class Field {
 		fieldSize = initialField;
 		idealDistance = initializeDoubField(0);
 		dataPresent = initializeBoolField(false);
+		measured = initializeBoolField(false);
 		forceRate = initializeDoubField(DEFAULT_FORCE_MULT);
 	}
 
@@ -90,6 +95,30 @@ public class Field {
 		return dataPresent[i][j];
 	}
 
+	/**
+	 * @return true if the relation between terms i and j came from the data,
+	 * rather than being filled in by setRemainingFieldToMinSim
+	 */
+	public boolean isMeasured(int i, int j) {
+		return measured[i][j];
+	}
+
+	/**
+	 * Terms linked to term i by a spring (dataPresent), in ascending order.
+	 * Lists are rebuilt after the field changes, so a loop over them visits
+	 * the same terms, in the same order, as a scan of the dataPresent row.
+	 *
+	 * @param i             term
+	 * @param numberOfTerms terms in use (the field may be larger)
+	 * @return indices j < numberOfTerms, j != i, with data present
+	 */
+	public int[] getNeighbours(int i, int numberOfTerms) {
+		if (neighboursFor != numberOfTerms) {
+			buildNeighbours(numberOfTerms);
+		}
+		return neighbours[i];
+	}
+
 	/**
 	 * Given a similarity, it returns the distance. Several transformations
 	 * from similarity to distance are set by enum SimilarityToDistance
@@ -132,6 +161,48 @@ public class Field {
 	public void setDataPresent(int i, int j) {
 		dataPresent[i][j] = true;
 		dataPresent[j][i] = true;
+		neighboursFor = -1;
+	}
+
+	public void setMeasured(int i, int j, boolean value) {
+		measured[i][j] = value;
+		measured[j][i] = value;
+	}
+
+	/**
+	 * Remove the spring between two terms
+	 */
+	public void clearRelation(int i, int j) {
+		setIdealDistance(i, j, 0);
+		setForceRate(i, j, DEFAULT_FORCE_MULT);
+		setMeasured(i, j, false);
+		dataPresent[i][j] = false;
+		dataPresent[j][i] = false;
+		neighboursFor = -1;
+	}
+
+	/**
+	 * Give term to the relations of term from, and clear from's, e.g. to
+	 * fill the gap left by a removed term with the last one
+	 *
+	 * @param from          term whose relations move
+	 * @param to            term that takes them
+	 * @param numberOfTerms terms in use
+	 */
+	public void moveTerm(int from, int to, int numberOfTerms) {
+		for (int k = 0; k < numberOfTerms; k++) {
+			if (k != from && k != to) {
+				setIdealDistance(to, k, idealDistance[from][k]);
+				setForceRate(to, k, forceRate[from][k]);
+				dataPresent[to][k] = dataPresent[from][k];
+				dataPresent[k][to] = dataPresent[from][k];
+				setMeasured(to, k, measured[from][k]);
+			}
+		}
+		for (int k = 0; k < numberOfTerms; k++) {
+			clearRelation(from, k);
+		}
+		clearRelation(to, to);
 	}
 
 	public void setStrongForceRate(int arrayIndex, int numberOfTerms) {
@@ -148,6 +219,7 @@ public class Field {
 	 * @param min specified similarity measure (0<=min<=1)
 	 */
 	public void setRemainingFieldToMinSim(double min) {
+		neighboursFor = -1;
 		for (int i = 0; i < fieldSize; i++) {
 			for (int j = 0; j < fieldSize; j++) {
 				if (idealDistance[i][j] == 0 && i != j) {   //not yet set
@@ -197,12 +269,31 @@ public class Field {
 		return temp;
 	}
 
+	/**
+	 * Build the linked-term list of every row from dataPresent
+	 */
+	private void buildNeighbours(int numberOfTerms) {
+		neighbours = new int[numberOfTerms][];
+		int[] row = new int[numberOfTerms];
+		for (int i = 0; i < numberOfTerms; i++) {
+			int count = 0;
+			for (int j = 0; j < numberOfTerms; j++) {
+				if (j != i && dataPresent[i][j]) {
+					row[count++] = j;
+				}
+			}
+			neighbours[i] = Arrays.copyOf(row, count);
+		}
+		neighboursFor = numberOfTerms;
+	}
+
 	/**
 	 * Expands instance variables field and identifiers when limit is reached
 	 * Dimension of array is doubled each time (i.e. 4x for [][] field array)
 	 */
 	public void expandField(int numberOfTerms) {
 		fieldSize *= 2;
+		neighboursFor = -1;
 		//expand idealDistance field
 		double[][] tempField = initializeDoubField(0);
 		for (int i = 0; i < numberOfTerms; i++) {
@@ -221,6 +312,12 @@ public class Field {
 			System.arraycopy(dataPresent[i], 0, tempPresent[i], 0, numberOfTerms);
 		}
 		dataPresent = tempPresent;
+		//expand measured field
+		boolean[][] tempMeasured = initializeBoolField(false);
+		for (int i = 0; i < numberOfTerms; i++) {
+			System.arraycopy(measured[i], 0, tempMeasured[i], 0, numberOfTerms);
+		}
+		measured = tempMeasured;
 	}
 
 	/**
@@ -53,6 +53,10 @@ public final class GlobalParameters {
 	public static final int NUMBER_OF_STARTS = 30;        //random starts
 	public static final int INITIAL_ITERATIONS = 1500;    //iters per random
 	public static final int FINAL_ITERATIONS = 8000;     //iters for solution
+	public static final int WARM_ITERATIONS = 1000;      //iters if warm started
+	public static final int WARM_NEIGHBOURS = 3;         //to place a new term
+	public static final int LOCAL_NEIGHBOURS = 10;       //relaxed per change
+	public static final int LOCAL_ITERATIONS = 200;      //iters per change
 
 	/**
 	 * ****Graphic GlobalParameters *******
@@ -82,8 +86,7 @@ public final class GlobalParameters {
 	/**
 	 * Animation GlobalParameters
 	 */
-	public static final double INITIAL_SLEEP = 6;       //pause time
-	public static final double REDUCTION_FACTOR = 0.999;//pause reduction rate
+	public static final int FRAMES_PER_SECOND = 60;     //max display rate
 
 	/**
 	 * similarity data handling parameters
@@ -104,6 +107,29 @@ public final class GlobalParameters {
 	public static final SimilarityToDistance TRANSFORM =
 	SimilarityToDistance.INVERSE_3_OFFSET;
 
+	/**
+	 * sparsification applied while loading (see io.SparsifyingSource)
+	 */
+	//keep only each term's SPARSIFY_TOP_K most similar partners (0 = keep all)
+	public static final int SPARSIFY_TOP_K = 0;
+	//drop pairs with similarity below this (0 = keep all)
+	public static final double SPARSIFY_THRESHOLD = 0;
+	//SYMMETRIC_UNION : keep pair if either term has the other in its top-k
+	//MUTUAL_KNN : keep pair only if both terms have each other in their top-k
+	//Springs are only saved when SET_MISSING_TO_MIN = false, since otherwise
+	//dropped pairs are filled back in at the minimum similarity
+	public static final Sparsify SPARSIFY_MODE = Sparsify.SYMMETRIC_UNION;
+
+	/**
+	 * metrics (see metrics.Metrics)
+	 */
+	//directory to export metrics.json and metrics.prom to, e.g. a
+	//node_exporter textfile directory; set with -Dvisualiser.metrics=<dir>
+	//(null = no export)
+	public static final String METRICS_DIRECTORY =
+	System.getProperty("visualiser.metrics");
+	public static final int METRICS_INTERVAL = 5;       //secs between exports
+	public static final int METRICS_SAMPLE = 100;       //iters between samples
 
 	/**
 	 * ********Constructors and Static Factory Methods************
@@ -120,5 +146,10 @@ public final class GlobalParameters {
 		INVERSE, INVERSE_OFFSET, ONE_MINUS, INVERSE_2_OFFSET, INVERSE_3_OFFSET
 	}
 
+	public enum Sparsify {
+
+		SYMMETRIC_UNION, MUTUAL_KNN
+	}
+
 
 }
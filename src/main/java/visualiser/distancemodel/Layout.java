@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * An immutable snapshot of a model's term positions, detached from the live
+ * Term objects the simulation keeps moving. Snapshots can be handed to other
+ * threads (writers, renderers) while the model carries on or is discarded.
+ */
+package visualiser.distancemodel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Positions of every term of a model at one moment.
+ */
+public class Layout {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final String[] identifiers;
+	private final String[] labels;          //display form of identifiers
+	private final double[] coords;          //term i at [i*DIMENSIONS ...]
+	private final float[] importance;       //for level of detail, or null
+	private final int refTermIndex;
+	private final int iteration;            //model clock at the snapshot
+	private final double error;             //sumError of the last iteration
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param identifiers  term names, in model order (not copied)
+	 * @param labels       display labels of the terms (not copied)
+	 * @param coords       flattened positions, DIMENSIONS per term (not copied)
+	 * @param refTermIndex index of the reference term
+	 * @param iteration    model clock when the snapshot was taken
+	 * @param error        summed distortion at that time
+	 * @throws IllegalArgumentException if the arrays' lengths disagree
+	 */
+	public Layout(String[] identifiers, String[] labels, double[] coords,
+	              int refTermIndex, int iteration, double error) {
+		this(identifiers, labels, coords, null, refTermIndex, iteration,
+		error);
+	}
+
+	/**
+	 * @param importance how much each term matters to the picture (e.g.
+	 *                   similarity to the reference term), deciding which
+	 *                   labels survive when zoomed out (not copied)
+	 */
+	public Layout(String[] identifiers, String[] labels, double[] coords,
+	              float[] importance, int refTermIndex, int iteration,
+	              double error) {
+		if (labels.length != identifiers.length
+		|| coords.length != identifiers.length * DIMENSIONS) {
+			throw new IllegalArgumentException(identifiers.length
+			+ " identifiers, " + labels.length + " labels and "
+			+ coords.length + " coordinates don't describe the same terms");
+		}
+		if (importance != null && importance.length != identifiers.length) {
+			throw new IllegalArgumentException(identifiers.length
+			+ " identifiers but " + importance.length + " importances");
+		}
+		this.identifiers = identifiers;
+		this.labels = labels;
+		this.coords = coords;
+		this.importance = importance;
+		this.refTermIndex = refTermIndex;
+		this.iteration = iteration;
+		this.error = error;
+	}
+
+	/************************Accessors******************************/
+	public int size() {
+		return identifiers.length;
+	}
+
+	public String getIdentifier(int i) {
+		return identifiers[i];
+	}
+
+	public String getLabel(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * @return importance of term i; 1 for every term if none was given
+	 */
+	public float getImportance(int i) {
+		return (importance == null) ? 1 : importance[i];
+	}
+
+	/**
+	 * @return true if the terms' importance was given, not defaulted
+	 */
+	public boolean hasImportance() {
+		return importance != null;
+	}
+
+	/**
+	 * @param i term index
+	 * @param k dimension
+	 */
+	public double getCoord(int i, int k) {
+		return coords[i * DIMENSIONS + k];
+	}
+
+	public int getRefTermIndex() {
+		return refTermIndex;
+	}
+
+	public String getReferenceTerm() {
+		return identifiers[refTermIndex];
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * Write one "identifier coord1 coord2 ..." tab separated line per term
+	 */
+	public void writeCoordinates(Writer out) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < identifiers.length; i++) {
+			line.setLength(0);
+			line.append(identifiers[i]);
+			for (int k = 0; k < DIMENSIONS; k++) {
+				line.append('\t').append(getCoord(i, k));
+			}
+			line.append('\n');
+			out.write(line.toString());
+		}
+	}
+
+	/**
+	 * Read lines written by writeCoordinates back into a layout. Labels are
+	 * the identifiers, and the first term is taken as the reference term.
+	 */
+	public static Layout readCoordinates(BufferedReader in)
+	throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<double[]> positions = new ArrayList<double[]>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] fields = line.split("\t");
+			double[] position = new double[DIMENSIONS];
+			for (int k = 0; k < DIMENSIONS; k++) {
+				position[k] = Double.parseDouble(fields[k + 1]);
+			}
+			names.add(fields[0]);
+			positions.add(position);
+		}
+		String[] identifiers = names.toArray(new String[names.size()]);
+		double[] coords = new double[identifiers.length * DIMENSIONS];
+		for (int i = 0; i < identifiers.length; i++) {
+			System.arraycopy(positions.get(i), 0, coords, i * DIMENSIONS,
+			DIMENSIONS);
+		}
+		return new Layout(identifiers, identifiers, coords, 0, 0, 0);
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return "Layout of " + identifiers.length + " terms around "
+		+ getReferenceTerm() + " at iteration " + iteration + ", error "
+		+ error;
+	}
+}
@@ -0,0 +1,813 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * A long-lived local HTTP service that lays out similarity data on request,
+ * so callers pay JVM start-up, JIT warm-up and loading once rather than once
+ * a layout. Datasets are named on the command line and loaded before the
+ * server starts. A plain similarity file is read into a SimilarityGraph; a
+ * thesaurus with an index (see ThesaurusStore) is opened, and each request
+ * takes the neighbourhood of its reference term. Either way the data stay
+ * resident and are shared by every request.
+ *
+ *   GET /layout?dataset=ID&term=TERM   lay out one reference term. Optional:
+ *       format=json|png (json), size=pixels (DISPLAY_SIZE, png only),
+ *       starts=n (NUMBER_OF_STARTS), iterations=n (FINAL_ITERATIONS),
+ *       hops=n and neighbours=n (thesauri only), timeout=seconds, id=name
+ *   DELETE /layout?id=name             cancel the running request of that id
+ *   GET /datasets                      the datasets, as JSON
+ *   GET /metrics                       Prometheus text, or JSON with
+ *                                      format=json (see metrics.Metrics)
+ *
+ * Layouts run on a fixed pool of workers behind a bounded queue; a request
+ * that finds the queue full gets 503 straight away. One that outlives its
+ * timeout gets 504, and its layout is cancelled within an iteration, as is
+ * one cancelled by DELETE (409). Responses are kept in an LRU cache bounded
+ * in bytes, keyed by the SHA-256 of the graph laid out together with every
+ * parameter that affects the response, so a repeated request is answered
+ * from memory (X-Cache: HIT), even one whose thesaurus neighbourhood had to
+ * be extracted again.
+ *
+ * Given a LayoutStore (e.g. one filled by BatchMain -store), a request for a
+ * layout the store holds, for the same graph, starts and iterations, is
+ * answered from it without laying anything out (X-Cache: STORE).
+ *
+ * Usage:
+ *     LayoutServer [-port n] [-workers n] [-queue n] [-timeout s]
+ *                  [-cache MB] [-store file] id=file [id=file ...]
+ * The server listens on the loopback interface only.
+ */
+package visualiser.distancemodel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import visualiser.distancemodel.controlflow.ControlFlowAbs;
+import visualiser.distancemodel.io.LayoutStore;
+import visualiser.distancemodel.io.SimilarityGraph;
+import visualiser.distancemodel.io.SimilarityHandler;
+import visualiser.distancemodel.io.StreamSimilaritySource;
+import visualiser.distancemodel.io.ThesaurusStore;
+import visualiser.distancemodel.metrics.Metrics;
+import visualiser.distancemodel.render.LayoutRenderer;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * HTTP front end to headless layouts of resident datasets.
+ */
+public class LayoutServer {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int DEFAULT_PORT = 8080;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final LayoutRenderer RENDERER = new LayoutRenderer();
+	private static final int MAX_IMAGE_SIZE = 4096;     //pixels
+	private static final int MAX_STARTS = 1000;
+	private static final int MAX_ITERATIONS = 1000000;
+	private static final int MAX_HOPS = 3;
+	private static final int HTTP_SPARE = 2;            //for /metrics etc.
+	private static final Metrics.Counter REQUESTS = Metrics.counter(
+	"server_layout_requests", "Layout requests received");
+	private static final Metrics.Counter HITS = Metrics.counter(
+	"server_cache_hits", "Layout requests answered from the cache");
+	private static final Metrics.Counter MISSES = Metrics.counter(
+	"server_cache_misses", "Layout requests that had to be computed");
+	private static final Metrics.Counter STORED = Metrics.counter(
+	"server_store_hits", "Layout requests answered from the layout store");
+	private static final Metrics.Counter REJECTED = Metrics.counter(
+	"server_rejected", "Layout requests refused with the queue full");
+	private static final Metrics.Counter TIMEOUTS = Metrics.counter(
+	"server_timeouts", "Layouts cancelled for taking too long");
+	private static final Metrics.Gauge CACHE_BYTES = Metrics.gauge(
+	"server_cache_bytes", "Bytes of responses held in the cache");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final Map<String, Dataset> datasets =
+	new LinkedHashMap<String, Dataset>();               //fixed once started
+	private final Map<String, Solver> running =
+	new ConcurrentHashMap<String, Solver>();            //by request id
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private int queue = 16;                             //layouts waiting
+	private int timeout = 60;                           //seconds, max
+	private long cacheBytes = 64L << 20;
+	private ResultCache cache;
+	private LayoutStore layoutStore;                    //or null
+	private ExecutorService compute;
+	private ExecutorService http;
+	private HttpServer server;
+
+	/***********Constructors and Static Factory Methods*************/
+	public LayoutServer() {
+	}
+
+	/************************Mutators*******************************/
+	public void setWorkers(int n) {
+		workers = n;
+	}
+
+	/**
+	 * @param n layouts that may wait for a worker before requests are
+	 *          refused
+	 */
+	public void setQueue(int n) {
+		queue = n;
+	}
+
+	/**
+	 * @param seconds longest a layout may take, and the default timeout
+	 */
+	public void setTimeout(int seconds) {
+		timeout = seconds;
+	}
+
+	public void setCacheBytes(long bytes) {
+		cacheBytes = bytes;
+	}
+
+	/**
+	 * @param layouts precomputed layouts to answer requests from
+	 */
+	public void setLayoutStore(LayoutStore layouts) {
+		layoutStore = layouts;
+	}
+
+	/**
+	 * Load a dataset and keep it resident. Call before start().
+	 *
+	 * @param id   name requests use for it
+	 * @param file similarity file, or thesaurus with an index alongside
+	 * @throws IOException if it can't be read
+	 */
+	public void addDataset(String id, File file) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Server already started");
+		}
+		datasets.put(id, new Dataset(id, file));
+	}
+
+	/**
+	 * Start serving on a loopback port
+	 */
+	public void start(int port) throws IOException {
+		cache = new ResultCache(cacheBytes);
+		compute = new ThreadPoolExecutor(workers, workers, 0,
+		TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queue),
+		BatchMain.daemonThreads("layout"));
+		http = Executors.newFixedThreadPool(workers + queue + HTTP_SPARE,
+		BatchMain.daemonThreads("http"));
+		server = HttpServer.create(new InetSocketAddress(
+		InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/layout", new Endpoint() {
+			void serve(HttpExchange exchange, Map<String, String> query)
+			throws IOException, RequestException {
+				if ("DELETE".equals(exchange.getRequestMethod())) {
+					cancel(exchange, query);
+				} else {
+					layOut(exchange, query);
+				}
+			}
+		});
+		server.createContext("/datasets", new Endpoint() {
+			void serve(HttpExchange exchange, Map<String, String> query)
+			throws IOException {
+				send(exchange, 200, "application/json", listDatasets()
+				.getBytes(UTF8), null);
+			}
+		});
+		server.createContext("/metrics", new Endpoint() {
+			void serve(HttpExchange exchange, Map<String, String> query)
+			throws IOException {
+				StringWriter out = new StringWriter();
+				boolean json = "json".equals(query.get("format"));
+				if (json) {
+					Metrics.writeJson(out);
+				} else {
+					Metrics.writePrometheus(out);
+				}
+				send(exchange, 200, json ? "application/json"
+				: "text/plain; version=0.0.4", out.toString()
+				.getBytes(UTF8), null);
+			}
+		});
+		server.setExecutor(http);
+		server.start();
+	}
+
+	/**
+	 * Stop serving and abandon any running layouts. Those without an id
+	 * are stopped by the interrupt from shutting down the compute pool,
+	 * even if no handler is still waiting to cancel them.
+	 */
+	public void stop() {
+		server.stop(0);
+		for (Solver solver : running.values()) {
+			solver.cancel();
+		}
+		compute.shutdownNow();
+		http.shutdownNow();
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return port being listened on, e.g. when started on port 0
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*********************Request Handling**************************/
+	/**
+	 * GET /layout: answer from the cache, or lay out on a worker within the
+	 * timeout
+	 */
+	private void layOut(HttpExchange exchange, Map<String, String> query)
+	throws IOException, RequestException {
+		REQUESTS.increment();
+		Dataset dataset = datasets.get(required(query, "dataset"));
+		if (dataset == null) {
+			throw new RequestException(404, "No dataset "
+			+ query.get("dataset"));
+		}
+		String term = required(query, "term");
+		String format = option(query, "format", "json");
+		boolean png = format.equals("png");
+		if (!png && !format.equals("json")) {
+			throw new RequestException(400, "format must be json or png");
+		}
+		int size = option(query, "size", DISPLAY_SIZE, 16, MAX_IMAGE_SIZE);
+		int starts = option(query, "starts", NUMBER_OF_STARTS, 1, MAX_STARTS);
+		int iterations = option(query, "iterations", FINAL_ITERATIONS, 1,
+		MAX_ITERATIONS);
+		int hops = option(query, "hops", 1, 1, MAX_HOPS);
+		int neighbours = option(query, "neighbours", 0, 0, Integer.MAX_VALUE);
+		int seconds = option(query, "timeout", timeout, 1, timeout);
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+
+		SimilarityGraph graph = dataset.getGraph(term, hops, neighbours);
+		String hash = dataset.getHash(graph);
+		String key = hash + " " + term + " " + starts + " " + iterations + " "
+		+ format + (png ? " " + size : " " + dataset.id); //JSON names it
+		String type = png ? "image/png" : "application/json";
+		byte[] body = cache.get(key);
+		if (body != null) {
+			HITS.increment();
+			send(exchange, 200, type, body, "HIT");
+			return;
+		}
+		MISSES.increment();
+
+		Layout stored = (layoutStore == null) ? null : layoutStore.get(term,
+		LayoutStore.parameters(hash, starts, iterations));
+		if (stored != null) {
+			STORED.increment();
+			body = encode(dataset.id, stored, png ? size : 0);
+			cache.put(key, body);
+			send(exchange, 200, type, body, "STORE");
+			return;
+		}
+		Solver solver = new Solver(dataset.id, graph, term, starts,
+		iterations, deadline, png ? size : 0);
+		String id = query.get("id");
+		if (id != null && running.putIfAbsent(id, solver) != null) {
+			throw new RequestException(409, "Request id " + id
+			+ " is already running");
+		}
+		try {
+			body = await(solver, deadline, seconds);
+		} finally {
+			if (id != null) {
+				running.remove(id, solver);
+			}
+		}
+		cache.put(key, body);
+		send(exchange, 200, type, body, "MISS");
+	}
+
+	/**
+	 * Run a layout on a worker and wait for it until the deadline
+	 */
+	private byte[] await(Solver solver, long deadline, int seconds)
+	throws RequestException {
+		Future<byte[]> future;
+		try {
+			future = compute.submit(solver);
+		} catch (RejectedExecutionException e) {
+			REJECTED.increment();
+			throw new RequestException(503, "Busy: " + queue
+			+ " layouts already waiting");
+		}
+		try {
+			return future.get(Math.max(0, deadline - System.nanoTime()),
+			TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			solver.cancel();
+			future.cancel(false);
+			TIMEOUTS.increment();
+			throw new RequestException(504, "Layout took longer than "
+			+ seconds + " s");
+		} catch (InterruptedException e) {
+			solver.cancel();
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new RequestException(503, "Server stopping");
+		} catch (CancellationException e) {
+			throw new RequestException(409, "Layout cancelled");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				if (solver.isCancelledByRequest()) {
+					throw new RequestException(409, "Layout cancelled");
+				}
+				TIMEOUTS.increment();
+				throw new RequestException(504, "Layout took longer than "
+				+ seconds + " s");
+			}
+			throw new RequestException(500, "Layout failed: "
+			+ e.getCause());
+		}
+	}
+
+	/**
+	 * DELETE /layout?id=name: cancel a running request
+	 */
+	private void cancel(HttpExchange exchange, Map<String, String> query)
+	throws IOException, RequestException {
+		String id = required(query, "id");
+		Solver solver = running.get(id);
+		if (solver == null) {
+			throw new RequestException(404, "No running request " + id);
+		}
+		solver.cancel();
+		send(exchange, 200, "text/plain; charset=utf-8",
+		("Cancelled " + id + "\n").getBytes(UTF8), null);
+	}
+
+	/**
+	 * @return JSON array describing the datasets
+	 */
+	private String listDatasets() {
+		StringBuilder s = new StringBuilder("[");
+		String separator = "\n  ";
+		for (Dataset dataset : datasets.values()) {
+			s.append(separator).append("{\"id\": ").append(quote(dataset.id))
+			.append(", \"file\": ").append(quote(dataset.file.getPath()));
+			if (dataset.store != null) {
+				s.append(", \"type\": \"thesaurus\", \"heads\": ")
+				.append(dataset.store.getNumberOfHeads());
+			} else {
+				s.append(", \"type\": \"graph\", \"terms\": ")
+				.append(dataset.graph.getNumberOfTerms())
+				.append(", \"edges\": ")
+				.append(dataset.graph.getNumberOfEdges())
+				.append(", \"hash\": ").append(quote(dataset.hash));
+			}
+			s.append('}');
+			separator = ",\n  ";
+		}
+		return s.append("\n]\n").toString();
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * @return a layout as JSON: reference term, iteration, error and each
+	 * term's identifier, label and position
+	 */
+	static String toJson(String dataset, Layout layout) {
+		StringBuilder s = new StringBuilder();
+		s.append("{\"dataset\": ").append(quote(dataset))
+		.append(", \"reference\": ").append(quote(layout.getReferenceTerm()))
+		.append(", \"iteration\": ").append(layout.getIteration())
+		.append(", \"error\": ").append(layout.getError())
+		.append(", \"terms\": [");
+		for (int i = 0; i < layout.size(); i++) {
+			s.append((i == 0) ? "\n  " : ",\n  ")
+			.append("{\"id\": ").append(quote(layout.getIdentifier(i)))
+			.append(", \"label\": ").append(quote(layout.getLabel(i)))
+			.append(", \"position\": [");
+			for (int k = 0; k < DIMENSIONS; k++) {
+				s.append((k == 0) ? "" : ", ").append(layout.getCoord(i, k));
+			}
+			s.append("]}");
+		}
+		return s.append("\n]}\n").toString();
+	}
+
+	/**
+	 * @param size PNG size, or 0 for JSON
+	 * @return response body for a layout
+	 */
+	private static byte[] encode(String dataset, Layout layout, int size)
+	throws IOException {
+		if (size == 0) {
+			return toJson(dataset, layout).getBytes(UTF8);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(RENDERER.renderImage(layout, size, size), "png", out);
+		return out.toByteArray();
+	}
+
+	private static String quote(String text) {
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				s.append('\\').append(c);
+			} else if (c < 0x20) {
+				s.append(String.format("\\u%04x", (int) c));
+			} else {
+				s.append(c);
+			}
+		}
+		return s.append('"').toString();
+	}
+
+	private static Map<String, String> parseQuery(URI uri) throws
+	IOException {
+		Map<String, String> query = new HashMap<String, String>();
+		String raw = uri.getRawQuery();
+		if (raw == null) {
+			return query;
+		}
+		for (String pair : raw.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				query.put(URLDecoder.decode(pair.substring(0, equals),
+				"UTF-8"), URLDecoder.decode(pair.substring(equals + 1),
+				"UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	private static String required(Map<String, String> query, String name)
+	throws RequestException {
+		String value = query.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new RequestException(400, "Missing parameter " + name);
+		}
+		return value;
+	}
+
+	private static String option(Map<String, String> query, String name,
+	                             String otherwise) {
+		String value = query.get(name);
+		return (value == null) ? otherwise : value;
+	}
+
+	private static int option(Map<String, String> query, String name,
+	                          int otherwise, int min, int max)
+	throws RequestException {
+		String value = query.get(name);
+		if (value == null) {
+			return otherwise;
+		}
+		try {
+			int n = Integer.parseInt(value);
+			if (n >= min && n <= max) {
+				return n;
+			}
+		} catch (NumberFormatException e) {
+			//fall through
+		}
+		throw new RequestException(400, name + " must be a number from "
+		+ min + " to " + max);
+	}
+
+	/**
+	 * Send a complete response
+	 *
+	 * @param cache value of X-Cache, or null for none
+	 */
+	private static void send(HttpExchange exchange, int status, String type,
+	                         byte[] body, String cache) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", type);
+		if (cache != null) {
+			exchange.getResponseHeaders().set("X-Cache", cache);
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	/**
+	 * ******************INNER CLASSES****************************
+	 */
+	/**
+	 * A request that can't be answered, with the status to send
+	 */
+	private static class RequestException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Handler that parses the query and turns failures into responses
+	 */
+	private abstract static class Endpoint implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				serve(exchange, parseQuery(exchange.getRequestURI()));
+			} catch (RequestException e) {
+				send(exchange, e.status, "text/plain; charset=utf-8",
+				(e.getMessage() + "\n").getBytes(UTF8), null);
+			} catch (RuntimeException e) {
+				send(exchange, 500, "text/plain; charset=utf-8",
+				(e + "\n").getBytes(UTF8), null);
+			} finally {
+				exchange.close();
+			}
+		}
+
+		abstract void serve(HttpExchange exchange, Map<String, String> query)
+		throws IOException, RequestException;
+	}
+
+	/**
+	 * A resident dataset: a whole graph, or a thesaurus to take
+	 * neighbourhoods from
+	 */
+	private static final class Dataset {
+
+		private final String id;
+		private final File file;
+		private final SimilarityGraph graph;        //or null
+		private final String hash;                  //of graph, or null
+		private final ThesaurusStore store;         //or null
+
+		Dataset(String id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			if (ThesaurusStore.indexFor(file).exists()) {
+				store = ThesaurusStore.open(file);
+				graph = null;
+				hash = null;
+			} else {
+				final SimilarityGraph g = new SimilarityGraph();
+				StreamSimilaritySource.open(file).read(new SimilarityHandler() {
+					public void relation(String identifier1,
+					                     String identifier2, double data) {
+						g.addEdge(identifier1, identifier2, data);
+					}
+				});
+				store = null;
+				graph = g;
+				hash = g.getContentHash();
+			}
+		}
+
+		/**
+		 * @return what to lay out for a reference term
+		 */
+		SimilarityGraph getGraph(String term, int hops, int neighbours)
+		throws RequestException {
+			if (store == null) {
+				if (graph.getIndex(term) < 0) {
+					throw new RequestException(404, "No term " + term
+					+ " in " + id);
+				}
+				return graph;
+			}
+			try {
+				if (store.getNeighbours(term) == null) {
+					throw new RequestException(404, "No term " + term
+					+ " in " + id);
+				}
+				return store.getNeighbourhood(term, hops, neighbours);
+			} catch (IOException e) {
+				throw new RequestException(500, "Unable to read " + id
+				+ ": " + e.getMessage());
+			}
+		}
+
+		String getHash(SimilarityGraph g) {
+			return (g == graph) ? hash : g.getContentHash();
+		}
+	}
+
+	/**
+	 * One layout, run on a worker: the solve of HeadlessControlFlow with the
+	 * request's starts and iterations, abandoned when cancelled or past its
+	 * deadline, then encoded as the response body
+	 */
+	private static final class Solver extends ControlFlowAbs
+	implements Callable<byte[]> {
+
+		private final String dataset;
+		private final SimilarityGraph graph;
+		private final String refTerm;
+		private final int starts;
+		private final int iterations;
+		private final long deadline;                //System.nanoTime()
+		private final int size;                     //PNG size, 0 for JSON
+		private volatile boolean cancelled;
+		private Layout layout;
+
+		Solver(String dataset, SimilarityGraph graph, String refTerm,
+		       int starts, int iterations, long deadline, int size) {
+			this.dataset = dataset;
+			this.graph = graph;
+			this.refTerm = refTerm;
+			this.starts = starts;
+			this.iterations = iterations;
+			this.deadline = deadline;
+			this.size = size;
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+
+		boolean isCancelledByRequest() {
+			return cancelled;
+		}
+
+		public byte[] call() throws IOException {
+			checkCancelled();                       //e.g. timed out queueing
+			run(graph, refTerm);
+			return encode(dataset, layout, size);
+		}
+
+		@Override
+		protected int getNumberOfStarts() {
+			return starts;
+		}
+
+		@Override
+		protected boolean isCancelled() {
+			return cancelled || System.nanoTime() - deadline > 0
+			|| Thread.currentThread().isInterrupted();  //server stopping
+		}
+
+		@Override
+		protected void getSolution(Model model) {
+			for (int i = 0; i < iterations; i++) {
+				checkCancelled();
+				double sumError = model.imposeForces();     //impose force
+				model.advanceTime();                //increment time
+				sample(model, i, sumError);
+			}
+
+			model.rotateCoords2D();
+			model.reflectCoords2D();
+			model.advanceTime();
+
+			layout = model.getLayout();
+		}
+	}
+
+	/**
+	 * Response bodies, least recently used dropped first once they hold
+	 * more than a given number of bytes
+	 */
+	private static final class ResultCache {
+
+		private final long capacity;                //bytes
+		private final LinkedHashMap<String, byte[]> entries =
+		new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+		private long size;                          //bytes held
+
+		ResultCache(long capacity) {
+			this.capacity = capacity;
+		}
+
+		synchronized byte[] get(String key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(String key, byte[] body) {
+			if (body.length > capacity) {
+				return;
+			}
+			byte[] old = entries.put(key, body);
+			size += body.length - ((old == null) ? 0 : old.length);
+			Iterator<byte[]> eldest = entries.values().iterator();
+			while (size > capacity) {
+				size -= eldest.next().length;
+				eldest.remove();
+			}
+			CACHE_BYTES.set(size);
+		}
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * @param args options, then id=file for each dataset (see above)
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		LayoutServer layoutServer = new LayoutServer();
+		int port = DEFAULT_PORT;
+		int datasetCount = 0;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-port")) {
+					port = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-workers")) {
+					layoutServer.setWorkers(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-queue")) {
+					layoutServer.setQueue(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-timeout")) {
+					layoutServer.setTimeout(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-cache")) {
+					layoutServer.setCacheBytes(Long.parseLong(args[++i])
+					<< 20);
+				} else if (args[i].equals("-store")) {
+					layoutServer.setLayoutStore(LayoutStore.openReadOnly(
+					new File(args[++i])));
+				} else if (args[i].indexOf('=') > 0) {
+					int equals = args[i].indexOf('=');
+					String id = args[i].substring(0, equals);
+					File file = new File(args[i].substring(equals + 1));
+					long start = System.nanoTime();
+					layoutServer.addDataset(id, file);
+					System.out.println("Loaded " + id + " from " + file
+					+ " in " + (System.nanoTime() - start) / 1e9 + " sec");
+					datasetCount++;
+				} else {
+					throw new IllegalArgumentException(args[i]);
+				}
+			}
+		} catch (RuntimeException e) {                  //bad or missing value
+			datasetCount = 0;
+		}
+		if (datasetCount == 0) {
+			System.err.println("Usage: LayoutServer [-port n] [-workers n]"
+			+ " [-queue n] [-timeout s] [-cache MB] [-store file]"
+			+ " id=file [id=file ...]");
+			System.exit(1);
+		}
+		layoutServer.start(port);
+		System.out.println("Listening on http://"
+		+ InetAddress.getLoopbackAddress().getHostAddress() + ":"
+		+ layoutServer.getPort() + "/");
+	}
+}
@@ -34,6 +34,8 @@ package visualiser.distancemodel;
 import visualiser.distancemodel.controlflow.AnimatedControlFlow;
 import visualiser.distancemodel.controlflow.ControlFlowAbs;
 
+import java.io.File;
+
 /**
  * @author Jeremy Reffin
  *         V2.0 20110822
@@ -43,9 +45,16 @@ public class Main {
 	/**
 	 * @param args args[0] = file name for term relations.
 	 *             args[1] = name of reference term
+	 *             args[2] = optional trace file to record the animation to
 	 */
 	public static void main(String[] args) {
-		new Main().run("tim_lewis", "tim_lewis");
+		if (args.length >= 3) {
+			new AnimatedControlFlow(args[0], args[1], new File(args[2]));
+		} else if (args.length >= 2) {
+			new Main().run(args[0], args[1]);       //"-" reads standard input
+		} else {
+			new Main().run("tim_lewis", "tim_lewis");
+		}
 	}
 
 	public void run(String fileName, String refTerm) {
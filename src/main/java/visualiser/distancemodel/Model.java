@@ -45,16 +45,24 @@
 package visualiser.distancemodel;
 
 import visualiser.distancemodel.exceptions.ClockInconsistentException;
+import visualiser.distancemodel.io.FileSimilaritySource;
+import visualiser.distancemodel.io.SimilarityHandler;
+import visualiser.distancemodel.io.SimilaritySource;
+import visualiser.distancemodel.io.SparsifyingSource;
+import visualiser.distancemodel.io.StreamSimilaritySource;
+import visualiser.distancemodel.metrics.LayoutEvents;
+import visualiser.distancemodel.metrics.Metrics;
+import visualiser.distancemodel.render.EdgeLayer;
+import visualiser.distancemodel.render.FrameSlot;
 import visualiser.distancemodel.terms.Term;
 
-import javax.swing.*;
 import java.io.*;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map.Entry;
-import java.util.Scanner;
 
 import static visualiser.distancemodel.GlobalParameters.*;
 
@@ -69,6 +77,10 @@ public class Model {
 	 */
 	private static final int INITIAL_FIELD = 16;     //initial field size
 	private static final boolean RE_SCALE = true;   //not implemented yet
+	private static final Metrics.Counter EDGES_READ = Metrics.counter(
+	"edges_read", "Similarity relations read from sources");
+	private static final Metrics.Counter ITERATIONS = Metrics.counter(
+	"iterations", "Time steps taken by all models");
 	/**
 	 * **********************FIELDS*******************************
 	 */
@@ -81,29 +93,92 @@ public class Model {
 	private String referenceTerm;
 	private int refTermIndex;
 	private int[] orientors;
+	private boolean warmStarted;                        //positions supplied
+	private float[] importance;                         //shared by snapshots
+	private double[] similarityBounds;                  //[0]=min, [1]=max
+	private LinkedHashSet<String> changed;              //since relaxChanges
+	private HashSet<String> unplaced;                   //new, at random
 
 	/***********Constructors and Static Factory Methods*************/
 	/**
 	 * @param f filename of data file holding similarity relations
 	 */
 	public Model(File f, String refTerm) {
+		this(new FileSimilaritySource(f), refTerm);
+	}
+
+	/**
+	 * @param source  supplier of similarity relations (file, thesaurus, ...)
+	 * @param refTerm name of the reference term
+	 */
+	public Model(SimilaritySource source, String refTerm) {
+		this(refTerm, INITIAL_FIELD);
+		//Read data and set terms, numberOfTerms, field, & identifiers
+		readData(source);
+		initialiseReference();
+	}
+
+	/**
+	 * Build directly from in-memory data; see ModelBuilder
+	 */
+	Model(ModelBuilder builder) {
+		this(builder.getReferenceTerm(), Math.max(INITIAL_FIELD,
+		builder.getNumberOfTerms() + 1));
+		String[] names = builder.getIdentifiers();
+		double[][] positions = builder.getPositions();
+		int[] index = new int[names.length];        //builder to model index
+		for (int i = 0; i < names.length; i++) {
+			createIdentifierTerm(names[i], (positions == null)
+			? null : positions[i]);
+			index[i] = terms.get(names[i]).getArray();
+		}
+		double[] similarityBounds = initialiseBounds();
+		if (SparsifyingSource.isConfigured()) {
+			//filter array edges and source together, looked up by name
+			readRelations(builder.getRelations(), similarityBounds,
+			new long[2]);
+		} else {
+			int[] from = builder.getFrom();
+			int[] to = builder.getTo();
+			double[] similarities = builder.getSimilarities();
+			for (int e = 0; e < builder.getNumberOfEdges(); e++) {
+				double similarity = getSimilarity(similarities[e]);
+				if (similarity > 0.0 && similarity < 1.0) { //ignore 0 and 1
+					setRelation(index[from[e]], index[to[e]], similarity,
+					similarityBounds);
+				}
+			}
+			if (builder.getSource() != null) {
+				readRelations(builder.getSource(), similarityBounds,
+				new long[2]);
+			}
+		}
+		completeField(similarityBounds);
+		if (!terms.containsKey(referenceTerm)) {
+			throw new IllegalStateException("Reference term " + referenceTerm
+			+ " is not among the terms");
+		}
+		warmStarted = (positions != null);
+		initialiseReference();
+	}
+
+	/**
+	 * Constructor utility. Set up an empty model
+	 *
+	 * @param refTerm  name of the reference term
+	 * @param capacity initial size of field and identifiers
+	 */
+	private Model(String refTerm, int capacity) {
 		//Set these fields
 		sumError = 0;
 		referenceTerm = refTerm;
 		//Initialise these fields
 		terms = new HashMap<String, Term>();
+		changed = new LinkedHashSet<String>();
+		unplaced = new HashSet<String>();
 		numberOfTerms = 0;
-		field = new Field(INITIAL_FIELD);
-		identifiers = initializeIdentifiers(INITIAL_FIELD);      //set to ""
-		//Read data and set terms, numberOfTerms, field, & identifiers
-		readData(f);
-		refTermIndex = setReferenceTerm(referenceTerm);
-		System.out.println("Reference term: " + referenceTerm);
-		System.out.println("ref Term Index: " + refTermIndex);
-		orientors = setOrientors();
-		for (int test : orientors) {
-			System.out.println("Orientor: " + identifiers[test]);
-		}
+		field = new Field(capacity);
+		identifiers = initializeIdentifiers(capacity);      //set to ""
 	}
 
 	/***************ACCESSORS: SIMULATION RESULTS********************/
@@ -121,6 +196,103 @@ public class Model {
 			return term.getArray();
 	}
 
+	public int getNumberOfTerms() {
+		return numberOfTerms;
+	}
+
+	public String getReferenceTerm() {
+		return referenceTerm;
+	}
+
+	/**
+	 * Terms with similarity data for term i, closest (most similar) first.
+	 * Reads only the field, which does not change while the simulation runs
+	 * (unless it is updated incrementally, below), so it may be called from
+	 * the display thread.
+	 *
+	 * @param i   term index, as in getLayout()
+	 * @param max most terms to return
+	 * @return term indices
+	 */
+	public int[] getRelatedTerms(int i, int max) {
+		long[] keys = new long[numberOfTerms];
+		int count = 0;
+		for (int j = 0; j < numberOfTerms; j++) {
+			if (j != i && field.getDataPresent(i, j)) {
+				//Ascending order of key is ascending distance, then index
+				float distance = (float) Math.max(0, field.getIdealDist(i, j));
+				keys[count++] = ((long) Float.floatToIntBits(distance) << 32)
+				| j;
+			}
+		}
+		Arrays.sort(keys, 0, count);
+		int[] related = new int[Math.min(count, max)];
+		for (int k = 0; k < related.length; k++) {
+			related[k] = (int) keys[k];
+		}
+		return related;
+	}
+
+	/**
+	 * @return ideal distance between terms i and j, as in getLayout()
+	 */
+	public double getIdealDistance(int i, int j) {
+		return field.getIdealDist(i, j);
+	}
+
+	/**
+	 * @return true if the relation between terms i and j was read from the
+	 * data rather than filled in at the least similarity
+	 */
+	public boolean isMeasured(int i, int j) {
+		return field.isMeasured(i, j);
+	}
+
+	/**
+	 * @return true if starting positions were supplied when the model was
+	 * built, so exploratory random starts would throw them away
+	 */
+	public boolean isWarmStarted() {
+		return warmStarted;
+	}
+
+	/**
+	 * @return total kinetic energy of the terms (sum of mass * v^2 / 2),
+	 * which falls towards zero as the layout settles
+	 */
+	public double getKineticEnergy() {
+		double energy = 0;
+		for (int i = 0; i < numberOfTerms; i++) {
+			Term term = terms.get(identifiers[i]);
+			double[] velocity = term.getVelocity();
+			double speed2 = 0;
+			for (int k = 0; k < DIMENSIONS; k++) {
+				speed2 += velocity[k] * velocity[k];
+			}
+			energy += term.getMass() * speed2 / 2;
+		}
+		return energy;
+	}
+
+	/**
+	 * @param speed distance per time step
+	 * @return the number of terms moving faster than speed
+	 */
+	public int countMovingTerms(double speed) {
+		int moving = 0;
+		for (int i = 0; i < numberOfTerms; i++) {
+			double[] velocity = terms.get(identifiers[i]).getVelocity();
+			double speed2 = 0;
+			for (int k = 0; k < DIMENSIONS; k++) {
+				speed2 += velocity[k] * velocity[k];
+			}
+			if (speed2 > speed * speed) {
+				moving++;
+			}
+		}
+		return moving;
+	}
+
 	/**
 	 * Displays results in a (DISPLAY_SIZE x DISPLAY_SIZE) window
 	 * at (DISPLAY_POSITION,DISPLAY_POSITION)
@@ -130,17 +302,110 @@ public class Model {
 	 * @return the object responsible for plotting results
 	 */
 	public PlotDistances initialiseDisplay(int displaySize, int displayPosition) {
-		JFrame f = new JFrame();
-		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		PlotDistances plotter = new PlotDistances(terms, numberOfTerms,
-		identifiers, refTermIndex);
-		f.add(plotter);
-		f.setSize(displaySize, displaySize);
-		f.setLocation(displayPosition, displayPosition);
-		f.setVisible(true);
+		PlotDistances plotter = createPlotter();
+		plotter.display(displaySize, displayPosition);
 		return plotter;
 	}
 
+	/**
+	 * Create a plotter of the terms' current positions without putting it
+	 * on screen
+	 */
+	public PlotDistances createPlotter() {
+		FrameSlot frame = new FrameSlot();
+		frame.publish(getLayout());
+		return new PlotDistances(frame, this);
+	}
+
+	/**
+	 * Collect each term's strongest similarity links for display: the
+	 * perTerm related terms with the smallest ideal distances, as an edge
+	 * layer with strength 1 / (1 + ideal distance). Only relations read from
+	 * the data count, not those filled in at the least similarity. Links
+	 * chosen from both ends appear once. Call from the thread running the
+	 * model.
+	 *
+	 * @param perTerm most links kept per term
+	 */
+	public EdgeLayer createEdgeLayer(int perTerm) {
+		long[] pairs = new long[numberOfTerms * perTerm];
+		int count = 0;
+		long[] keys = new long[0];
+		for (int i = 0; i < numberOfTerms; i++) {
+			int[] neighbours = field.getNeighbours(i, numberOfTerms);
+			if (keys.length < neighbours.length) {
+				keys = new long[neighbours.length];
+			}
+			int measured = 0;
+			for (int k = 0; k < neighbours.length; k++) {
+				int j = neighbours[k];
+				if (field.isMeasured(i, j)) {
+					float distance = (float) Math.max(0,
+					field.getIdealDist(i, j));
+					keys[measured++] = ((long) Float.floatToIntBits(distance)
+					<< 32) | j;
+				}
+			}
+			Arrays.sort(keys, 0, measured);             //closest first
+			for (int k = 0; k < Math.min(perTerm, measured); k++) {
+				int j = (int) keys[k];
+				pairs[count++] = ((long) Math.min(i, j) << 32) | Math.max(i, j);
+			}
+		}
+		Arrays.sort(pairs, 0, count);
+		int unique = 0;
+		for (int k = 0; k < count; k++) {
+			if (k == 0 || pairs[k] != pairs[k - 1]) {
+				pairs[unique++] = pairs[k];
+			}
+		}
+		int[] from = new int[unique];
+		int[] to = new int[unique];
+		float[] strength = new float[unique];
+		for (int k = 0; k < unique; k++) {
+			from[k] = (int) (pairs[k] >>> 32);
+			to[k] = (int) pairs[k];
+			strength[k] = (float) (1 / (1 + Math.max(0,
+			field.getIdealDist(from[k], to[k]))));
+		}
+		return new EdgeLayer(from, to, strength);
+	}
+
+	/**
+	 * Take an immutable copy of the current positions
+	 */
+	public Layout getLayout() {
+		String[] names = Arrays.copyOf(identifiers, numberOfTerms);
+		String[] labels = new String[numberOfTerms];
+		double[] coords = new double[numberOfTerms * DIMENSIONS];
+		for (int i = 0; i < numberOfTerms; i++) {
+			Term term = terms.get(identifiers[i]);
+			labels[i] = term.getIdentifier();
+			System.arraycopy(term.getPosition(), 0, coords, i * DIMENSIONS,
+			DIMENSIONS);
+		}
+		return new Layout(names, labels, coords, getImportance(),
+		refTermIndex, internalClock, sumError);
+	}
+
+	/**
+	 * Importance of each term for display: 1 for the reference term, else
+	 * 1 / (1 + ideal distance to it), or 0 with no relation to it. Computed
+	 * once and shared by every snapshot until the terms change.
+	 */
+	private float[] getImportance() {
+		if (importance == null || importance.length != numberOfTerms) {
+			float[] values = new float[numberOfTerms];
+			for (int i = 0; i < numberOfTerms; i++) {
+				double distance = field.getIdealDist(refTermIndex, i);
+				values[i] = (i == refTermIndex) ? 1
+				: (distance > 0) ? (float) (1 / (1 + distance)) : 0;
+			}
+			importance = values;
+		}
+		return importance;
+	}
+
 	/***************MUTATORS: RUNNING SIMULATION********************/
 	/**
 	 * impose forces on terms
@@ -149,53 +414,62 @@ public class Model {
 		double[] forces = new double[DIMENSIONS];
 		sumError = 0.0;
 		for (int j = 0; j < numberOfTerms; j++) {
-			Term term = terms.get(identifiers[j]);
-			Arrays.fill(forces, 0);                 //initialize result
-			double[] coord = term.getPosition();    //get coords for distance
-			int arrayIndex = term.getArray();       //get array index
-			double theta[] = new double[DIMENSIONS];
-			double cosTheta;
-			double sinTheta;
-			double sumRate = 0;
-			for (int i = 0; i < numberOfTerms; i++) {   //loop through terms
-				if (i != arrayIndex && field.getDataPresent(arrayIndex, i)) {
-					Term otherTerm = terms.get(identifiers[i]);
-					double[] otherCoord = otherTerm.getPosition();
-					double[] delta = new double[DIMENSIONS];
-					double distance = 0;
-					for (int k = 0; k < DIMENSIONS; k++) {
-						delta[k] = otherCoord[k] - coord[k];
-						distance += Math.pow(delta[k], 2);
-					}
-					distance = Math.sqrt(distance);
-					for (int k = 0; k < DIMENSIONS; k++) {
-						if (Math.abs(distance) < 0.0005) {
-							theta[k] = 1 / Math.sqrt(2); //default if coincident
-						} else {
-							theta[k] = delta[k] / distance;
-						}
-					}
-					double difference = (Math.abs(distance) - field.getIdealDist(
-					arrayIndex, i)) / 2;
-					sumError += Math.abs(difference);   //accumulator of error
-					double forceRate = field.getForceRate(arrayIndex, i);
-					sumRate += Math.log10(forceRate);
-					double[] dif = new double[DIMENSIONS];
-					for (int k = 0; k < DIMENSIONS; k++) {
-						dif[k] = difference * theta[k];
-						forces[k] += dif[k] / forceRate;    //spring constant
-					}
-				}
-			}
-			sumRate = sumRate / (numberOfTerms - 1);
-			sumRate = Math.pow(10, sumRate);
-			double friction = Math.sqrt(numberOfTerms / sumRate);
-			term.imposeForce(forces, friction);
+			imposeForce(j, forces);
 		}
 		//System.out.println(sumError);
 		return sumError;
 	}
 
+	/**
+	 * imposeForces utility. Impose the force of its springs on one term,
+	 * adding their error to sumError
+	 *
+	 * @param forces scratch array of DIMENSIONS
+	 */
+	private void imposeForce(int j, double[] forces) {
+		Term term = terms.get(identifiers[j]);
+		Arrays.fill(forces, 0);                 //initialize result
+		double[] coord = term.getPosition();    //get coords for distance
+		int arrayIndex = term.getArray();       //get array index
+		double theta[] = new double[DIMENSIONS];
+		double cosTheta;
+		double sinTheta;
+		double sumRate = 0;
+		int[] neighbours = field.getNeighbours(arrayIndex, numberOfTerms);
+		for (int i : neighbours) {          //loop through linked terms
+			Term otherTerm = terms.get(identifiers[i]);
+			double[] otherCoord = otherTerm.getPosition();
+			double[] delta = new double[DIMENSIONS];
+			double distance = 0;
+			for (int k = 0; k < DIMENSIONS; k++) {
+				delta[k] = otherCoord[k] - coord[k];
+				distance += Math.pow(delta[k], 2);
+			}
+			distance = Math.sqrt(distance);
+			for (int k = 0; k < DIMENSIONS; k++) {
+				if (Math.abs(distance) < 0.0005) {
+					theta[k] = 1 / Math.sqrt(2); //default if coincident
+				} else {
+					theta[k] = delta[k] / distance;
+				}
+			}
+			double difference = (Math.abs(distance) - field.getIdealDist(
+			arrayIndex, i)) / 2;
+			sumError += Math.abs(difference);   //accumulator of error
+			double forceRate = field.getForceRate(arrayIndex, i);
+			sumRate += Math.log10(forceRate);
+			double[] dif = new double[DIMENSIONS];
+			for (int k = 0; k < DIMENSIONS; k++) {
+				dif[k] = difference * theta[k];
+				forces[k] += dif[k] / forceRate;    //spring constant
+			}
+		}
+		sumRate = sumRate / (numberOfTerms - 1);
+		sumRate = Math.pow(10, sumRate);
+		double friction = Math.sqrt(numberOfTerms / sumRate);
+		term.imposeForce(forces, friction);
+	}
+
 	/**
 	 * impose reference frame
 	 */
@@ -209,6 +483,7 @@ public class Model {
 			term.advanceTime();
 		}
 		internalClock++;
+		ITERATIONS.increment();
 	}
 
 	/**
@@ -275,7 +550,268 @@ public class Model {
 		}
 	}
 
+	/**
+	 * Start from a previous layout of much the same terms, e.g. before the
+	 * similarities were refreshed, instead of from random positions. Terms
+	 * are matched by identifier and take their previous positions. A term
+	 * the previous layout lacks goes to the similarity-weighted centre of up
+	 * to WARM_NEIGHBOURS of its most similar terms already placed, offset a
+	 * little so that it doesn't sit on top of them; one with no placed
+	 * relation keeps its random position. If any term matched, the model
+	 * counts as warm started, so exploratory starts are skipped and the
+	 * final run is shortened.
+	 *
+	 * @param previous earlier layout
+	 * @return number of terms matched in it
+	 */
+	public int warmStart(Layout previous) {
+		HashMap<String, Integer> previousIndex = new HashMap<String, Integer>();
+		for (int i = 0; i < previous.size(); i++) {
+			previousIndex.put(previous.getIdentifier(i), i);
+		}
+		boolean[] placed = new boolean[numberOfTerms];
+		int matched = 0;
+		for (int i = 0; i < numberOfTerms; i++) {
+			Integer p = previousIndex.get(identifiers[i]);
+			if (p != null) {
+				double[] position = new double[DIMENSIONS];
+				for (int k = 0; k < DIMENSIONS; k++) {
+					position[k] = previous.getCoord(p, k);
+				}
+				placeTerm(i, position);
+				placed[i] = true;
+				matched++;
+			}
+		}
+		if (matched == 0) {
+			return 0;
+		}
+
+		placeNewTerms(placed);
+		internalClock = 0;
+		warmStarted = true;
+		if (DEBUG) {
+			System.out.println("Warm start: " + matched + " of "
+			+ numberOfTerms + " terms from " + previous);
+		}
+		return matched;
+	}
+
+	/****************MUTATORS: INCREMENTAL UPDATES******************/
+	/*
+	 * Terms and relations can be changed while the model is being laid out,
+	 * between iterations and on the simulation thread (see LiveLayout). The
+	 * terms changed are remembered, and relaxChanges() then places any new
+	 * ones and moves the changed terms and their nearest neighbours while
+	 * everything else stays put. Ordinary iterations then let the whole
+	 * layout settle. Missing relations are filled in at the least similarity
+	 * seen, as when loading, if SET_MISSING_TO_MIN.
+	 */
+
+	/**
+	 * Add a term with no relations yet
+	 *
+	 * @param identifier name of term
+	 * @return false if there already is one
+	 */
+	public boolean addTerm(String identifier) {
+		if (terms.containsKey(identifier)) {
+			return false;
+		}
+		createIdentifierTerm(identifier, null);
+		int i = numberOfTerms - 1;
+		if (SET_MISSING_TO_MIN) {
+			double distance = field.getDistance(similarityBounds[0]);
+			for (int j = 0; j < i; j++) {
+				field.setIdealDistance(i, j, distance);
+				field.setForceRate(i, j, WEAK_FORCE_MULT);
+				field.setDataPresent(i, j);
+			}
+		}
+		field.setForceRate(refTermIndex, i, STRONG_FORCE_MULT);
+		unplaced.add(identifier);
+		changed.add(identifier);
+		importance = null;
+		return true;
+	}
+
+	/**
+	 * Add or update a relation, adding its terms if they are new
+	 *
+	 * @param data similarity, as it would be read from a file
+	 * @return false if it is ignored, as when loading, for being 0 or 1
+	 */
+	public boolean putRelation(String identifier1, String identifier2,
+	                           double data) {
+		double similarity = getSimilarity(data);
+		if (!(similarity > 0.0 && similarity < 1.0)
+		|| identifier1.equals(identifier2)) {
+			return false;
+		}
+		addTerm(identifier1);
+		addTerm(identifier2);
+		setRelation(getReference(identifier1), getReference(identifier2),
+		similarity, similarityBounds);
+		changed.add(identifier1);
+		changed.add(identifier2);
+		importance = null;
+		return true;
+	}
+
+	/**
+	 * Remove a relation. If SET_MISSING_TO_MIN it is then missing, so goes
+	 * back to the least similarity.
+	 *
+	 * @return false if either term is unknown
+	 */
+	public boolean removeRelation(String identifier1, String identifier2) {
+		int i = getReference(identifier1);
+		int j = getReference(identifier2);
+		if (i < 0 || j < 0 || i == j) {
+			return false;
+		}
+		if (SET_MISSING_TO_MIN) {
+			field.setIdealDistance(i, j, field.getDistance(
+			similarityBounds[0]));
+			field.setForceRate(i, j, WEAK_FORCE_MULT);
+			field.setMeasured(i, j, false);
+		} else {
+			field.clearRelation(i, j);
+		}
+		if (i == refTermIndex || j == refTermIndex) {
+			field.setForceRate(i, j, STRONG_FORCE_MULT);
+		}
+		changed.add(identifier1);
+		changed.add(identifier2);
+		importance = null;
+		return true;
+	}
+
+	/**
+	 * Remove a term and its relations. The last term takes its index, so
+	 * indices of earlier snapshots no longer apply.
+	 *
+	 * @return false if there is no such term
+	 * @throws IllegalArgumentException if it is the reference term
+	 * @throws IllegalStateException    if fewer than three terms would be
+	 *                                  left to orient the layout by
+	 */
+	public boolean removeTerm(String identifier) {
+		int i = getReference(identifier);
+		if (i < 0) {
+			return false;
+		}
+		if (i == refTermIndex) {
+			throw new IllegalArgumentException("Can't remove the reference"
+			+ " term " + identifier);
+		}
+		if (numberOfTerms <= 3) {
+			throw new IllegalStateException("Can't remove " + identifier
+			+ ": a model needs at least three terms");
+		}
+		for (int j : getRelatedTerms(i, LOCAL_NEIGHBOURS)) {
+			changed.add(identifiers[j]);            //they lose a relation
+		}
+		int last = numberOfTerms - 1;
+		if (i != last) {
+			field.moveTerm(last, i, numberOfTerms);
+			identifiers[i] = identifiers[last];
+			terms.get(identifiers[i]).setArray(i);
+			if (refTermIndex == last) {
+				refTermIndex = i;
+			}
+		} else {
+			for (int k = 0; k < numberOfTerms; k++) {
+				field.clearRelation(last, k);
+			}
+		}
+		identifiers[last] = "";
+		terms.remove(identifier);
+		numberOfTerms--;
+		orientors = setOrientors();
+		changed.remove(identifier);
+		unplaced.remove(identifier);
+		importance = null;
+		return true;
+	}
+
+	/**
+	 * Absorb the changes made since the last call: place new terms at the
+	 * similarity-weighted centre of their most similar placed terms, then
+	 * relax the changed terms and LOCAL_NEIGHBOURS nearest neighbours of
+	 * each for a number of iterations, all other terms (and the reference
+	 * term) staying where they are
+	 *
+	 * @param iterations steps of local relaxation, e.g. LOCAL_ITERATIONS
+	 * @return number of terms relaxed
+	 */
+	public int relaxChanges(int iterations) {
+		if (changed.isEmpty()) {
+			return 0;
+		}
+		boolean[] placed = new boolean[numberOfTerms];
+		Arrays.fill(placed, true);
+		for (String identifier : unplaced) {
+			placed[getReference(identifier)] = false;
+		}
+		placeNewTerms(placed);
+
+		boolean[] local = new boolean[numberOfTerms];
+		for (String identifier : changed) {
+			int i = getReference(identifier);
+			local[i] = true;
+			for (int j : getRelatedTerms(i, LOCAL_NEIGHBOURS)) {
+				local[j] = true;
+			}
+		}
+		local[refTermIndex] = false;                    //stays at the origin
+		int[] moving = new int[numberOfTerms];
+		int count = 0;
+		for (int i = 0; i < numberOfTerms; i++) {
+			if (local[i]) {
+				moving[count++] = i;
+			}
+		}
+
+		double savedError = sumError;                   //of the whole model
+		double[] forces = new double[DIMENSIONS];
+		for (int step = 0; step < iterations; step++) {
+			for (int k = 0; k < count; k++) {
+				imposeForce(moving[k], forces);
+			}
+			for (int k = 0; k < count; k++) {
+				Term term = terms.get(identifiers[moving[k]]);
+				term.advanceTime();
+				term.setInternalClock(internalClock);
+			}
+		}
+		sumError = savedError;
+		changed.clear();
+		unplaced.clear();
+		return count;
+	}
+
+	/**
+	 * @return true if terms or relations have changed since relaxChanges
+	 */
+	public boolean hasChanges() {
+		return !changed.isEmpty();
+	}
+
 	/*****************MUTATORS: REFERENCE TERM**********************/
+	/**
+	 * Constructor utility. Set up reference term and orientors once loaded
+	 */
+	private void initialiseReference() {
+		refTermIndex = setReferenceTerm(referenceTerm);
+		System.out.println("Reference term: " + referenceTerm);
+		System.out.println("ref Term Index: " + refTermIndex);
+		orientors = setOrientors();
+		for (int test : orientors) {
+			System.out.println("Orientor: " + identifiers[test]);
+		}
+	}
+
 	/**
 	 * set up the key reference term
 	 */
@@ -324,84 +860,129 @@ public class Model {
 	/**
 	 * Load objects and similarities into arena
 	 */
-	private void readData(File file) {
-		double[] similarityBounds = new double[2];      //[0]=min, [1]=max
+	private void readData(SimilaritySource source) {
+		LayoutEvents.Load event = new LayoutEvents.Load();
+		event.begin();
+		long[] read = new long[2];                      //bytes, lines
+		double[] similarityBounds = initialiseBounds();
+		try {
+			readRelations(source, similarityBounds, read);
+		} finally {
+			completeField(similarityBounds);
+		}
+		if (event.shouldCommit()) {
+			event.source = source.toString();
+			event.bytes = read[0];
+			event.lines = read[1];
+			event.terms = numberOfTerms;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return similarity bounds: [0]=min, [1]=max
+	 */
+	private double[] initialiseBounds() {
+		double[] similarityBounds = new double[2];
 		similarityBounds[0] = (double) Double.MAX_VALUE;
 		similarityBounds[1] = (double) Double.MIN_VALUE;
-		ArrayList<SimRel> tempContents = new ArrayList<SimRel>();
-		Scanner scanner = null;
+		return similarityBounds;
+	}
+
+	/**
+	 * Add every relation from a source (after any configured sparsification)
+	 *
+	 * @param read set to the bytes read, after decompression (0 unless the
+	 *             source is a file or stream), and the lines read (or, for
+	 *             other sources, relations), before sparsification
+	 */
+	private void readRelations(SimilaritySource data,
+	                           final double[] similarityBounds, long[] read) {
+		StreamSimilaritySource stream = null;           //if text is read
+		SimilaritySource source = data;
+		final long[] relations = new long[1];
 		try {
-			boolean moreData = true;
-			scanner = new Scanner(file);
+			if (data instanceof FileSimilaritySource) {
+				stream = ((FileSimilaritySource) data).open();
+			} else if (data instanceof StreamSimilaritySource) {
+				stream = (StreamSimilaritySource) data;
+			}
+			source = SparsifyingSource.configured((stream != null) ? stream
+			: data);
 			//Read identifier1, identifier 2, similarity blocks in turn
-			while (moreData && scanner.hasNextLine()) {
-				// Read term1 - term2 - similarity;
-				if (scanner.hasNext()) {
-					//read identifiers and similarity relationship
-					String identifier1 = scanner.next();
-					String identifier2 = scanner.next();
-					double similarity = getSimilarity(scanner.nextDouble());
-					//populate field
-					if (similarity > 0.0 && similarity < 1.0) { //ignore 0.0 and 1.0
-						similarityBounds =
-						checkBounds(similarity, similarityBounds);
-						createIdentifierTerm(identifier1);
-						createIdentifierTerm(identifier2);
-						checkExpandField();             //check if expand field
-						int id1 = terms.get(identifier1).getArray();
-						int id2 = terms.get(identifier2).getArray();
-						tempContents.add(new SimRel(id1, id2, similarity));
-						field.setIdealDistance(id1, id2, field.getDistance(
-						similarity));
-						if (USE_DATA) {
-							field.setDataPresent(id1, id2);
-						}
-					}
-				} else {
-					moreData = false;
+			source.read(new SimilarityHandler() {
+				public void relation(String identifier1, String identifier2,
+				                     double data) {
+					EDGES_READ.increment();
+					relations[0]++;
+					addRelation(identifier1, identifier2, data,
+					similarityBounds);
 				}
-			}
+			});
 		} catch (FileNotFoundException e) {
-			System.err.println("Unable to open" + file.toString());
+			System.err.println("Unable to open" + data.toString());
 		} catch (IOException e) {
 			System.err.println("A problem was encountered reading "
-			+ file.toString());
-		} finally {
-			//System.out.println("Hitting finally...");
-			if (scanner != null) {
-				scanner.close();
-			}
+			+ data.toString());
+		}
+		if (stream != null) {
+			read[0] = stream.getBytesRead();
+			read[1] = stream.getLinesRead();
+		} else if (source instanceof SparsifyingSource) {
+			read[1] = ((SparsifyingSource) source).getEdgesRead();
+		} else {
+			read[1] = relations[0];
+		}
+	}
 
-			System.out.println("Min: " + similarityBounds[0]);
-			System.out.println("Max: " + similarityBounds[1]);
-			//
-			//Possible to re-scale stuff. Not implemented yet
+	/**
+	 * Once all relations are in, fill in missing ones as configured
+	 */
+	private void completeField(double[] similarityBounds) {
+		this.similarityBounds = similarityBounds;       //for later updates
+		System.out.println("Min: " + similarityBounds[0]);
+		System.out.println("Max: " + similarityBounds[1]);
+		//
+		//Possible to re-scale stuff. Not implemented yet
 //            double ratio = 1;
 //            if (similarityBounds[0] != similarityBounds[1]) {
 //                double targetRange = (0.99 - 0.01);
 //                //double targetRange = (similarityBounds[1] - similarityBounds[0]);
 //                double sourceRange = (similarityBounds[1] - similarityBounds[0]);
 //                ratio = targetRange / sourceRange;
-//            }
-//            for (SimRel content : tempContents) {
-//                int id1 = content.id1();
-//                int id2 = content.id2();
-//                double similarity = content.similarity();
-//                //System.out.print(similarity + "\t");
-//
-//                similarity = similarityBounds[0]
-//                        + ((similarity - similarityBounds[0]) * ratio);
-//                System.out.println("Revised similarity : " + similarity);
-//
-//                field.setIdealDistance(id1, id2, field.getDistance(
-//                        similarity));
-			//field.setIdealDistance(id1, id2, 0.0);
 //            }
 
-			//Now set empty values in idealDistance field to minimum similarity
-			if (SET_MISSING_TO_MIN) {
-				field.setRemainingFieldToMinSim(similarityBounds[0]);
-			}
+		//Now set empty values in idealDistance field to minimum similarity
+		if (SET_MISSING_TO_MIN) {
+			field.setRemainingFieldToMinSim(similarityBounds[0]);
+		}
+	}
+
+	/**
+	 * Populate the field with a single similarity relation
+	 */
+	private void addRelation(String identifier1, String identifier2,
+	                         double data, double[] similarityBounds) {
+		double similarity = getSimilarity(data);
+		if (similarity > 0.0 && similarity < 1.0) { //ignore 0.0 and 1.0
+			createIdentifierTerm(identifier1, null);
+			createIdentifierTerm(identifier2, null);
+			int id1 = terms.get(identifier1).getArray();
+			int id2 = terms.get(identifier2).getArray();
+			setRelation(id1, id2, similarity, similarityBounds);
+		}
+	}
+
+	/**
+	 * Set the ideal distance between two existing terms
+	 */
+	private void setRelation(int id1, int id2, double similarity,
+	                         double[] similarityBounds) {
+		checkBounds(similarity, similarityBounds);
+		field.setIdealDistance(id1, id2, field.getDistance(similarity));
+		field.setMeasured(id1, id2, true);
+		if (USE_DATA) {
+			field.setDataPresent(id1, id2);
 		}
 	}
 
@@ -430,15 +1011,95 @@ public class Model {
 		}
 	}
 
-	private void createIdentifierTerm(String identifier) {
+	/**
+	 * Create a term for an identifier not seen before
+	 *
+	 * @param identifier name of term
+	 * @param coords     starting position, or null for a random one
+	 */
+	private void createIdentifierTerm(String identifier, double[] coords) {
 		//if first time seen add identifier, create new term
 		if (!terms.containsKey(identifier)) {
+			checkExpandField();                 //check if expand field
 			identifiers[numberOfTerms] = identifier;
-			//System.out.println("Ident: " + numberOfTerms);
-			terms.put(identifier, new Term(DIMENSIONS,
-			numberOfTerms++, identifier));
-			//System.out.println(terms.get(identifier));
+			Term term = (coords == null)
+			? new Term(DIMENSIONS, numberOfTerms, identifier)
+			: new Term(DIMENSIONS, numberOfTerms, identifier, coords);
+			terms.put(identifier, term);
+			numberOfTerms++;
+		}
+	}
+
+	/**
+	 * Place each term not yet placed near its placed neighbours, in rounds
+	 * so that one related only to other new terms is placed once they are.
+	 * Any with no placed relation keep their random positions.
+	 *
+	 * @param placed which terms are placed; updated
+	 */
+	private void placeNewTerms(boolean[] placed) {
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (int i = 0; i < numberOfTerms; i++) {
+				if (!placed[i] && placeNearNeighbours(i, placed)) {
+					placed[i] = true;
+					progress = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Put a term at rest at a position
+	 */
+	private void placeTerm(int i, double[] position) {
+		Term term = terms.get(identifiers[i]);
+		term.reset();
+		term.setPosition(position);
+		term.advanceTime();                             //before = after
+		term.setInternalClock(internalClock);
+	}
+
+	/**
+	 * Place a term at the weighted centre of its most
+	 * similar placed terms, weighting each by 1 / (1 + ideal distance)
+	 *
+	 * @return false if none of its related terms is placed yet
+	 */
+	private boolean placeNearNeighbours(int i, boolean[] placed) {
+		double[] centre = new double[DIMENSIONS];
+		double totalWeight = 0;
+		double nearest = 0;                             //ideal distance
+		int found = 0;
+		for (int j : getRelatedTerms(i, numberOfTerms)) {
+			if (!placed[j]) {
+				continue;
+			}
+			double distance = Math.max(0, field.getIdealDist(i, j));
+			double weight = 1 / (1 + distance);
+			double[] position = terms.get(identifiers[j]).getPosition();
+			for (int k = 0; k < DIMENSIONS; k++) {
+				centre[k] += weight * position[k];
+			}
+			totalWeight += weight;
+			if (found == 0) {
+				nearest = distance;
+			}
+			if (++found == WARM_NEIGHBOURS) {
+				break;
+			}
+		}
+		if (found == 0) {
+			return false;
+		}
+		Term term = terms.get(identifiers[i]);
+		double[] offset = term.randomCoords();          //in [-1, +1]
+		for (int k = 0; k < DIMENSIONS; k++) {
+			centre[k] = centre[k] / totalWeight + offset[k] * nearest / 2;
 		}
+		placeTerm(i, centre);
+		return true;
 	}
 
 	/**
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Builds a Model from data already in memory, for use of the layout engine
+ * as a library. Terms are given as an array of identifiers and relations as
+ * parallel primitive arrays of indices into it (or as any SimilaritySource,
+ * e.g. a SimilarityGraph), so no file is written or parsed. Positions may be
+ * supplied to warm start the layout from a previous solution. Relations pass
+ * through any sparsification set in GlobalParameters, as when read from a
+ * file; the array edges and the source are filtered together, so a term's
+ * top-k is taken over both.
+ *
+ *     Model model = new ModelBuilder()
+ *         .setIdentifiers(names)
+ *         .setEdges(from, to, similarities)
+ *         .setReferenceTerm("tim_lewis")
+ *         .build();
+ */
+package visualiser.distancemodel;
+
+import visualiser.distancemodel.exceptions.WrongDimensionsException;
+import visualiser.distancemodel.io.SimilarityHandler;
+import visualiser.distancemodel.io.SimilaritySource;
+
+import java.io.IOException;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Programmatic, file-free construction of a Model.
+ */
+public class ModelBuilder {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private String[] identifiers = new String[0];
+	private int[] from = new int[0];                    //edge start index
+	private int[] to = new int[0];                      //edge end index
+	private double[] similarities = new double[0];
+	private int numberOfEdges;
+	private SimilaritySource source;                    //further relations
+	private String referenceTerm;
+	private double[][] positions;                       //warm start, or null
+
+	/************************Accessors******************************/
+	public String[] getIdentifiers() {
+		return identifiers;
+	}
+
+	public int getNumberOfTerms() {
+		return identifiers.length;
+	}
+
+	public int[] getFrom() {
+		return from;
+	}
+
+	public int[] getTo() {
+		return to;
+	}
+
+	public double[] getSimilarities() {
+		return similarities;
+	}
+
+	public int getNumberOfEdges() {
+		return numberOfEdges;
+	}
+
+	public SimilaritySource getSource() {
+		return source;
+	}
+
+	public String getReferenceTerm() {
+		return referenceTerm;
+	}
+
+	public double[][] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * @return the array edges, by identifier, followed by any source's
+	 * relations, as one source (e.g. to be sparsified together)
+	 */
+	public SimilaritySource getRelations() {
+		return new SimilaritySource() {
+			public void read(SimilarityHandler handler) throws IOException {
+				for (int e = 0; e < numberOfEdges; e++) {
+					handler.relation(identifiers[from[e]],
+					identifiers[to[e]], similarities[e]);
+				}
+				if (source != null) {
+					source.read(handler);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return numberOfEdges + " array edges" + ((source == null)
+				? "" : " and " + source);
+			}
+		};
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * @param names term identifiers; edges refer to terms by index in here
+	 */
+	public ModelBuilder setIdentifiers(String[] names) {
+		identifiers = names;
+		return this;
+	}
+
+	/**
+	 * Relations as parallel arrays. The arrays are used, not copied.
+	 *
+	 * @param f edge start (index into identifiers)
+	 * @param t edge end (index into identifiers)
+	 * @param s raw similarity of each edge, as would be read from a file
+	 */
+	public ModelBuilder setEdges(int[] f, int[] t, double[] s) {
+		if (f.length != t.length || f.length != s.length) {
+			throw new IllegalArgumentException("Edge arrays differ in length: "
+			+ f.length + ", " + t.length + ", " + s.length);
+		}
+		from = f;
+		to = t;
+		similarities = s;
+		numberOfEdges = f.length;
+		return this;
+	}
+
+	/**
+	 * Relations from an iterator-style source, read after any array edges.
+	 * New identifiers it mentions are added as terms.
+	 */
+	public ModelBuilder setSource(SimilaritySource s) {
+		source = s;
+		return this;
+	}
+
+	public ModelBuilder setReferenceTerm(String refTerm) {
+		referenceTerm = refTerm;
+		return this;
+	}
+
+	/**
+	 * @param p starting position of each identifier (p[i] has DIMENSIONS
+	 *          coordinates), e.g. from Model.clonePositions of an earlier run
+	 */
+	public ModelBuilder setPositions(double[][] p) {
+		positions = p;
+		return this;
+	}
+
+	/**
+	 * Check the inputs are consistent and build the model
+	 *
+	 * @return the model, with field and terms populated
+	 * @throws IllegalStateException if the reference term is not among the
+	 *                               terms
+	 */
+	public Model build() {
+		if (referenceTerm == null) {
+			throw new IllegalStateException("No reference term set");
+		}
+		for (int e = 0; e < numberOfEdges; e++) {
+			checkIndex(from[e]);
+			checkIndex(to[e]);
+		}
+		if (positions != null) {
+			if (positions.length != identifiers.length) {
+				throw new IllegalArgumentException(positions.length
+				+ " positions for " + identifiers.length + " identifiers");
+			}
+			for (double[] position : positions) {
+				if (position.length != DIMENSIONS) {
+					throw new WrongDimensionsException("Positions must have "
+					+ DIMENSIONS + " dimensions");
+				}
+			}
+		}
+		return new Model(this);
+	}
+
+	/*********************Utility Methods***************************/
+	private void checkIndex(int index) {
+		if (index < 0 || index >= identifiers.length) {
+			throw new IndexOutOfBoundsException("Edge refers to term " + index
+			+ " but there are " + identifiers.length + " identifiers");
+		}
+	}
+}
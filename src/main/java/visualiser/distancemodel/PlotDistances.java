@@ -30,20 +30,53 @@
  */
 
 /*
- * Graphical display of similarity relationships in 2D
+ * Graphical display of similarity relationships in 2D. The drawing itself is
+ * done by a LayoutRenderer on a snapshot of the terms' positions. For a model
+ * that is still being solved, the snapshots come from a FrameSlot filled by
+ * the simulation thread, and a timer repaints at FRAMES_PER_SECOND whenever a
+ * new one has arrived; the panel then never reads the live terms.
+ *
+ * Each new frame arrives indexed in a SpatialGrid (built by the simulation
+ * thread as it publishes) so that only the terms in view are drawn, and
+ * labels are placed so that none overlap, keeping their places from the
+ * previous frame where they can. The mouse wheel zooms about the pointer,
+ * dragging pans, and a double click fits the whole layout to the window again.
+ *
+ * Hovering over a point shows its term as a tooltip and clicking selects it,
+ * both found through the grid rather than by a scan of the terms. A search
+ * box rings the terms whose identifiers start with the text typed, using a
+ * PrefixIndex built when the plotter is created; Enter selects the first. The
+ * selected term's related terms, closest first, are listed beside the plot
+ * with their ideal distances and joined to it by lines. A check box shows
+ * each term's strongest similarity links under the plot (see EdgeLayer).
+ *
+ * While frames are arriving, a line at the top left gives the frames drawn
+ * and iterations shown per second, both over the last STATS_PERIOD, and the
+ * error of the frame on screen; a check box hides it. Each frame drawn is a
+ * Flight Recorder Paint event (see metrics.LayoutEvents).
  */
 package visualiser.distancemodel;
 
-import visualiser.distancemodel.exceptions.WrongDimensionsException;
+import visualiser.distancemodel.metrics.LayoutEvents;
+import visualiser.distancemodel.render.*;
 import visualiser.distancemodel.terms.Term;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+import static visualiser.distancemodel.GlobalParameters.FRAMES_PER_SECOND;
 
 /**
  * @author Jeremy Reffin
@@ -54,24 +87,14 @@ public class PlotDistances extends JPanel {
 	/**
 	 * *********************CONSTANTS*****************************
 	 */
-	private static final int PAD = 80;                  //border to window edge
-
-	/**
-	 * GlobalParameters for points showing position
-	 */
-	private static final boolean DRAW_POINT = true;             //draw point ?
-	private static final int POINT_SIZE = 4;                    //Size of point
-	private static final Color POINT_COLOUR = Color.BLACK;      //point colour
-
-	/**
-	 * GlobalParameters for legends describing terms
-	 */
-	private static final Color TERM_COLOUR = Color.BLUE;        //term colour
-	private static final String TERM_FONT = "Lucida Grande";    //term font
-	private static final int TERM_FONT_SIZE = 16;               //term font size
-	private static final Color REFTERM_COLOUR = Color.RED;      //ref term colour
-	private static final String REFTERM_FONT = "Lucida Grande"; //ref term font
-	private static final int REFTERM_FONT_SIZE = 16;            //ref term size
+	private static final LayoutRenderer RENDERER = new LayoutRenderer();
+	private static final double ZOOM_STEP = 1.2;        //per wheel notch
+	private static final double HIT_RADIUS = 6;         //pixels, hover/click
+	private static final int MAX_MATCHES = 1000;        //search results ringed
+	private static final int MAX_RELATED = 50;          //terms listed
+	private static final int LIST_WIDTH = 240;          //related terms list
+	private static final int EDGES_PER_TERM = 5;        //strongest links shown
+	private static final long STATS_PERIOD = 1000000000L;  //ns, rates over
 
 	/**
 	 * **********************FIELDS*******************************
@@ -79,12 +102,34 @@ public class PlotDistances extends JPanel {
 	HashMap<String, Term> terms;                //Index into terms
 	String[] identifiers;                       //Array of labels
 	int numberOfTerms;                          //Number of terms
-	double[] min;                               //minimum in each dimension;
-	double[] max;                               //maximum in each dimension
-	double[] screen;                            //screen DIMENSIONS
-	double[] scale;                             //scaling for display
-	double[] coords;                            //coordinates for terms
 	int refTermIndex;                           //reference term index
+	private final Term[] plotted;               //terms in identifier order
+	private final String[] labels;              //their display labels
+	private final RenderState state = new RenderState();   //EDT only
+	private final FrameSlot frames;             //published frames, or null
+	private final Model model;                  //for related terms, or null
+	private final PrefixIndex index;            //identifiers, for search
+	private final EdgeLayer edges;              //similarity links, or null
+	private final Viewport view = new Viewport();
+	private SpatialGrid grid;                   //index of the shown frame
+	//Search and selection, EDT only
+	private final IntList matches = new IntList();
+	private int selected = -1;                  //selected term, or -1
+	private int[] related;                      //its related terms, or null
+	private final JTextField search = new JTextField(20);
+	private final JLabel matchCount = new JLabel();
+	private final DefaultListModel<String> relatedNames =
+	new DefaultListModel<String>();
+	private final JList<String> relatedList = new JList<String>(relatedNames);
+	private final JCheckBox showEdges = new JCheckBox("Links");
+	private final JCheckBox showStats = new JCheckBox("Stats", true);
+	//Frame statistics, EDT only
+	private long statsSince;                    //nanoTime period began, or 0
+	private int statsFrames;                    //frames drawn since
+	private int statsIteration;                 //iteration shown then
+	private double framesPerSecond;
+	private double iterationsPerSecond;
+	private JComponent controls;                //below the plot, or null
 
 	/**
 	 * ********Constructors and Static Factory Methods************
@@ -94,195 +139,316 @@ public class PlotDistances extends JPanel {
 		numberOfTerms = n;
 		identifiers = i;
 		refTermIndex = rti;
-		screen = new double[DIMENSIONS];
-		scale = new double[DIMENSIONS];
-		coords = new double[DIMENSIONS];
-		max = new double[DIMENSIONS];
-		min = new double[DIMENSIONS];
+		plotted = new Term[numberOfTerms];
+		labels = new String[numberOfTerms];
+		for (int j = 0; j < numberOfTerms; j++) {
+			plotted[j] = terms.get(identifiers[j]);
+			labels[j] = plotted[j].getIdentifier();
+		}
+		frames = null;
+		model = null;
+		index = new PrefixIndex(snapshot());
+		edges = null;
+		setBackground(Color.WHITE);
+		addNavigation();
+		addSearch();
 	}
 
-	/*******************Standard Overrides**************************/
 	/**
-	 * Plot in 2D or 3D. 3D version currently doesn't work
+	 * Plot frames published by a running simulation. Indexes the model's
+	 * identifiers and collects its strongest links, so call it from the
+	 * thread running the model, not the event dispatch thread.
+	 *
+	 * @param f slot the simulation publishes into
+	 * @param m the model being solved, for searching and related terms
 	 */
-	@Override
-	protected void paintComponent(Graphics g) throws WrongDimensionsException {
-
-		checkPlotDimensions();                      //only 2 or 3 DIMENSIONS
+	public PlotDistances(FrameSlot f, Model m) {
+		this(f, m, m.getLayout(), m.createEdgeLayer(EDGES_PER_TERM));
+	}
 
-		super.paintComponent(g);                    //call suprclass paintComp
-		Graphics2D graphic = (Graphics2D) g;        //cast to Graphics2D
+	/**
+	 * Plot frames that come without a model, e.g. from a recorded trace.
+	 * Search works as usual; there are no related terms or links.
+	 *
+	 * @param f     slot the frames are published into
+	 * @param first a frame, for the identifiers to search
+	 */
+	public PlotDistances(FrameSlot f, Layout first) {
+		this(f, null, first, null);
+	}
 
+	private PlotDistances(FrameSlot f, Model m, Layout first,
+	                      EdgeLayer links) {
+		frames = f;
+		model = m;
+		plotted = null;
+		labels = null;
+		index = new PrefixIndex(first);
+		edges = links;
 		setBackground(Color.WHITE);
-		graphic.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-		RenderingHints.VALUE_ANTIALIAS_ON);
-
-		setScreen();                                //Set up screen coordinates
-		setMinMaxScale();                           //work out max, min & scale
-		//plotAxes(graphic);                        //plot axes (x,y,(z))
-
-		setCoords();                                //set coordinates of terms
-		drawTerms(graphic);                         //draw Terms
+		addNavigation();
+		addSearch();
+		new Timer(1000 / FRAMES_PER_SECOND, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (frames.hasNewFrame()) {
+					repaint();
+				}
+			}
+		}).start();
 	}
 
-	/*********************Utility Methods***************************/
+	/************************Mutators*******************************/
 	/**
-	 * Check for incorrect number of DIMENSIONS on input
-	 *
-	 * @throws WrongDimensionsException
+	 * Add controls to show below the plot, e.g. for replay. Call before
+	 * display().
 	 */
-	private void checkPlotDimensions() throws WrongDimensionsException {
-		if (DIMENSIONS < 2 || DIMENSIONS > 3) {
-			throw new WrongDimensionsException("Can't plot in " + DIMENSIONS
-			+ " dimensions");
-		}
+	public void setControls(JComponent c) {
+		controls = c;
 	}
 
 	/**
-	 * Plots axes on the screen
-	 *
-	 * @param g2 Graphics2D object
+	 * Show the plot in a (size x size) window at (position, position), with
+	 * the search box above it and the related terms list beside it
 	 */
-	private void plotAxes(Graphics2D g2) {
-		g2.setPaint(Color.DARK_GRAY);
-		g2.draw(new Line2D.Double(PAD + (max[0] - min[0]) * scale[0],
-		screen[1] - (PAD - min[1] * scale[1]), PAD,
-		screen[1] - (PAD - min[1] * scale[1])));
-		g2.draw(new Line2D.Double(PAD - min[0] * scale[0], screen[1] - PAD,
-		PAD - min[0] * scale[0], screen[1] - (PAD + (max[1] - min[1])
-		* scale[1])));
-		if (DIMENSIONS == 3) {                      //Draw z-axis
-			g2.draw(new Line2D.Double(PAD - min[0] * scale[0],
-			screen[1] - (PAD - min[1] * scale[1]),
-			PAD - min[0] * scale[0],
-			screen[1] - (PAD - min[1] * scale[1])));
-		}
+	public void display(final int size, final int position) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JFrame f = new JFrame();
+				f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				JPanel searchBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+				searchBar.add(new JLabel("Search"));
+				searchBar.add(search);
+				searchBar.add(matchCount);
+				if (edges != null) {
+					searchBar.add(showEdges);
+				}
+				if (frames != null) {
+					searchBar.add(showStats);
+				}
+				JScrollPane list = new JScrollPane(relatedList);
+				list.setPreferredSize(new Dimension(LIST_WIDTH, size));
+				f.add(searchBar, BorderLayout.NORTH);
+				f.add(PlotDistances.this, BorderLayout.CENTER);
+				f.add(list, BorderLayout.EAST);
+				if (controls != null) {
+					f.add(controls, BorderLayout.SOUTH);
+				}
+				f.setSize(size + LIST_WIDTH, size);
+				f.setLocation(position, position);
+				f.setVisible(true);
+			}
+		});
 	}
 
+	/*******************Standard Overrides**************************/
 	/**
-	 * Set up screen coordinates
+	 * Plot in 2D or 3D. 3D version currently doesn't work
 	 */
-	private void setScreen() {
-		screen[0] = getWidth();                     //x-axis
-		screen[1] = getHeight();                    //y-axis
-		if (DIMENSIONS == 3) {                      //z-axis
-			screen[2] = Math.min(screen[0], screen[1]) * Math.sqrt(2);
+	@Override
+	protected void paintComponent(Graphics g) {
+		LayoutEvents.Paint event = new LayoutEvents.Paint();
+		event.begin();
+		super.paintComponent(g);                    //call suprclass paintComp
+		SpatialGrid frame = (frames == null) ? new SpatialGrid(snapshot())
+		: frames.take();
+		if (frame == null) {
+			return;
+		}
+		grid = frame;
+		view.setSize(getWidth(), getHeight());
+		view.follow(grid);
+		if (edges != null && showEdges.isSelected()) {
+			edges.paint(grid, view, (Graphics2D) g);
+		}
+		RENDERER.paint(grid, view, (Graphics2D) g, state);
+		RENDERER.paintMarks(grid, view, (Graphics2D) g, matches, selected,
+		related, state);
+		if (frames != null && showStats.isSelected()) {
+			paintStats((Graphics2D) g, grid.getLayout());
+		}
+		if (event.shouldCommit()) {
+			event.terms = grid.getLayout().size();
+			event.iteration = grid.getLayout().getIteration();
+			event.commit();
 		}
 	}
 
 	/**
-	 * Set coordinates of terms
+	 * Tooltip: the term under the pointer, if any
 	 */
-	private void setCoords() {
-		for (int i = 0; i < numberOfTerms; i++) {   //only 2 or 3 DIMENSIONS
-			coords = terms.get(identifiers[i]).getPosition();
-		}
+	@Override
+	public String getToolTipText(MouseEvent e) {
+		int i = termAt(e.getX(), e.getY());
+		return (i < 0) ? null : grid.getLayout().getLabel(i);
 	}
 
+	/*********************Utility Methods***************************/
 	/**
-	 * Work out max, min and scale
+	 * Constructor utility. Zoom with the wheel, pan by dragging, double click
+	 * to fit.
 	 */
-	private void setMinMaxScale() {
-		for (int k = 0; k < DIMENSIONS; k++) {
-			max[k] = (double) Double.MIN_VALUE;
-			min[k] = (double) Double.MAX_VALUE;
-		}
-		for (int i = 0; i < numberOfTerms; i++) {   //only 2 or 3 DIMENSIONS
-			Term term = terms.get(identifiers[i]);
-			coords = term.getPosition();
-			for (int k = 0; k < 2; k++) {
-				switch (DIMENSIONS) {
-					case 2:                         //2 DIMENSIONS
-						if (coords[k] > max[k]) {
-							max[k] = coords[k];
-						}
-						if (coords[k] < min[k]) {
-							min[k] = coords[k];
-						}
-						break;
-					case 3:                         //3 DIMENSIONS
-						if ((coords[k] + coords[2] * Math.sqrt(2)) > max[k]) {
-							max[k] = coords[k];
-						}
-						if ((coords[k] + coords[2] * Math.sqrt(2)) < min[k]) {
-							min[k] = coords[k];
-						}
-						break;
+	private void addNavigation() {
+		MouseAdapter navigation = new MouseAdapter() {
+			private int lastX;
+			private int lastY;
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				lastX = e.getX();
+				lastY = e.getY();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				view.pan(e.getX() - lastX, e.getY() - lastY);
+				lastX = e.getX();
+				lastY = e.getY();
+				repaint();
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2 && grid != null) {
+					view.fit(grid);
+					repaint();
+				} else if (e.getClickCount() == 1) {
+					select(termAt(e.getX(), e.getY()));
 				}
 			}
-		}
-		setScale();
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				view.zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()),
+				e.getX(), e.getY());
+				repaint();
+			}
+		};
+		addMouseListener(navigation);
+		addMouseMotionListener(navigation);
+		addMouseWheelListener(navigation);
+		ToolTipManager.sharedInstance().registerComponent(this);
 	}
 
 	/**
-	 * Work out scale (scaling for the screen)
-	 *
-	 * @return scale
+	 * Constructor utility. Ring matches as the search text changes, select
+	 * the first on Enter, select a term picked from the related terms list,
+	 * redraw when links are switched on or off.
 	 */
-	private double[] setScale() {
-		double dif = 0;
-		for (int k = 0; k < DIMENSIONS; k++) {        //equal scale on each dim
-			if ((max[k] - min[k]) > dif) {
-				dif = max[k] - min[k];
+	private void addSearch() {
+		search.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				find();
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				find();
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+				find();
 			}
+		});
+		search.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (matches.size() > 0) {
+					select(matches.get(0));
+				}
+			}
+		});
+		ActionListener redraw = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				repaint();
+			}
+		};
+		showEdges.addActionListener(redraw);
+		showStats.addActionListener(redraw);
+		relatedList.addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent e) {
+				int k = relatedList.getSelectedIndex();
+				if (!e.getValueIsAdjusting() && k >= 0 && related != null
+				&& k < related.length) {
+					select(related[k]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Draw the frame statistics line, updating the rates once a period
+	 */
+	private void paintStats(Graphics2D g, Layout layout) {
+		long now = System.nanoTime();
+		if (statsSince == 0) {
+			statsSince = now;
+			statsIteration = layout.getIteration();
 		}
-		for (int k = 0; k < DIMENSIONS; k++) {
-			scale[k] = (double) (screen[k] - 2 * PAD) / dif; //Scale it
+		statsFrames++;
+		if (now - statsSince >= STATS_PERIOD) {
+			double seconds = (now - statsSince) / 1e9;
+			framesPerSecond = statsFrames / seconds;
+			iterationsPerSecond = Math.abs(layout.getIteration()
+			- statsIteration) / seconds;
+			statsSince = now;
+			statsFrames = 0;
+			statsIteration = layout.getIteration();
 		}
-		return scale;
+		g.setColor(Color.GRAY);
+		g.drawString(String.format("%.0f fps   %.0f iter/s   error %.1f",
+		framesPerSecond, iterationsPerSecond, layout.getError()), 6,
+		g.getFontMetrics().getAscent() + 4);
 	}
 
 	/**
-	 * draw each of the terms
+	 * Ring the terms matching the search text
+	 */
+	private void find() {
+		int count = index.find(search.getText().trim(), matches, MAX_MATCHES);
+		matchCount.setText(search.getText().trim().isEmpty() ? ""
+		: count + ((count == 1) ? " match" : " matches"));
+		repaint();
+	}
+
+	/**
+	 * Select a term and list its related terms
 	 *
-	 * @param g2 Graphics 2D object
+	 * @param i term index, or -1 to clear the selection
 	 */
-	private void drawTerms(Graphics2D g2) {
-		Term term = new Term(DIMENSIONS);
-		for (int i = 0; i < numberOfTerms; i++) {
-			term = terms.get(identifiers[i]);
-			String legend = term.getIdentifier();
-			coords = term.getPosition();
-			double xFrame = PAD + (coords[0] - min[0]) * scale[0];
-			double yFrame = screen[1] - (PAD + (coords[1] - min[1]) * scale[1]);
-			if (DIMENSIONS == 3) {
-				xFrame += (coords[2] - min[2]) * scale[2] / Math.sqrt(2);
-				yFrame -= (coords[2] - min[2]) * scale[2] / Math.sqrt(2);
+	private void select(int i) {
+		selected = i;
+		related = (i < 0 || model == null) ? null
+		: model.getRelatedTerms(i, MAX_RELATED);
+		relatedNames.clear();
+		if (related != null && grid != null) {
+			Layout layout = grid.getLayout();
+			for (int j : related) {
+				relatedNames.addElement(String.format("%s  %.3f",
+				layout.getLabel(j), model.getIdealDistance(i, j)));
 			}
-			drawPoint(xFrame, yFrame, g2);
-			boolean reference = (i == refTermIndex) ? true : false;
-			writeLegend(xFrame, yFrame, legend, g2, reference);
 		}
+		repaint();
 	}
 
-	private void drawPoint(double x, double y, Graphics2D g2) {
-		if (DRAW_POINT) {
-			g2.setPaint(POINT_COLOUR);
-			g2.fill(new Ellipse2D.Double(x - (POINT_SIZE / 2),
-			y - (POINT_SIZE / 2), POINT_SIZE, POINT_SIZE));
+	/**
+	 * @return term within HIT_RADIUS pixels of a screen point, or -1
+	 */
+	private int termAt(int x, int y) {
+		if (grid == null) {
+			return -1;
 		}
+		return grid.nearest(view.toPlotX(x), view.toPlotY(y),
+		HIT_RADIUS / view.getScale());
 	}
 
-
 	/**
-	 * Write legend on screen offset from position (x,y)
-	 *
-	 * @param x,      y plot position (0,0) is top left
-	 * @param legend  to be displayed
-	 * @param graphic Graphics 2D object
+	 * Copy the terms' current positions
 	 */
-	private void writeLegend(double x, double y, String legend, Graphics2D g2,
-	                         boolean reference) {
-		Font font = new Font(TERM_FONT, Font.PLAIN, TERM_FONT_SIZE);
-		g2.setPaint(TERM_COLOUR);
-		if (reference) {
-			g2.setPaint(REFTERM_COLOUR);
-			font = new Font(REFTERM_FONT, Font.BOLD, REFTERM_FONT_SIZE);
+	private Layout snapshot() {
+		double[] coords = new double[numberOfTerms * DIMENSIONS];
+		for (int i = 0; i < numberOfTerms; i++) {
+			System.arraycopy(plotted[i].getPosition(), 0, coords,
+			i * DIMENSIONS, DIMENSIONS);
 		}
-		g2.setFont(font);
-		FontMetrics fm = g2.getFontMetrics();
-		x -= fm.stringWidth(legend) / 2;
-		y += fm.getAscent() / 2;
-		g2.drawString(legend, (float) x, (float) y);
+		return new Layout(Arrays.copyOf(identifiers, numberOfTerms), labels,
+		coords, refTermIndex, 0, 0);
 	}
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Replays a trace recorded with TraceWriter (e.g. by AnimatedControlFlow with
+ * a trace file) in the usual plot window, without a model and without
+ * computing any forces.
+ *
+ * A player thread moves through the trace at the chosen number of recorded
+ * frames per second, decodes the frame due with a TraceReader and publishes
+ * it into a FrameSlot, as the simulation would, whenever the display has
+ * taken the previous one; frames the display has no time for are skipped, not
+ * decoded. Below the plot, a slider seeks to any frame and a box to any
+ * iteration, and playback can be paused, run at any speed, or run backwards.
+ *
+ * Usage:
+ *     TraceViewer trace [framesPerSecond]
+ */
+package visualiser.distancemodel;
+
+import visualiser.distancemodel.io.TraceReader;
+import visualiser.distancemodel.render.FrameSlot;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * Offline replay of a recorded layout animation.
+ */
+public class TraceViewer {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final double MAX_RATE = 100000;      //frames per second
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final TraceReader reader;                   //decoded by player
+	private final FrameSlot frames = new FrameSlot();
+	private final PlotDistances plot;
+	//Player state, guarded by this
+	private double position;                            //frame, fractional
+	private double rate;                                //frames per second
+	private boolean playing;
+	//Controls, EDT only
+	private final JSlider slider;
+	private final JButton play = new JButton("Pause");
+	private final JLabel iteration = new JLabel();
+	private final JTextField goTo = new JTextField(6);
+	private final JSpinner speed;
+	private boolean moving;                             //slider set by player
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Open a trace, ready to play from its first frame
+	 *
+	 * @param trace file written by TraceWriter
+	 * @param rate  recorded frames to show per second
+	 */
+	public TraceViewer(File trace, double rate) throws IOException {
+		reader = new TraceReader(trace);
+		if (reader.getFrameCount() == 0) {
+			reader.close();
+			throw new IOException(trace + " holds no frames");
+		}
+		this.rate = rate;
+		Layout first = reader.read(0);
+		frames.publish(first);
+		plot = new PlotDistances(frames, first);
+		slider = new JSlider(0, reader.getFrameCount() - 1, 0);
+		speed = new JSpinner(new SpinnerNumberModel(rate, -MAX_RATE,
+		MAX_RATE, FRAMES_PER_SECOND));
+		plot.setControls(createControls());
+		showIteration(0);
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Open the window and start playing
+	 */
+	public void display(int size, int position) {
+		plot.display(size, position);
+		synchronized (this) {
+			playing = true;
+			if (rate < 0) {
+				position = reader.getFrameCount() - 1;
+			}
+		}
+		Thread player = new Thread(new Runnable() {
+			public void run() {
+				play();
+			}
+		}, "trace-player");
+		player.setDaemon(true);
+		player.start();
+	}
+
+	/**
+	 * Go to a frame (from any thread); playing carries on from there
+	 */
+	public synchronized void seek(int frame) {
+		position = Math.max(0, Math.min(reader.getFrameCount() - 1, frame));
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Player thread: advance at the rate and publish the frame due when the
+	 * display wants one
+	 */
+	private void play() {
+		int last = reader.getFrameCount() - 1;
+		int shown = 0;
+		long then = System.nanoTime();
+		try {
+			while (true) {
+				Thread.sleep(1000 / FRAMES_PER_SECOND);
+				long now = System.nanoTime();
+				int due;
+				synchronized (this) {
+					if (playing) {
+						position += rate * (now - then) / 1e9;
+						if ((rate > 0 && position >= last)
+						|| (rate < 0 && position <= 0)) {
+							position = Math.max(0, Math.min(last, position));
+							playing = false;
+							showPaused();
+						}
+					}
+					due = (int) position;
+				}
+				then = now;
+				if (due != shown && frames.isWanted()) {
+					frames.publish(reader.read(due));
+					shown = due;
+					showIteration(due);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.err.println("Unable to read trace: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Constructor utility. Play/pause, speed, frame slider and iteration box.
+	 */
+	private JComponent createControls() {
+		play.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				synchronized (TraceViewer.this) {
+					playing = !playing;
+					int last = reader.getFrameCount() - 1;
+					if (playing && rate > 0 && position >= last) {
+						position = 0;                   //replay from start
+					} else if (playing && rate < 0 && position <= 0) {
+						position = last;                //or from the end
+					}
+					play.setText(playing ? "Pause" : "Play");
+				}
+			}
+		});
+		speed.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				synchronized (TraceViewer.this) {
+					rate = ((Number) speed.getValue()).doubleValue();
+				}
+			}
+		});
+		slider.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				if (!moving) {
+					seek(slider.getValue());
+				}
+			}
+		});
+		goTo.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				try {
+					seek(reader.findFrame(Integer.parseInt(goTo.getText()
+					.trim())));
+				} catch (NumberFormatException ex) {
+					goTo.selectAll();
+				}
+			}
+		});
+		JPanel bar = new JPanel(new BorderLayout());
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		buttons.add(play);
+		buttons.add(new JLabel("Frames/s"));
+		buttons.add(speed);
+		buttons.add(new JLabel("Go to iteration"));
+		buttons.add(goTo);
+		buttons.add(iteration);
+		bar.add(buttons, BorderLayout.NORTH);
+		bar.add(slider, BorderLayout.SOUTH);
+		return bar;
+	}
+
+	/**
+	 * Move the slider and label to a frame just published
+	 */
+	private void showIteration(final int frame) {
+		final int shown = reader.getIteration(frame);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				moving = true;
+				slider.setValue(frame);
+				moving = false;
+				iteration.setText("Iteration " + shown + " (frame "
+				+ (frame + 1) + " of " + reader.getFrameCount() + ")");
+			}
+		});
+	}
+
+	private void showPaused() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				play.setText("Play");
+			}
+		});
+	}
+
+	/**
+	 * @param args args[0] = trace file, args[1] = frames per second
+	 *             (default FRAMES_PER_SECOND; negative plays backwards)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TraceViewer trace [framesPerSecond]");
+			System.exit(1);
+		}
+		double rate = (args.length > 1) ? Double.parseDouble(args[1])
+		: FRAMES_PER_SECOND;
+		new TraceViewer(new File(args[0]), rate).display(DISPLAY_SIZE,
+		DISPLAY_POSITION);
+	}
+}
@@ -36,9 +36,12 @@ package visualiser.distancemodel.controlflow;
 
 import visualiser.distancemodel.Model;
 import visualiser.distancemodel.PlotDistances;
+import visualiser.distancemodel.io.SimilaritySource;
+import visualiser.distancemodel.io.TraceWriter;
+import visualiser.distancemodel.render.FrameSlot;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.File;
+import java.io.IOException;
 
 import static visualiser.distancemodel.GlobalParameters.*;
 
@@ -49,6 +52,11 @@ import static visualiser.distancemodel.GlobalParameters.*;
 public class AnimatedControlFlow extends ControlFlowAbs {
 
 	/********************GLOBAL PARAMETERS*************************/
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private File traceFile;                             //recording, or null
+
 	/***********CONSTRUCTORS AND STATIC FACOTRY METHODS*************/
 	/**
 	 * Constructor.
@@ -61,43 +69,113 @@ public class AnimatedControlFlow extends ControlFlowAbs {
 		run(fileName, refTerm);
 	}
 
+	/**
+	 * Constructor. Also records the animation to a trace file, for replay
+	 * with TraceViewer.
+	 *
+	 * @param fileName Name of data file containing similarity data
+	 * @param refTerm  Name of term of interest
+	 * @param trace    file to record the animation to
+	 */
+	public AnimatedControlFlow(String fileName, String refTerm, File trace) {
+		super();
+		traceFile = trace;
+		run(fileName, refTerm);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param source  Supplier of similarity data, e.g. a thesaurus entry
+	 * @param refTerm Name of term of interest
+	 */
+	public AnimatedControlFlow(SimilaritySource source, String refTerm) {
+		super();
+		run(source, refTerm);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model Terms and relations already loaded, e.g. by ModelBuilder
+	 */
+	public AnimatedControlFlow(Model model) {
+		super();
+		run(model);
+	}
+
 	/*********LEVEL 1 DERIVATIVE EXECUTION CONTROL METHODS**********/
 	/**
-	 * Calculate and display results as a moving display
+	 * Calculate and display results as a moving display. The simulation
+	 * runs flat out on this thread and publishes snapshots; the display
+	 * shows the latest at up to FRAMES_PER_SECOND, skipping the rest. With a
+	 * trace file, every iteration is also queued for the trace's writer
+	 * thread, unless it is behind.
 	 *
-	 * @param the           set of terms being mapped
-	 * @param referenceTerm the reference term of the set
+	 * @param model the set of terms being mapped
 	 */
 	@Override
-	@SuppressWarnings("SleepWhileHoldingLock")
 	protected void getSolution(Model model) {
 
 		//Initialise display
-		PlotDistances plotter =
-		model.initialiseDisplay(DISPLAY_SIZE, DISPLAY_POSITION);
+		FrameSlot frames = new FrameSlot();
+		frames.publish(model.getLayout());
+		new PlotDistances(frames, model).display(DISPLAY_SIZE,
+		DISPLAY_POSITION);
 
 		double sumError = 0;
-		double sleepFactor = INITIAL_SLEEP;
+		TraceWriter trace = openTrace();
 
 		//calculate and plot search for best solution
-		for (int i = 0; i < FINAL_ITERATIONS; i++) {
+		for (int i = 0; i < getNumberOfIterations(model); i++) {
 			sumError = model.imposeForces();   //impose force
 			model.advanceTime();  //increment time
-			plotter.repaint();                          //plot on screen
-			try {
-				sleepFactor *= REDUCTION_FACTOR;        //reduce wait
-				Thread.sleep((int) (sleepFactor));      //pause
-			} catch (InterruptedException ex) {
-				Logger.getLogger(AnimatedControlFlow.class.getName()).log(
-				Level.SEVERE,
-				null,
-				ex);
+			sample(model, i, sumError);
+			if (frames.isWanted()) {
+				frames.publish(model.getLayout());      //plot on screen
+			}
+			if (trace != null && trace.hasRoom()) {
+				trace.record(model.getLayout());        //record
 			}
 		}
+		frames.publish(model.getLayout());              //always show the last
 		printDebug("Final distortion for the graph plot is : " + sumError);
+		closeTrace(trace);
 	}
 
 	/*********************UTILITY METHODS***************************/
+	/**
+	 * Start recording to the trace file, if there is one
+	 *
+	 * @return the recorder, or null
+	 */
+	private TraceWriter openTrace() {
+		if (traceFile == null) {
+			return null;
+		}
+		try {
+			return new TraceWriter(traceFile);
+		} catch (IOException e) {
+			System.err.println("Unable to record to " + traceFile + ": "
+			+ e.getMessage());
+			return null;
+		}
+	}
+
+	private void closeTrace(TraceWriter trace) {
+		if (trace == null) {
+			return;
+		}
+		try {
+			trace.close();
+			printDebug("Recorded " + trace.getWritten() + " frames to "
+			+ traceFile + ", dropped " + trace.getDropped());
+		} catch (IOException e) {
+			System.err.println("Unable to record to " + traceFile + ": "
+			+ e.getMessage());
+		}
+	}
+
 	/**
 	 * test suite
 	 */
@@ -36,9 +36,19 @@
 package visualiser.distancemodel.controlflow;
 
 import visualiser.distancemodel.Direc;
+import visualiser.distancemodel.Layout;
 import visualiser.distancemodel.Model;
+import visualiser.distancemodel.io.FileSimilaritySource;
+import visualiser.distancemodel.io.SimilaritySource;
+import visualiser.distancemodel.io.StreamSimilaritySource;
+import visualiser.distancemodel.metrics.LayoutEvents;
+import visualiser.distancemodel.metrics.Metrics;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static visualiser.distancemodel.GlobalParameters.*;
 
@@ -48,36 +58,161 @@ import static visualiser.distancemodel.GlobalParameters.*;
  */
 public abstract class ControlFlowAbs {
 
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final Metrics.Timer LOAD = Metrics.timer("load",
+	"Reading similarity data into a model");
+	private static final Metrics.Timer START = Metrics.timer("start",
+	"One exploratory run from random positions");
+	private static final Metrics.Timer SOLVE = Metrics.timer("solve",
+	"Driving the best start through to the final layout");
+	private static final AtomicLong LAYOUTS = new AtomicLong(); //numbering
+	private static final double ACTIVE_SPEED = 1e-6;    //moving, per step
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private long lastSample;                    //nanoTime of the last sample
+	private LayoutEvents.Iterations sampleEvent;    //since the last sample
+	//This layout's own instruments, labelled, registered only while it runs
+	private Metrics.Gauge terms;
+	private Metrics.Gauge rate;
+	private Metrics.Gauge error;
+	private Metrics.Gauge energy;
+	private Metrics.Series trajectory;
+
 	/***********CONSTRUCTORS AND STATIC FACOTRY METHODS*************/
 	/**
-	 * Constructor. Empty.
+	 * Constructor. Starts exporting metrics if METRICS_DIRECTORY is set.
 	 */
 	public ControlFlowAbs() {
+		if (METRICS_DIRECTORY != null) {
+			Metrics.startExport(new File(METRICS_DIRECTORY),
+			METRICS_INTERVAL);
+		}
 	}
 
 	/***************CORE EXECUTION CONTROL METHODS******************/
 	/**
 	 * Control execution of code
 	 *
-	 * @param fileName Name of data file containing similarity data
+	 * @param fileName Name of data file containing similarity data: "-" for
+	 *                 standard input, a path (file or named pipe), or a file
+	 *                 in the Direc directory. May be gzip compressed.
 	 * @param refTerm  Name of term of interest
 	 */
 	protected void run(String fileName, String refTerm) {
+		//Load in the data for the experiment
+		try {
+			run(openInput(fileName), refTerm);
+		} catch (FileNotFoundException e) {
+			System.err.println("Unable to open " + fileName);
+		}
+	}
+
+	/**
+	 * Control execution of code
+	 *
+	 * @param source  supplier of similarity data (file, thesaurus, ...)
+	 * @param refTerm Name of term of interest
+	 */
+	protected void run(SimilaritySource source, String refTerm) {
+		run(source, refTerm, null);
+	}
+
+	/**
+	 * Control execution of code, starting from an earlier layout of much
+	 * the same terms (see Model.warmStart)
+	 *
+	 * @param source   supplier of similarity data (file, thesaurus, ...)
+	 * @param refTerm  Name of term of interest
+	 * @param previous earlier layout, or null to start from scratch
+	 */
+	protected void run(SimilaritySource source, String refTerm,
+	                   Layout previous) {
 		//Record starting time
 		long startTime = System.nanoTime();
-
-		//Load in the data for the experiment
-		File file = new File(new Direc().get(), fileName);
+		long startBytes = Metrics.allocatedBytes();
+		LayoutEvents.Layout event = new LayoutEvents.Layout();
+		event.begin();
 
 		//Initialise model, set reference term and number of terms
-		Model model = new Model(file, refTerm);
-		int refTermIndex = model.getReference(refTerm);
+		Model model = new Model(source, refTerm);
+		if (previous != null) {
+			model.warmStart(previous);
+		}
+		LOAD.record(System.nanoTime() - startTime, Metrics.allocatedBytes()
+		- startBytes);
+		run(model, startTime, event);
+	}
+
+	/**
+	 * Control execution of code for a model already built, e.g. in memory by
+	 * a ModelBuilder
+	 *
+	 * @param model the set of terms to be mapped
+	 */
+	protected void run(Model model) {
+		LayoutEvents.Layout event = new LayoutEvents.Layout();
+		event.begin();
+		run(model, System.nanoTime(), event);
+	}
 
-		//Do exploratory runs and adopt best starting positions
-		model.setPositions(findBestStartingPositions(model));
+	private void run(Model model, long startTime,
+	                 LayoutEvents.Layout event) {
+		registerInstruments(model.getReferenceTerm() + "-"
+		+ LAYOUTS.incrementAndGet());
+		try {
+			solve(model, startTime, event);
+		} finally {
+			Metrics.remove(terms);
+			Metrics.remove(rate);
+			Metrics.remove(error);
+			Metrics.remove(energy);
+			Metrics.remove(trajectory);
+		}
+	}
+
+	/**
+	 * Explore, solve, and report a layout
+	 */
+	private void solve(Model model, long startTime,
+	                   LayoutEvents.Layout event) {
+		terms.set(model.getNumberOfTerms());
+
+		//Do exploratory runs and adopt best starting positions, unless the
+		//model was given its starting positions
+		boolean explore = !model.isWarmStarted();
+		if (explore) {
+			model.setPositions(findBestStartingPositions(model));
+		}
 
 		// Plot on screen and drive the best through to completion
+		long solveTime = System.nanoTime();
+		long solveBytes = Metrics.allocatedBytes();
+		lastSample = solveTime;
+		sampleEvent = null;
 		getSolution(model);
+		SOLVE.record(System.nanoTime() - solveTime, Metrics.allocatedBytes()
+		- solveBytes);
+		if (event.shouldCommit()) {
+			Layout layout = model.getLayout();
+			event.controlFlow = getClass().getSimpleName();
+			event.referenceTerm = layout.getReferenceTerm();
+			event.terms = layout.size();
+			event.starts = explore ? getNumberOfStarts() : 0;
+			event.error = layout.getError();
+			event.commit();
+		}
+		if (METRICS_DIRECTORY != null) {
+			try {
+				Metrics.export(new File(METRICS_DIRECTORY));
+			} catch (IOException e) {
+				System.err.println("Unable to write metrics to "
+				+ METRICS_DIRECTORY + ": " + e.getMessage());
+			}
+		}
 
 		// Record time elapsed
 		printDebug("Time elapsed to draw the graph in sec : " + ((System.
@@ -86,8 +221,8 @@ public abstract class ControlFlowAbs {
 
 	/*********LEVEL 1 DERIVATIVE EXECUTION CONTROL METHODS**********/
 	/**
-	 * Find a good starting point by doing NUMBER_OF_START exploratory runs
-	 * (of INITIAL_ITERATIONS each).
+	 * Find a good starting point by doing getNumberOfStarts() exploratory
+	 * runs (of INITIAL_ITERATIONS each).
 	 *
 	 * @param model        the set of terms being mapped
 	 * @param refTermIndex the reference term of the set
@@ -103,14 +238,30 @@ public abstract class ControlFlowAbs {
 
 			//Do a number of exploratory runs and pick what appears
 			//the most promising start point
-			for (int i = 0; i < NUMBER_OF_STARTS; i++) {
+			for (int i = 0; i < getNumberOfStarts(); i++) {
 				//System.out.println("Start : " + i);
+				long time = System.nanoTime();
+				long bytes = Metrics.allocatedBytes();
+				LayoutEvents.Start event = new LayoutEvents.Start();
+				event.begin();
 				model.resetTerms();            //reset terms
 				double[][] startPositions = model.clonePositions(); //store
 				for (int j = 0; j < INITIAL_ITERATIONS; j++) {
+					checkCancelled();
 					sumError = model.imposeForces();
 					model.advanceTime();
 				}
+				time = System.nanoTime() - time;
+				START.record(time, Metrics.allocatedBytes() - bytes);
+				rate.set(INITIAL_ITERATIONS * 1e9 / time);
+				error.set(sumError);
+				if (event.shouldCommit()) {
+					event.start = i;
+					event.iterations = INITIAL_ITERATIONS;
+					event.error = sumError;
+					event.best = sumError < stateError;
+					event.commit();
+				}
 				if (sumError < stateError) {
 					stateError = sumError;              //best so far
 					bestPositions = startPositions;     //store it
@@ -132,6 +283,114 @@ public abstract class ControlFlowAbs {
 	/**
 	 * ******************UTILITY METHODS**************************
 	 */
+	/**
+	 * @return exploratory runs made by findBestStartingPositions:
+	 * NUMBER_OF_STARTS, unless a subclass says otherwise
+	 */
+	protected int getNumberOfStarts() {
+		return NUMBER_OF_STARTS;
+	}
+
+	/**
+	 * @return iterations of the final run in getSolution: FINAL_ITERATIONS,
+	 * or WARM_ITERATIONS to refine a model that was warm started
+	 */
+	protected int getNumberOfIterations(Model model) {
+		return model.isWarmStarted() ? WARM_ITERATIONS : FINAL_ITERATIONS;
+	}
+
+	/**
+	 * @return true if the layout is to be abandoned. Never, unless a
+	 * subclass says otherwise (see LayoutJob).
+	 */
+	protected boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * Abandon the layout if it has been cancelled: call once an iteration
+	 *
+	 * @throws CancellationException if isCancelled()
+	 */
+	protected final void checkCancelled() {
+		if (isCancelled()) {
+			throw new CancellationException("Layout cancelled");
+		}
+	}
+
+	/**
+	 * Record an iteration of the final run in the metrics: call from
+	 * getSolution after each time step. The error is recorded every time;
+	 * the speed, kinetic energy and error trajectory every METRICS_SAMPLE
+	 * iterations, which are also a Flight Recorder Iterations event.
+	 *
+	 * @param model     the set of terms being mapped
+	 * @param iteration the iteration just completed, from 0
+	 * @param sumError  its error, as returned by imposeForces
+	 */
+	protected void sample(Model model, int iteration, double sumError) {
+		error.set(sumError);
+		if (iteration % METRICS_SAMPLE == 0) {
+			long now = System.nanoTime();
+			if (iteration > 0) {
+				rate.set(METRICS_SAMPLE * 1e9 / (now - lastSample));
+			}
+			lastSample = now;
+			double kinetic = model.getKineticEnergy();
+			energy.set(kinetic);
+			trajectory.add(iteration, sumError);
+			if (sampleEvent != null && sampleEvent.shouldCommit()) {
+				sampleEvent.iteration = iteration;
+				sampleEvent.iterations = METRICS_SAMPLE;
+				sampleEvent.error = sumError;
+				sampleEvent.kineticEnergy = kinetic;
+				sampleEvent.terms = model.getNumberOfTerms();
+				sampleEvent.activeTerms = model.countMovingTerms(ACTIVE_SPEED);
+				sampleEvent.commit();
+			}
+			sampleEvent = new LayoutEvents.Iterations();
+			sampleEvent.begin();
+		}
+	}
+
+	/**
+	 * Register this layout's gauges and error trajectory, labelled so that
+	 * layouts running side by side (BatchMain, LayoutServer) keep apart
+	 *
+	 * @param layout label value, e.g. "tim_lewis-3"
+	 */
+	private void registerInstruments(String layout) {
+		terms = Metrics.gauge("terms", "Terms in the model being laid out",
+		layout);
+		rate = Metrics.gauge("iterations_per_second",
+		"Recent simulation speed", layout);
+		error = Metrics.gauge("error",
+		"Total distortion (sumError) at the latest iteration", layout);
+		energy = Metrics.gauge("kinetic_energy",
+		"Kinetic energy of the terms at the latest sample", layout);
+		trajectory = Metrics.series("error_trajectory",
+		"sumError against iteration of the final run", layout);
+	}
+
+	/**
+	 * Resolve an input name to a source. Plain names that aren't paths to an
+	 * existing file are looked up in the Direc directory as before.
+	 */
+	protected SimilaritySource openInput(String fileName)
+	throws FileNotFoundException {
+		if (StreamSimilaritySource.STDIN.equals(fileName)) {
+			return new StreamSimilaritySource(System.in, "standard input");
+		}
+		File file = new File(fileName);
+		if (!file.exists()) {
+			file = new File(new Direc().get(), fileName);
+		}
+		if (!file.exists()) {
+			throw new FileNotFoundException(file.toString());
+		}
+		return new FileSimilaritySource(file);
+	}
+
 	protected void printDebug(String output) {
 		if (DEBUG) {
 			System.out.println(output);
@@ -36,6 +36,7 @@ package visualiser.distancemodel.controlflow;
 
 import visualiser.distancemodel.Model;
 import visualiser.distancemodel.PlotDistances;
+import visualiser.distancemodel.io.SimilaritySource;
 
 import static visualiser.distancemodel.GlobalParameters.*;
 
@@ -57,6 +58,27 @@ public class FastControlFlow extends ControlFlowAbs {
 		run(fileName, refTerm);
 	}
 
+	/**
+	 * Constructor.
+	 *
+	 * @param source  Supplier of similarity data, e.g. a thesaurus entry
+	 * @param refTerm Name of term of interest
+	 */
+	public FastControlFlow(SimilaritySource source, String refTerm) {
+		super();
+		run(source, refTerm);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model Terms and relations already loaded, e.g. by ModelBuilder
+	 */
+	public FastControlFlow(Model model) {
+		super();
+		run(model);
+	}
+
 	/**
 	 * ******LEVEL 1 DERIVATIVE EXECUTION CONTROL METHODS*********
 	 */
@@ -64,9 +86,10 @@ public class FastControlFlow extends ControlFlowAbs {
 	protected void getSolution(Model model) {
 		double sumError = 0;
 		//calculate and plot search for best solution
-		for (int i = 0; i < FINAL_ITERATIONS; i++) {
+		for (int i = 0; i < getNumberOfIterations(model); i++) {
 			sumError = model.imposeForces();   //impose force
 			model.advanceTime();  //increment time
+			sample(model, i, sumError);
 		}
 
 		model.rotateCoords2D();
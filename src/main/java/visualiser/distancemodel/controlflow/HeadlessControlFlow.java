@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Runs an experiment without any display: the same solve as FastControlFlow
+ * (controlled for rotation and reflection) but the result is kept for the
+ * caller instead of being shown in a window, so it can be used with
+ * java.awt.headless=true, e.g. by batch jobs.
+ */
+package visualiser.distancemodel.controlflow;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.io.SimilaritySource;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * Control flow that computes a layout but never touches the screen.
+ */
+public class HeadlessControlFlow extends ControlFlowAbs {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private Model model;
+	private Layout layout;                              //final positions
+
+	/***********CONSTRUCTORS AND STATIC FACOTRY METHODS*************/
+	/**
+	 * Constructor.
+	 *
+	 * @param source  Supplier of similarity data, e.g. a thesaurus entry
+	 * @param refTerm Name of term of interest
+	 */
+	public HeadlessControlFlow(SimilaritySource source, String refTerm) {
+		super();
+		run(source, refTerm);
+	}
+
+	/**
+	 * Constructor. Refines an earlier layout of much the same terms, e.g.
+	 * from before the similarities were refreshed, rather than starting
+	 * from scratch; see Model.warmStart.
+	 *
+	 * @param source   Supplier of similarity data, e.g. a thesaurus entry
+	 * @param refTerm  Name of term of interest
+	 * @param previous Earlier layout, matched to the terms by identifier
+	 */
+	public HeadlessControlFlow(SimilaritySource source, String refTerm,
+	                           Layout previous) {
+		super();
+		run(source, refTerm, previous);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param model Terms and relations already loaded
+	 */
+	public HeadlessControlFlow(Model model) {
+		super();
+		run(model);
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return the solved model, e.g. to render with createPlotter
+	 */
+	public Model getModel() {
+		return model;
+	}
+
+	/**
+	 * @return snapshot of the final positions
+	 */
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * ******LEVEL 1 DERIVATIVE EXECUTION CONTROL METHODS*********
+	 */
+	@Override
+	protected void getSolution(Model m) {
+		model = m;
+		for (int i = 0; i < getNumberOfIterations(model); i++) {
+			double sumError = model.imposeForces();     //impose force
+			model.advanceTime();                //increment time
+			sample(model, i, sumError);
+		}
+
+		model.rotateCoords2D();
+		model.reflectCoords2D();
+		model.advanceTime();
+
+		layout = model.getLayout();
+		printDebug("Final distortion for the graph plot is : "
+		+ layout.getError());
+	}
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * A layout computed in the background, for embedding: the same solve as
+ * HeadlessControlFlow, but start() returns at once with a handle to cancel
+ * the layout, wait for it, or follow its progress.
+ *
+ * Progress is a Flow.Publisher of Layout snapshots, each carrying the
+ * positions, iteration and error (stress) at the time it was taken.
+ * Subscribers set their own pace with request(n). The solver never waits
+ * for them: every PUBLISH_INTERVAL iterations, if any subscriber has
+ * outstanding demand, it takes a snapshot and leaves it in each
+ * subscription, replacing any that hasn't been delivered yet. Delivery
+ * happens on an executor (the common pool by default), serially for each
+ * subscriber, so a slow subscriber sees fewer, more recent snapshots and
+ * holds up nobody else. The final layout is always delivered, once there
+ * is demand for it, before onComplete. A cancelled or failed layout ends
+ * with onError, with a CancellationException if cancelled. Subscribers
+ * that arrive after the end get the final layout and onComplete.
+ */
+package visualiser.distancemodel.controlflow;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.io.SimilaritySource;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * Handle on a layout running in the background, publishing its progress.
+ */
+public final class LayoutJob implements Flow.Publisher<Layout> {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int PUBLISH_INTERVAL = 10;      //iterations
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final Executor delivery;                    //runs subscribers
+	private final Solver solver = new Solver();
+	private final List<Subscription> subscriptions =
+	new CopyOnWriteArrayList<Subscription>();
+	private final CompletableFuture<Layout> result =
+	new CompletableFuture<Layout>();
+	private volatile boolean cancelled;
+	//Outcome, guarded by this
+	private boolean finished;
+	private Layout finalLayout;
+	private Throwable failure;
+
+	/***********CONSTRUCTORS AND STATIC FACOTRY METHODS*************/
+	private LayoutJob(Executor delivery) {
+		this.delivery = delivery;
+	}
+
+	/**
+	 * Start laying out a data file in the background
+	 *
+	 * @param fileName as for the control flows: "-", a path, or a file in
+	 *                 the Direc directory
+	 * @param refTerm  Name of term of interest
+	 * @throws FileNotFoundException if there is no such input
+	 */
+	public static LayoutJob start(String fileName, String refTerm)
+	throws FileNotFoundException {
+		LayoutJob job = new LayoutJob(ForkJoinPool.commonPool());
+		return job.launch(job.solver.openInput(fileName), refTerm, null);
+	}
+
+	/**
+	 * Start laying out a source in the background
+	 *
+	 * @param source  Supplier of similarity data
+	 * @param refTerm Name of term of interest
+	 */
+	public static LayoutJob start(SimilaritySource source, String refTerm) {
+		return start(source, refTerm, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param delivery runs the subscribers' onNext, onComplete and onError
+	 */
+	public static LayoutJob start(SimilaritySource source, String refTerm,
+	                              Executor delivery) {
+		return new LayoutJob(delivery).launch(source, refTerm, null);
+	}
+
+	/**
+	 * Start laying out a model already built, e.g. by a ModelBuilder
+	 */
+	public static LayoutJob start(Model model) {
+		return new LayoutJob(ForkJoinPool.commonPool()).launch(null, null,
+		model);
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return the final layout, when there is one. Cancelling it cancels
+	 * the layout.
+	 */
+	public CompletableFuture<Layout> getResult() {
+		return result;
+	}
+
+	public boolean isDone() {
+		return result.isDone();
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Abandon the layout. It stops within an iteration; subscribers get
+	 * onError(CancellationException) and the result is cancelled.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Follow the layout's progress. The subscriber may call request from
+	 * any thread; its methods are called on the delivery executor.
+	 */
+	public void subscribe(Flow.Subscriber<? super Layout> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		Subscription subscription = new Subscription(subscriber);
+		synchronized (this) {
+			if (finished) {
+				subscription.finish(finalLayout, failure);
+			} else {
+				subscriptions.add(subscription);
+			}
+		}
+		subscription.schedule();                    //sends onSubscribe
+	}
+
+	/*********************UTILITY METHODS***************************/
+	/**
+	 * Run the layout on a new thread
+	 */
+	private LayoutJob launch(final SimilaritySource source,
+	                         final String refTerm, final Model model) {
+		Thread worker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					if (model == null) {
+						solver.run(source, refTerm);
+					} else {
+						solver.run(model);
+					}
+					if (solver.layout == null) {
+						throw new IllegalStateException("No layout: "
+						+ source + " could not be read");
+					}
+					finish(solver.layout, null);
+				} catch (RuntimeException e) {
+					finish(null, e);
+				} catch (Error e) {
+					finish(null, e);
+					throw e;
+				}
+			}
+		}, "layout " + ((model == null) ? refTerm
+		: model.getLayout().getReferenceTerm()));
+		worker.start();
+		return this;
+	}
+
+	/**
+	 * Record the outcome and pass it to every subscriber
+	 */
+	private void finish(Layout layout, Throwable error) {
+		synchronized (this) {
+			finished = true;
+			finalLayout = layout;
+			failure = error;
+		}
+		for (Subscription subscription : subscriptions) {
+			subscription.finish(layout, error);
+		}
+		subscriptions.clear();
+		if (error instanceof CancellationException) {
+			result.cancel(false);
+		} else if (error != null) {
+			result.completeExceptionally(error);
+		} else {
+			result.complete(layout);
+		}
+	}
+
+	/**
+	 * @return true if any subscriber is waiting for a snapshot
+	 */
+	private boolean isWanted() {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.isWanting()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * ****************************SOLVER***************************
+	 */
+	/**
+	 * The solve of HeadlessControlFlow, publishing as it goes and stopping
+	 * when cancelled
+	 */
+	private final class Solver extends ControlFlowAbs {
+
+		private Layout layout;                      //final positions
+
+		@Override
+		protected boolean isCancelled() {
+			return cancelled || result.isCancelled();
+		}
+
+		@Override
+		protected void getSolution(Model model) {
+			for (int i = 0; i < getNumberOfIterations(model); i++) {
+				checkCancelled();
+				double sumError = model.imposeForces();     //impose force
+				model.advanceTime();                //increment time
+				sample(model, i, sumError);
+				if (i % PUBLISH_INTERVAL == 0 && isWanted()) {
+					Layout snapshot = model.getLayout();
+					for (Subscription subscription : subscriptions) {
+						subscription.offer(snapshot);
+					}
+				}
+			}
+
+			model.rotateCoords2D();
+			model.reflectCoords2D();
+			model.advanceTime();
+
+			layout = model.getLayout();
+			printDebug("Final distortion for the graph plot is : "
+			+ layout.getError());
+		}
+	}
+
+	/**
+	 * *************************SUBSCRIPTION************************
+	 */
+	/**
+	 * One subscriber's demand and undelivered snapshot. Signals are sent by
+	 * drain(), which runs on the delivery executor and never on two threads
+	 * at once: whoever changes the state calls schedule(), and only the
+	 * call that finds no drain pending or running submits one.
+	 */
+	private final class Subscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super Layout> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicReference<Layout> pending =
+		new AtomicReference<Layout>();              //latest undelivered
+		private final AtomicInteger work = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile boolean done;              //no more snapshots
+		private volatile Throwable failure;
+		//drain() only
+		private boolean subscribed;
+		private boolean terminated;
+
+		Subscription(Flow.Subscriber<? super Layout> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException(
+				"Non-positive request: " + n);
+				done = true;
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;      //overflow: unbounded
+					}
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		boolean isWanting() {
+			return !cancelled && demand.get() > 0;
+		}
+
+		/**
+		 * Replace the undelivered snapshot, if any, with a newer one
+		 */
+		void offer(Layout layout) {
+			pending.set(layout);
+			schedule();
+		}
+
+		/**
+		 * @param layout final snapshot, or null
+		 * @param error  failure or cancellation, or null
+		 */
+		void finish(Layout layout, Throwable error) {
+			if (error != null) {
+				failure = error;
+			} else if (layout != null) {
+				pending.set(layout);
+			}
+			done = true;
+			schedule();
+		}
+
+		void schedule() {
+			if (work.getAndIncrement() == 0) {
+				delivery.execute(new Runnable() {
+					public void run() {
+						drain();
+					}
+				});
+			}
+		}
+
+		private void drain() {
+			int missed = 1;
+			while (true) {
+				try {
+					signal();
+				} catch (RuntimeException e) {  //broken subscriber
+					terminated = true;
+					cancel();
+					System.err.println("Layout subscriber failed: " + e);
+				}
+				missed = work.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		private void signal() {
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+			}
+			if (terminated || cancelled) {
+				return;
+			}
+			Throwable error = failure;
+			if (error != null) {
+				terminated = true;
+				subscriptions.remove(this);
+				subscriber.onError(error);
+				return;
+			}
+			if (demand.get() > 0) {
+				Layout layout = pending.getAndSet(null);
+				if (layout != null) {
+					if (demand.get() != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+					subscriber.onNext(layout);
+				}
+			}
+			if (done && pending.get() == null && failure == null) {
+				terminated = true;
+				subscriber.onComplete();
+			}
+		}
+	}
+
+	/**
+	 * ***********************TEST SUITE****************************
+	 */
+	/**
+	 * Lay out a file in the background with a subscriber that takes half a
+	 * second over each snapshot, and report how many it saw.
+	 */
+	public static void main(String[] args) throws Exception {
+		String fileName = (args.length > 0) ? args[0] : "tim_lewis";
+		String refTerm = (args.length > 1) ? args[1] : "tim_lewis";
+		final CountDownLatch ended = new CountDownLatch(1);
+		LayoutJob job = start(fileName, refTerm);
+		job.subscribe(new Flow.Subscriber<Layout>() {
+			private Flow.Subscription subscription;
+			private int received;
+
+			public void onSubscribe(Flow.Subscription s) {
+				subscription = s;
+				s.request(1);
+			}
+
+			public void onNext(Layout layout) {
+				received++;
+				System.out.println("Iteration " + layout.getIteration()
+				+ ", error " + layout.getError());
+				try {
+					Thread.sleep(500);                  //a slow consumer
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				subscription.request(1);
+			}
+
+			public void onError(Throwable e) {
+				System.out.println("Failed: " + e);
+				ended.countDown();
+			}
+
+			public void onComplete() {
+				System.out.println("Complete after " + received
+				+ " snapshots");
+				ended.countDown();
+			}
+		});
+		Layout layout = job.getResult().get();
+		System.out.println("Final error " + layout.getError());
+		ended.await();
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Keeps a finished layout live while its data change, e.g. behind a
+ * dashboard fed by a stream of similarity updates. Any thread may add or
+ * remove terms and add, update or remove relations; the changes are queued,
+ * and a background thread applies all those waiting between two iterations
+ * and absorbs them together with Model.relaxChanges, so a burst of updates
+ * costs one local relaxation rather than one each. It then runs ordinary
+ * iterations for WARM_ITERATIONS steps, letting the whole layout settle,
+ * and sleeps once that is done until more updates arrive.
+ *
+ * getLayout() returns the latest snapshot, taken every PUBLISH_INTERVAL
+ * iterations and after each batch of updates, without waiting for the
+ * simulation. The model belongs to the background thread from start()
+ * until close(), so it should not be touched directly meanwhile.
+ *
+ *     HeadlessControlFlow flow = new HeadlessControlFlow(source, "tim_lewis");
+ *     LiveLayout live = LiveLayout.start(flow.getModel());
+ *     live.putRelation("tim_lewis", "new_term", 0.4);
+ *     ...
+ *     Layout now = live.getLayout();
+ */
+package visualiser.distancemodel.controlflow;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.Model;
+import visualiser.distancemodel.metrics.Metrics;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * A layout that follows incremental changes to its terms and relations.
+ */
+public final class LiveLayout implements Closeable {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int PUBLISH_INTERVAL = 10;      //iterations
+	private static final long IDLE_WAIT = 1000;         //ms, once settled
+	private static final Metrics.Counter UPDATES = Metrics.counter(
+	"live_updates", "Incremental updates applied to live layouts");
+	private static final Metrics.Counter REJECTED = Metrics.counter(
+	"live_updates_rejected", "Incremental updates the model refused");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final Model model;                          //worker's only
+	private final Queue<Update> updates = new ConcurrentLinkedQueue<Update>();
+	private final Object wake = new Object();           //signals updates
+	private final Thread worker;
+	private volatile Layout layout;                     //latest snapshot
+	private volatile boolean closed;
+
+	/***********CONSTRUCTORS AND STATIC FACOTRY METHODS*************/
+	private LiveLayout(Model model) {
+		this.model = model;
+		layout = model.getLayout();
+		worker = new Thread(new Runnable() {
+			public void run() {
+				simulate();
+			}
+		}, "live " + layout.getReferenceTerm());
+		worker.setDaemon(true);
+	}
+
+	/**
+	 * Start following changes to a model
+	 *
+	 * @param model terms and relations, normally already laid out (e.g.
+	 *              HeadlessControlFlow.getModel())
+	 * @return handle through which to change it
+	 */
+	public static LiveLayout start(Model model) {
+		LiveLayout live = new LiveLayout(model);
+		live.worker.start();
+		return live;
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return the latest snapshot of the layout
+	 */
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Add or update a relation, adding its terms if they are new
+	 *
+	 * @param data similarity, as it would be read from a file
+	 */
+	public void putRelation(final String identifier1,
+	                        final String identifier2, final double data) {
+		submit(new Update() {
+			boolean apply() {
+				return model.putRelation(identifier1, identifier2, data);
+			}
+		});
+	}
+
+	public void removeRelation(final String identifier1,
+	                           final String identifier2) {
+		submit(new Update() {
+			boolean apply() {
+				return model.removeRelation(identifier1, identifier2);
+			}
+		});
+	}
+
+	public void addTerm(final String identifier) {
+		submit(new Update() {
+			boolean apply() {
+				return model.addTerm(identifier);
+			}
+		});
+	}
+
+	/**
+	 * Remove a term. Removing the reference term, or leaving fewer than
+	 * three, is refused (and counted in the metrics).
+	 */
+	public void removeTerm(final String identifier) {
+		submit(new Update() {
+			boolean apply() {
+				return model.removeTerm(identifier);
+			}
+		});
+	}
+
+	/**
+	 * Stop following changes, waiting for the background thread. Updates
+	 * still queued are dropped.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (wake) {
+			wake.notifyAll();
+		}
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*********************Utility Methods***************************/
+	private void submit(Update update) {
+		if (closed) {
+			throw new IllegalStateException("Live layout closed");
+		}
+		updates.add(update);
+		synchronized (wake) {
+			wake.notifyAll();
+		}
+	}
+
+	/**
+	 * The background thread: absorb updates, settle, sleep when settled
+	 */
+	private void simulate() {
+		int settling = 0;                               //iterations to go
+		while (!closed) {
+			if (applyUpdates()) {
+				model.relaxChanges(LOCAL_ITERATIONS);
+				layout = model.getLayout();
+				settling = WARM_ITERATIONS;
+			}
+			if (settling == 0) {
+				synchronized (wake) {
+					if (updates.isEmpty() && !closed) {
+						try {
+							wake.wait(IDLE_WAIT);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+				continue;
+			}
+			model.imposeForces();
+			model.advanceTime();
+			if (--settling % PUBLISH_INTERVAL == 0) {
+				layout = model.getLayout();
+			}
+		}
+	}
+
+	/**
+	 * Apply every queued update to the model
+	 *
+	 * @return true if any changed it
+	 */
+	private boolean applyUpdates() {
+		Update update;
+		while ((update = updates.poll()) != null) {
+			try {
+				if (update.apply()) {
+					UPDATES.increment();
+				}
+			} catch (IllegalArgumentException e) {
+				REJECTED.increment();
+				System.err.println("Update refused: " + e.getMessage());
+			} catch (IllegalStateException e) {
+				REJECTED.increment();
+				System.err.println("Update refused: " + e.getMessage());
+			}
+		}
+		return model.hasChanges();
+	}
+
+	/**
+	 * ******************INNER CLASSES****************************
+	 */
+	/**
+	 * A change waiting to be made to the model
+	 */
+	private abstract static class Update {
+
+		/**
+		 * @return true if the model changed
+		 */
+		abstract boolean apply();
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Fixed capacity min-heap of (item, key) pairs held in primitive arrays. Once
+ * full, an offer only succeeds if its key beats the smallest key held, so the
+ * heap ends up holding the items with the largest keys seen.
+ */
+package visualiser.distancemodel.io;
+
+/**
+ * Keeps the k highest-keyed int items offered to it.
+ */
+public class BoundedMinHeap {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final int[] items;
+	private final double[] keys;
+	private int size;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param capacity maximum number of items kept (k)
+	 */
+	public BoundedMinHeap(int capacity) {
+		items = new int[capacity];
+		keys = new double[capacity];
+	}
+
+	/************************Accessors******************************/
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Item at heap position i (0 <= i < size). Positions are not sorted.
+	 */
+	public int getItem(int i) {
+		return items[i];
+	}
+
+	public double getKey(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * Linear scan, which is cheap for the small k this is used with
+	 */
+	public boolean contains(int item) {
+		return indexOf(item) >= 0;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Offer an item. An item already present keeps the larger of its keys.
+	 *
+	 * @return true if the heap changed
+	 */
+	public boolean offer(int item, double key) {
+		if (size == items.length && key <= keys[0]) {
+			return false;                               //can't beat the min
+		}
+		int existing = indexOf(item);
+		if (existing >= 0) {
+			if (key <= keys[existing]) {
+				return false;
+			}
+			keys[existing] = key;
+			siftDown(existing);                         //key only increased
+			return true;
+		}
+		if (size < items.length) {
+			items[size] = item;
+			keys[size] = key;
+			siftUp(size++);
+		} else {
+			items[0] = item;                            //replace the minimum
+			keys[0] = key;
+			siftDown(0);
+		}
+		return true;
+	}
+
+	/*********************Utility Methods***************************/
+	private int indexOf(int item) {
+		for (int i = 0; i < size; i++) {
+			if (items[i] == item) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= keys[i]) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				return;
+			}
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (keys[i] <= keys[child]) {
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int item = items[a];
+		items[a] = items[b];
+		items[b] = item;
+		double key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+	}
+}
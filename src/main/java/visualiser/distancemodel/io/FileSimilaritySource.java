@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Reads relations from a text file (optionally gzip compressed) with lines
+ * of the form "identifier1 identifier2 similarity"
+ */
+package visualiser.distancemodel.io;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Similarity source backed by a whitespace separated text file.
+ */
+public class FileSimilaritySource implements SimilaritySource {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final File file;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param f data file holding similarity relations
+	 */
+	public FileSimilaritySource(File f) {
+		file = f;
+	}
+
+	/************************Accessors******************************/
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return a stream source reading the file once, e.g. to see how much
+	 * it read afterwards
+	 */
+	public StreamSimilaritySource open() throws IOException {
+		return StreamSimilaritySource.open(file);
+	}
+
+	/**
+	 * Read identifier1, identifier2, similarity blocks in turn. Files may be
+	 * gzip compressed.
+	 */
+	public void read(SimilarityHandler handler) throws IOException {
+		open().read(handler);
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+}
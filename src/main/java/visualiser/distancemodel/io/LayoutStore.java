@@ -0,0 +1,716 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * A persistent store of finished layouts, one file holding layouts for any
+ * number of reference terms, so that a map computed once (e.g. by BatchMain)
+ * can be served later with a page read instead of a simulation. Layouts are
+ * keyed by reference term and a parameter string that identifies what was
+ * laid out and how; parameters() builds the usual one from the graph's content
+ * hash, the number of starts and the number of iterations, and
+ * warmParameters() that of a layout refined from an earlier one, so a warm
+ * result is never taken for a cold one. The layout last stored for a term
+ * is also found by term alone, with getLatest(), e.g. to warm start its
+ * layout once the thesaurus has changed.
+ *
+ * The file is memory-mapped. Updates only ever append: a new layout, or a new
+ * version of one already stored, is written after everything else and then
+ * linked into the index, and a grown index is written afresh at the end. The
+ * space of replaced layouts and old indexes is not reused; copy the store
+ * with compact() to reclaim it. Each step of an append is made visible by a
+ * single aligned 8-byte write, so readers (including other processes mapping
+ * the same file) never see a half-written layout, and a crash loses at most
+ * the layout being added. Appends take a file lock, so several batch jobs can
+ * add to one store; within one JVM share a single writable LayoutStore.
+ *
+ * File layout (big-endian):
+ *   header : int MAGIC, int VERSION, long end of data, long index offset
+ *   index  : long number of slots, long slots in use, long keys with a
+ *            layout, then open-addressed hash table with linear probing,
+ *            SLOT_SIZE bytes per slot: long key hash, long layout offset
+ *            (0 = empty). The hash of a key is >= 0; that of a term's
+ *            latest layout is < 0. The counts are raised before a new key
+ *            is linked, so a crash between the two leaves them high by one.
+ *   layout : int length of the rest, term, parameters, int DIMENSIONS,
+ *            int terms, int reference term index, int iteration,
+ *            double error, byte flags, identifiers, labels if they aren't
+ *            the identifiers' display form, float coordinates, float
+ *            importance if the layout has it
+ * Strings are an unsigned short byte count then UTF-8. Coordinates are
+ * stored as floats, half the size of doubles and still far finer than a
+ * pixel. Key hashes are 64 bit; a match is confirmed against the term and
+ * parameters stored with the layout.
+ *
+ * A single mapping limits a store to 2GB.
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.terms.Term;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Memory-mapped, append-only file of layouts keyed by reference term.
+ */
+public class LayoutStore implements Closeable {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int MAGIC = 0x4C415953;         //"LAYS"
+	private static final int VERSION = 2;
+	private static final int END = 8;                   //header positions
+	private static final int INDEX = 16;
+	private static final int HEADER_SIZE = 24;
+	private static final int USED = 8;                  //index positions
+	private static final int LAYOUTS = 16;
+	private static final int INDEX_HEADER = 24;
+	private static final int SLOT_SIZE = 16;
+	private static final int INITIAL_SLOTS = 256;
+	private static final int MIN_GROWTH = 1 << 20;      //bytes
+	private static final int LABELS = 1;                //flags
+	private static final int IMPORTANCE = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final boolean writable;
+	private volatile MappedByteBuffer map;              //replaced as it grows
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Open a store for reading and appending, creating it if necessary
+	 *
+	 * @param file the store
+	 * @return the opened store
+	 * @throws IOException if it exists but isn't a layout store
+	 */
+	public static LayoutStore open(File file) throws IOException {
+		return new LayoutStore(file, true);
+	}
+
+	/**
+	 * Open an existing store for reading only. Layouts appended by a writer
+	 * after it was opened are still found.
+	 */
+	public static LayoutStore openReadOnly(File file) throws IOException {
+		return new LayoutStore(file, false);
+	}
+
+	private LayoutStore(File file, boolean writable) throws IOException {
+		this.file = file;
+		this.writable = writable;
+		raf = new RandomAccessFile(file, writable ? "rw" : "r");
+		channel = raf.getChannel();
+		try {
+			if (writable) {
+				FileLock lock = channel.lock();
+				try {
+					if (channel.size() == 0) {
+						create();
+					}
+				} finally {
+					lock.release();
+				}
+			}
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a layout store: " + file);
+			}
+			remap(channel.size());
+			if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+				throw new IOException("Not a layout store: " + file);
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * Look up a layout
+	 *
+	 * @param term       its reference term
+	 * @param parameters what it was laid out from, e.g. from parameters()
+	 * @return the layout, or null if none is stored under that key
+	 * @throws IOException if the store is damaged
+	 */
+	public Layout get(String term, String parameters) throws IOException {
+		long offset = find(term, parameters, hash(term, parameters));
+		return (offset == 0) ? null : decode(offset);
+	}
+
+	/**
+	 * @return the layout last stored for a term, whatever its parameters,
+	 * or null if there is none
+	 */
+	public Layout getLatest(String term) throws IOException {
+		long offset = find(term, null, latestHash(term));
+		return (offset == 0) ? null : decode(offset);
+	}
+
+	public boolean contains(String term, String parameters)
+	throws IOException {
+		return find(term, parameters, hash(term, parameters)) != 0;
+	}
+
+	/**
+	 * @return the number of keys with a layout
+	 */
+	public int size() throws IOException {
+		MappedByteBuffer buffer = current();
+		return (int) buffer.getLong((int) buffer.getLong(INDEX) + LAYOUTS);
+	}
+
+	/**
+	 * @return the reference terms with a layout, once for each parameters
+	 * they were stored with, in index order
+	 */
+	public ArrayList<String> getTerms() throws IOException {
+		MappedByteBuffer buffer = current();
+		long index = buffer.getLong(INDEX);
+		long slots = buffer.getLong((int) index);
+		ArrayList<String> terms = new ArrayList<String>();
+		for (long slot = 0; slot < slots; slot++) {
+			int position = slotPosition(index, slot);
+			long offset = buffer.getLong(position + 8);
+			if (offset != 0 && buffer.getLong(position) >= 0) {
+				ByteBuffer record = record(buffer, offset);
+				terms.add(getString(record));
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * @return bytes in use, including replaced layouts and old indexes
+	 */
+	public long getLength() throws IOException {
+		return current().getLong(END);
+	}
+
+	/**
+	 * The usual parameters key: the content of the graph laid out and the
+	 * solver settings that change the result
+	 */
+	public static String parameters(SimilarityGraph graph, int starts,
+	                                int iterations) {
+		return parameters(graph.getContentHash(), starts, iterations);
+	}
+
+	/**
+	 * @param contentHash SimilarityGraph.getContentHash() of the graph
+	 */
+	public static String parameters(String contentHash, int starts,
+	                                int iterations) {
+		return contentHash + " starts=" + starts + " iterations=" + iterations;
+	}
+
+	/**
+	 * The parameters key of a layout warm started from an earlier one
+	 * (see Model.warmStart), with no exploratory starts
+	 */
+	public static String warmParameters(SimilarityGraph graph,
+	                                    int iterations) {
+		return parameters(graph.getContentHash(), 0, iterations) + " warm";
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Append a layout, replacing any stored under the same key, and make it
+	 * the term's latest
+	 *
+	 * @param term       its reference term
+	 * @param parameters what it was laid out from, e.g. from parameters()
+	 * @param layout     the layout
+	 * @throws IOException if the store is read only or can't be written
+	 */
+	public synchronized void put(String term, String parameters,
+	                             Layout layout) throws IOException {
+		if (!writable) {
+			throw new IOException("Layout store opened read only: " + file);
+		}
+		byte[] record = encode(term, parameters, layout);
+		long hash = hash(term, parameters);
+		long latest = latestHash(term);
+		FileLock lock = channel.lock();                 //other processes
+		try {
+			MappedByteBuffer buffer = current();
+			long end = buffer.getLong(END);
+			long index = buffer.getLong(INDEX);
+			long slots = buffer.getLong((int) index);
+			long used = buffer.getLong((int) index + USED);
+			long layouts = buffer.getLong((int) index + LAYOUTS);
+			boolean newKey = findSlot(buffer, index, term, parameters,
+			hash) < 0;
+			int added = newKey ? 1 : 0;                 //slots to be used
+			if (findSlot(buffer, index, term, null, latest) < 0) {
+				added++;
+			}
+
+			//1. The layout, after everything else
+			long offset = end;
+			end = reserve(end, record.length);
+			buffer = map;
+			for (int i = 0; i < record.length; i++) {
+				buffer.put((int) offset + i, record[i]);
+			}
+			buffer.putLong(END, end);
+
+			//2. A larger index if this would fill it over half full
+			if (2 * (used + added) > slots) {
+				long newIndex = end;
+				long newSlots = slots * 2;
+				end = reserve(end, INDEX_HEADER + newSlots * SLOT_SIZE);
+				buffer = map;
+				writeIndex(buffer, newIndex, newSlots, used, layouts);
+				for (long slot = 0; slot < slots; slot++) {
+					int position = slotPosition(index, slot);
+					long slotOffset = buffer.getLong(position + 8);
+					if (slotOffset != 0) {
+						insert(buffer, newIndex, buffer.getLong(position),
+						slotOffset);
+					}
+				}
+				buffer.putLong(END, end);
+				buffer.putLong(INDEX, newIndex);        //readers switch here
+				index = newIndex;
+			}
+
+			//3. Count any new keys, then link it in, which is when readers
+			//first see it
+			buffer.putLong((int) index + USED, used + added);
+			buffer.putLong((int) index + LAYOUTS, newKey ? layouts + 1
+			: layouts);
+			link(buffer, index, term, parameters, hash, offset);
+			link(buffer, index, term, null, latest, offset);
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Copy the current layouts into a new store, leaving out replaced
+	 * layouts and old indexes. Each term's latest layout is copied after its
+	 * others, so that it is still the latest.
+	 *
+	 * @param target file for the copy, which must not already be a store
+	 */
+	public void compact(File target) throws IOException {
+		LayoutStore copy = open(target);
+		try {
+			MappedByteBuffer buffer = current();
+			long index = buffer.getLong(INDEX);
+			long slots = buffer.getLong((int) index);
+			HashSet<Long> latest = new HashSet<Long>();
+			for (long slot = 0; slot < slots; slot++) {
+				int position = slotPosition(index, slot);
+				if (buffer.getLong(position) < 0) {
+					latest.add(buffer.getLong(position + 8));
+				}
+			}
+			for (int pass = 0; pass < 2; pass++) {
+				for (long slot = 0; slot < slots; slot++) {
+					int position = slotPosition(index, slot);
+					long offset = buffer.getLong(position + 8);
+					if (offset != 0 && buffer.getLong(position) >= 0
+					&& latest.contains(offset) == (pass == 1)) {
+						ByteBuffer record = record(buffer, offset);
+						String term = getString(record);
+						String parameters = getString(record);
+						copy.put(term, parameters, decode(offset));
+					}
+				}
+			}
+			copy.force();
+		} finally {
+			copy.close();
+		}
+	}
+
+	/**
+	 * Write appended layouts through to the disk
+	 */
+	public void force() {
+		if (writable) {
+			map.force();
+		}
+	}
+
+	/**
+	 * Close the file. The mapping is released by the GC.
+	 */
+	public void close() throws IOException {
+		force();
+		raf.close();
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Start a new store: header and an empty index
+	 */
+	private void create() throws IOException {
+		long end = HEADER_SIZE + INDEX_HEADER
+		+ (long) INITIAL_SLOTS * SLOT_SIZE;
+		ByteBuffer header = ByteBuffer.allocate((int) end);
+		header.putInt(0, MAGIC).putInt(4, VERSION).putLong(END, end)
+		.putLong(INDEX, HEADER_SIZE).putLong(HEADER_SIZE, INITIAL_SLOTS);
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+		channel.force(true);
+	}
+
+	/**
+	 * @return the mapping, remapped first if another writer has appended
+	 * beyond it
+	 */
+	private MappedByteBuffer current() throws IOException {
+		MappedByteBuffer buffer = map;
+		if (buffer.getLong(END) > buffer.capacity()) {
+			synchronized (this) {
+				remap(channel.size());
+				buffer = map;
+			}
+		}
+		return buffer;
+	}
+
+	private void remap(long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Layout store over 2GB: " + file);
+		}
+		if (map == null || size > map.capacity()) {
+			map = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+			: FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	/**
+	 * Make room for bytes at the end of the data, growing the file and
+	 * mapping geometrically
+	 *
+	 * @return the new end of data
+	 */
+	private long reserve(long end, long bytes) throws IOException {
+		long needed = end + bytes;
+		if (needed > map.capacity()) {
+			long size = Math.max(needed, Math.min(Integer.MAX_VALUE,
+			Math.max(2L * map.capacity(), map.capacity() + MIN_GROWTH)));
+			remap(Math.max(size, channel.size()));
+		}
+		return needed;
+	}
+
+	/**
+	 * @param parameters null to match the term's latest layout
+	 * @return offset of the layout stored under a key, or 0 if none
+	 */
+	private long find(String term, String parameters, long hash)
+	throws IOException {
+		MappedByteBuffer buffer = current();
+		int position = findSlot(buffer, buffer.getLong(INDEX), term,
+		parameters, hash);
+		return (position < 0) ? 0 : buffer.getLong(position + 8);
+	}
+
+	/**
+	 * @param parameters null to match the term's latest layout
+	 * @return position of the slot of a key, or -1 if it has none
+	 */
+	private static int findSlot(MappedByteBuffer buffer, long index,
+	                            String term, String parameters, long hash) {
+		long mask = buffer.getLong((int) index) - 1;
+		for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int position = slotPosition(index, slot);
+			long offset = buffer.getLong(position + 8);
+			if (offset == 0) {
+				return -1;                              //empty slot: absent
+			}
+			if (buffer.getLong(position) == hash) {
+				ByteBuffer record = record(buffer, offset);
+				if (getString(record).equals(term) && (parameters == null
+				|| getString(record).equals(parameters))) {
+					return position;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Point a key at a layout, in its slot or a new one
+	 */
+	private static void link(MappedByteBuffer buffer, long index,
+	                         String term, String parameters, long hash,
+	                         long offset) {
+		int position = findSlot(buffer, index, term, parameters, hash);
+		if (position >= 0) {
+			buffer.putLong(position + 8, offset);
+		} else {
+			insert(buffer, index, hash, offset);
+		}
+	}
+
+	private static void writeIndex(MappedByteBuffer buffer, long index,
+	                               long slots, long used, long layouts) {
+		buffer.putLong((int) index, slots).putLong((int) index + USED, used)
+		.putLong((int) index + LAYOUTS, layouts);
+		for (long slot = 0; slot < slots; slot++) {
+			int position = slotPosition(index, slot);
+			buffer.putLong(position, 0).putLong(position + 8, 0);
+		}
+	}
+
+	private static void insert(MappedByteBuffer buffer, long index,
+	                           long hash, long offset) {
+		long mask = buffer.getLong((int) index) - 1;
+		long slot = hash & mask;
+		while (buffer.getLong(slotPosition(index, slot) + 8) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		int position = slotPosition(index, slot);
+		buffer.putLong(position, hash);
+		buffer.putLong(position + 8, offset);          //readers see it here
+	}
+
+	private static int slotPosition(long index, long slot) {
+		return (int) (index + INDEX_HEADER + slot * SLOT_SIZE);
+	}
+
+	/**
+	 * @return a view of one layout, positioned after its length
+	 */
+	private static ByteBuffer record(MappedByteBuffer buffer, long offset) {
+		ByteBuffer record = buffer.duplicate();
+		record.position((int) offset);
+		int length = record.getInt();
+		record.limit(record.position() + length);
+		return record;
+	}
+
+	private byte[] encode(String term, String parameters, Layout layout)
+	throws IOException {
+		int n = layout.size();
+		boolean labels = false;
+		int bytes = 64 + utf8Length(term) + utf8Length(parameters)
+		+ n * 4 * (DIMENSIONS + 1);
+		for (int i = 0; i < n; i++) {
+			bytes += utf8Length(layout.getIdentifier(i));
+			if (!layout.getLabel(i).equals(Term.toLabel(
+			layout.getIdentifier(i)))) {
+				labels = true;
+			}
+		}
+		if (labels) {
+			for (int i = 0; i < n; i++) {
+				bytes += utf8Length(layout.getLabel(i));
+			}
+		}
+		ByteBuffer record = ByteBuffer.allocate(bytes);
+		record.putInt(0);                               //length, below
+		putString(record, term);
+		putString(record, parameters);
+		record.putInt(DIMENSIONS).putInt(n).putInt(layout.getRefTermIndex())
+		.putInt(layout.getIteration()).putDouble(layout.getError())
+		.put((byte) ((labels ? LABELS : 0)
+		| (layout.hasImportance() ? IMPORTANCE : 0)));
+		for (int i = 0; i < n; i++) {
+			putString(record, layout.getIdentifier(i));
+		}
+		if (labels) {
+			for (int i = 0; i < n; i++) {
+				putString(record, layout.getLabel(i));
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < DIMENSIONS; k++) {
+				record.putFloat((float) layout.getCoord(i, k));
+			}
+		}
+		if (layout.hasImportance()) {
+			for (int i = 0; i < n; i++) {
+				record.putFloat(layout.getImportance(i));
+			}
+		}
+		record.putInt(0, record.position() - 4);
+		byte[] result = new byte[record.position()];
+		record.flip();
+		record.get(result);
+		return result;
+	}
+
+	private Layout decode(long offset) throws IOException {
+		ByteBuffer record = record(current(), offset);
+		getString(record);                              //term
+		getString(record);                              //parameters
+		if (record.getInt() != DIMENSIONS) {
+			throw new IOException("Layout in " + file + " is not "
+			+ DIMENSIONS + "-dimensional");
+		}
+		int n = record.getInt();
+		int refTermIndex = record.getInt();
+		int iteration = record.getInt();
+		double error = record.getDouble();
+		int flags = record.get();
+		String[] identifiers = new String[n];
+		String[] labels = new String[n];
+		for (int i = 0; i < n; i++) {
+			identifiers[i] = getString(record);
+		}
+		for (int i = 0; i < n; i++) {
+			labels[i] = ((flags & LABELS) != 0) ? getString(record)
+			: Term.toLabel(identifiers[i]);
+		}
+		double[] coords = new double[n * DIMENSIONS];
+		for (int i = 0; i < coords.length; i++) {
+			coords[i] = record.getFloat();
+		}
+		float[] importance = null;
+		if ((flags & IMPORTANCE) != 0) {
+			importance = new float[n];
+			for (int i = 0; i < n; i++) {
+				importance[i] = record.getFloat();
+			}
+		}
+		return new Layout(identifiers, labels, coords, importance,
+		refTermIndex, iteration, error);
+	}
+
+	private static void putString(ByteBuffer buffer, String s)
+	throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		if (bytes.length > 0xffff) {
+			throw new IOException("String too long to store: "
+			+ s.substring(0, 40) + "...");
+		}
+		buffer.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xffff;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static int utf8Length(String s) {
+		return 2 + s.getBytes(UTF8).length;
+	}
+
+	/**
+	 * 64 bit FNV-1a of the term and parameters, spread so that similar keys
+	 * don't cluster in the table, and made >= 0. Fixed by this code, so
+	 * stable on disk.
+	 */
+	private static long hash(String term, String parameters) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : (term + '\0' + parameters).getBytes(UTF8)) {
+			h = (h ^ (b & 0xff)) * 0x100000001b3L;
+		}
+		return (h ^ (h >>> 32)) & Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return hash of the key of a term's latest layout, which is < 0
+	 */
+	private static long latestHash(String term) {
+		return hash(term, "") | Long.MIN_VALUE;
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return "LayoutStore: " + file;
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * args[0] = store, args[1] = term to look up: list the store's terms, or
+	 * print the coordinates of one term's layouts
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: LayoutStore store [term]");
+			System.exit(1);
+		}
+		LayoutStore store = openReadOnly(new File(args[0]));
+		try {
+			System.out.println(store + " (" + store.size() + " layouts, "
+			+ store.getLength() + " bytes)");
+			ArrayList<String> terms = store.getTerms();
+			if (args.length < 2) {
+				for (String term : terms) {
+					System.out.println(term);
+				}
+				return;
+			}
+			MappedByteBuffer buffer = store.current();
+			long index = buffer.getLong(INDEX);
+			long slots = buffer.getLong((int) index);
+			for (long slot = 0; slot < slots; slot++) {
+				int position = slotPosition(index, slot);
+				long offset = buffer.getLong(position + 8);
+				if (offset == 0 || buffer.getLong(position) < 0) {
+					continue;
+				}
+				ByteBuffer record = record(buffer, offset);
+				if (getString(record).equals(args[1])) {
+					String parameters = getString(record);
+					long start = System.nanoTime();
+					Layout layout = store.get(args[1], parameters);
+					System.out.println(parameters + ": " + layout + ", read in "
+					+ (System.nanoTime() - start) / 1e3 + " us");
+				}
+			}
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Reads another stream on a background thread, so that slow work behind that
+ * stream (gzip inflation, a pipe from an upstream job, disk reads) overlaps
+ * with whatever the consumer does with the bytes. At most CHUNKS chunks of
+ * CHUNK_SIZE bytes are buffered; when the consumer falls behind the reader
+ * thread blocks, so memory stays bounded however large the input.
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded, double-buffered asynchronous wrapper around an InputStream.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final int CHUNKS = 16;               //max buffered chunks
+	private static final byte[] END = new byte[0];      //end-of-stream marker
+	private static final Metrics.Counter BYTES_READ = Metrics.counter(
+	"bytes_read", "Bytes of similarity data read, after decompression");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final InputStream source;
+	private final BlockingQueue<byte[]> chunks;
+	private final Thread reader;
+	private volatile IOException failure;               //set by reader thread
+	private byte[] current = new byte[0];
+	private int position;
+	private boolean finished;
+	private long bytesRead;                             //by the consumer
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Start reading the source in the background
+	 *
+	 * @param in   stream to read ahead of the consumer
+	 * @param name used to name the reader thread
+	 */
+	public ReadAheadInputStream(InputStream in, String name) {
+		source = in;
+		chunks = new ArrayBlockingQueue<byte[]>(CHUNKS);
+		reader = new Thread(new Runnable() {
+			public void run() {
+				readAhead();
+			}
+		}, "read-ahead " + name);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return bytes handed to the consumer so far by this stream alone
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/************************Mutators*******************************/
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return current.length - position;
+	}
+
+	/**
+	 * Stop the reader thread and close the source
+	 */
+	@Override
+	public void close() throws IOException {
+		finished = true;
+		reader.interrupt();
+		source.close();
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Make sure the current chunk has unread bytes
+	 *
+	 * @return false at end of stream
+	 */
+	private boolean fill() throws IOException {
+		while (position == current.length) {
+			if (finished) {
+				return false;
+			}
+			try {
+				current = chunks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading");
+			}
+			position = 0;
+			bytesRead += current.length;
+			BYTES_READ.add(current.length);
+			if (current == END) {
+				finished = true;
+				if (failure != null) {
+					throw failure;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Body of the reader thread
+	 */
+	private void readAhead() {
+		try {
+			while (true) {
+				byte[] chunk = new byte[CHUNK_SIZE];
+				int length = 0;
+				int count = 0;
+				while (length < CHUNK_SIZE
+				&& (count = source.read(chunk, length, CHUNK_SIZE - length)) > 0) {
+					length += count;
+				}
+				if (length > 0) {
+					chunks.put(length == CHUNK_SIZE ? chunk
+					: Arrays.copyOf(chunk, length));
+				}
+				if (count < 0) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			return;                                 //consumer closed us
+		}
+		try {
+			chunks.put(END);
+		} catch (InterruptedException e) {
+			//consumer closed us
+		}
+	}
+}
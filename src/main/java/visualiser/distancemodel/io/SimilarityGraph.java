@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * An in-memory similarity graph: a table of identifiers and parallel arrays
+ * of edges (index1, index2, similarity) into that table.
+ */
+package visualiser.distancemodel.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Similarity source held entirely in primitive arrays.
+ */
+public class SimilarityGraph implements SimilaritySource {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private String[] identifiers;                       //index-to-name
+	private HashMap<String, Integer> indices;           //name-to-index
+	private int numberOfTerms;
+	private int[] from;                                 //edge start
+	private int[] to;                                   //edge end
+	private double[] similarities;                      //edge similarity
+	private int numberOfEdges;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Constructor. Empty graph which grows as terms and edges are added
+	 */
+	public SimilarityGraph() {
+		identifiers = new String[INITIAL_CAPACITY];
+		indices = new HashMap<String, Integer>();
+		from = new int[INITIAL_CAPACITY];
+		to = new int[INITIAL_CAPACITY];
+		similarities = new double[INITIAL_CAPACITY];
+	}
+
+	/************************Accessors******************************/
+	public int getNumberOfTerms() {
+		return numberOfTerms;
+	}
+
+	public int getNumberOfEdges() {
+		return numberOfEdges;
+	}
+
+	public String getIdentifier(int index) {
+		return identifiers[index];
+	}
+
+	/**
+	 * @return index of the identifier or -1 if not present
+	 */
+	public int getIndex(String identifier) {
+		Integer index = indices.get(identifier);
+		return (index == null) ? -1 : index.intValue();
+	}
+
+	public int getFrom(int edge) {
+		return from[edge];
+	}
+
+	public int getTo(int edge) {
+		return to[edge];
+	}
+
+	public double getSimilarity(int edge) {
+		return similarities[edge];
+	}
+
+	/**
+	 * @return SHA-256 of the terms and edges, in hex: graphs with the same
+	 * edges added in the same order have the same hash. Computed each call.
+	 */
+	public String getContentHash() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);            //every JVM has SHA-256
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		for (int i = 0; i < numberOfTerms; i++) {
+			digest.update(identifiers[i].getBytes(UTF8));
+			digest.update((byte) 0);
+		}
+		for (int e = 0; e < numberOfEdges; e++) {
+			buffer.clear();
+			buffer.putInt(from[e]).putInt(to[e])
+			.putLong(Double.doubleToLongBits(similarities[e]));
+			digest.update(buffer.array());
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Replay every edge to the handler in the order it was added
+	 */
+	public void read(SimilarityHandler handler) {
+		for (int e = 0; e < numberOfEdges; e++) {
+			handler.relation(identifiers[from[e]], identifiers[to[e]],
+			similarities[e]);
+		}
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Add a term if not already present
+	 *
+	 * @return index of the term
+	 */
+	public int addTerm(String identifier) {
+		Integer index = indices.get(identifier);
+		if (index != null) {
+			return index.intValue();
+		}
+		if (numberOfTerms == identifiers.length) {
+			identifiers = Arrays.copyOf(identifiers, numberOfTerms * 2);
+		}
+		identifiers[numberOfTerms] = identifier;
+		indices.put(identifier, numberOfTerms);
+		return numberOfTerms++;
+	}
+
+	/**
+	 * Add an edge between two terms already in the graph
+	 */
+	public void addEdge(int index1, int index2, double similarity) {
+		if (numberOfEdges == from.length) {
+			int capacity = numberOfEdges * 2;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			similarities = Arrays.copyOf(similarities, capacity);
+		}
+		from[numberOfEdges] = index1;
+		to[numberOfEdges] = index2;
+		similarities[numberOfEdges++] = similarity;
+	}
+
+	/**
+	 * Add an edge, adding either term first if necessary
+	 */
+	public void addEdge(String identifier1, String identifier2,
+	                    double similarity) {
+		addEdge(addTerm(identifier1), addTerm(identifier2), similarity);
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return "SimilarityGraph: " + numberOfTerms + " terms, "
+		+ numberOfEdges + " edges";
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Filter stage between a SimilaritySource and the Model. Keeps only pairs at
+ * or above a similarity threshold and, optionally, only each term's top-k
+ * most similar partners. With top-k the whole input is read first, holding
+ * at most k partners per term, and the surviving edges are then emitted as
+ * either the symmetric union (kept if either term ranks the other in its
+ * top-k) or mutual kNN (kept only if both do). The number of edges kept per
+ * term is recorded so that the cost of a layout is known before it starts.
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.GlobalParameters.Sparsify;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static visualiser.distancemodel.GlobalParameters.*;
+
+/**
+ * Top-k / threshold sparsification of another similarity source.
+ */
+public class SparsifyingSource implements SimilaritySource {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final SimilaritySource source;
+	private final int topK;                             //0 = no limit
+	private final double threshold;                     //minimum similarity
+	private final Sparsify mode;
+	private HashMap<String, Integer> indices;           //name-to-index
+	private String[] identifiers;                       //index-to-name
+	private int numberOfTerms;
+	private int[] edgesPerTerm;                         //degree after filter
+	private BoundedMinHeap[] heaps;                     //best partners
+	private long edgesRead;
+	private long edgesKept;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param s    source to be filtered
+	 * @param k    partners kept per term (0 = keep all)
+	 * @param t    pairs below this similarity are dropped
+	 * @param mode how the per-term top-k lists are combined
+	 */
+	public SparsifyingSource(SimilaritySource s, int k, double t,
+	                         Sparsify mode) {
+		source = s;
+		topK = k;
+		threshold = t;
+		this.mode = mode;
+	}
+
+	/**
+	 * Wrap a source with the filter set in GlobalParameters, if any
+	 *
+	 * @return the filtered source, or s itself if no filter is configured
+	 */
+	public static SimilaritySource configured(SimilaritySource s) {
+		if (!isConfigured()) {
+			return s;
+		}
+		return new SparsifyingSource(s, SPARSIFY_TOP_K, SPARSIFY_THRESHOLD,
+		SPARSIFY_MODE);
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return true if GlobalParameters set a filter for configured() to use
+	 */
+	public static boolean isConfigured() {
+		return SPARSIFY_TOP_K > 0 || SPARSIFY_THRESHOLD > 0;
+	}
+
+	public long getEdgesRead() {
+		return edgesRead;
+	}
+
+	public long getEdgesKept() {
+		return edgesKept;
+	}
+
+	/**
+	 * @return number of edges kept for a term after the last read
+	 */
+	public int getEdgesKept(String identifier) {
+		Integer index = indices.get(identifier);
+		return (index == null) ? 0 : edgesPerTerm[index];
+	}
+
+	/**
+	 * @return the largest number of edges kept for any one term
+	 */
+	public int getMaxEdgesPerTerm() {
+		int max = 0;
+		for (int i = 0; i < numberOfTerms; i++) {
+			max = Math.max(max, edgesPerTerm[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Read the source, passing only the surviving edges to the handler
+	 */
+	public void read(final SimilarityHandler handler) throws IOException {
+		indices = new HashMap<String, Integer>();
+		identifiers = new String[16];
+		edgesPerTerm = new int[16];
+		heaps = new BoundedMinHeap[16];
+		numberOfTerms = 0;
+		edgesRead = 0;
+		edgesKept = 0;
+		if (topK <= 0) {
+			readThresholded(handler);
+		} else {
+			readTopK(handler);
+		}
+		heaps = null;                               //free the buffers
+		if (DEBUG) {
+			System.out.println(toString());
+		}
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Threshold only: no need to buffer, pass edges straight through
+	 */
+	private void readThresholded(final SimilarityHandler handler)
+	throws IOException {
+		source.read(new SimilarityHandler() {
+			public void relation(String identifier1, String identifier2,
+			                     double similarity) {
+				edgesRead++;
+				if (accept(identifier1, identifier2, similarity)) {
+					edgesPerTerm[intern(identifier1)]++;
+					edgesPerTerm[intern(identifier2)]++;
+					edgesKept++;
+					handler.relation(identifier1, identifier2, similarity);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Top-k: collect each term's best partners, then emit the combination
+	 */
+	private void readTopK(SimilarityHandler handler) throws IOException {
+		source.read(new SimilarityHandler() {
+			public void relation(String identifier1, String identifier2,
+			                     double similarity) {
+				edgesRead++;
+				if (accept(identifier1, identifier2, similarity)) {
+					int index1 = intern(identifier1);
+					int index2 = intern(identifier2);
+					heapFor(index1).offer(index2, similarity);
+					heapFor(index2).offer(index1, similarity);
+				}
+			}
+		});
+		for (int index1 = 0; index1 < numberOfTerms; index1++) {
+			BoundedMinHeap heap = heaps[index1];
+			for (int i = 0; i < heap.size(); i++) {
+				int index2 = heap.getItem(i);
+				boolean reciprocated = heaps[index2].contains(index1);
+				boolean emit = (mode == Sparsify.MUTUAL_KNN)
+				? (reciprocated && index1 < index2)
+				: (!reciprocated || index1 < index2);    //each pair once
+				if (emit) {
+					edgesPerTerm[index1]++;
+					edgesPerTerm[index2]++;
+					edgesKept++;
+					handler.relation(identifiers[index1], identifiers[index2],
+					heap.getKey(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop self-pairs, pairs the Model would ignore, and pairs below threshold
+	 */
+	private boolean accept(String identifier1, String identifier2,
+	                       double similarity) {
+		return similarity > 0.0 && similarity < 1.0
+		&& similarity >= threshold && !identifier1.equals(identifier2);
+	}
+
+	private BoundedMinHeap heapFor(int index) {
+		if (heaps[index] == null) {
+			heaps[index] = new BoundedMinHeap(topK);
+		}
+		return heaps[index];
+	}
+
+	private int intern(String identifier) {
+		Integer index = indices.get(identifier);
+		if (index != null) {
+			return index.intValue();
+		}
+		if (numberOfTerms == identifiers.length) {
+			identifiers = Arrays.copyOf(identifiers, numberOfTerms * 2);
+			edgesPerTerm = Arrays.copyOf(edgesPerTerm, numberOfTerms * 2);
+			heaps = Arrays.copyOf(heaps, numberOfTerms * 2);
+		}
+		identifiers[numberOfTerms] = identifier;
+		indices.put(identifier, numberOfTerms);
+		return numberOfTerms++;
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		int min = (numberOfTerms == 0) ? 0 : Integer.MAX_VALUE;
+		for (int i = 0; i < numberOfTerms; i++) {
+			min = Math.min(min, edgesPerTerm[i]);
+		}
+		double mean = (numberOfTerms == 0) ? 0
+		: 2.0 * edgesKept / numberOfTerms;
+		return "Sparsified " + source + ": " + numberOfTerms + " terms, kept "
+		+ edgesKept + " of " + edgesRead + " edges (per term min " + min
+		+ ", mean " + Math.round(mean * 10) / 10.0 + ", max "
+		+ getMaxEdgesPerTerm() + ")";
+	}
+}
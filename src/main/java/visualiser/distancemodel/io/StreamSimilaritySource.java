@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Reads "identifier1 identifier2 similarity" lines from any byte stream:
+ * a file, a gzip-compressed file, standard input or a named pipe. Input is
+ * read ahead on a background thread (which also does any gzip inflation)
+ * while this thread parses, so upstream jobs can stream similarities straight
+ * into a layout without writing an uncompressed temporary file first.
+ *
+ * Compression is detected from the gzip magic number rather than the file
+ * name, so compressed data arriving on a pipe is handled too.
+ */
+package visualiser.distancemodel.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Similarity source reading a text stream, optionally gzip compressed.
+ */
+public class StreamSimilaritySource implements SimilaritySource {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final String STDIN = "-";             //name for System.in
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final String name;
+	private InputStream stream;                         //null once read
+	private long bytesRead;                             //after decompression
+	private long linesRead;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param in   stream of similarity lines, plain or gzip compressed
+	 * @param name description used in messages
+	 */
+	public StreamSimilaritySource(InputStream in, String name) {
+		stream = in;
+		this.name = name;
+	}
+
+	/**
+	 * @param channel channel of similarity lines, plain or gzip compressed
+	 * @param name    description used in messages
+	 */
+	public StreamSimilaritySource(ReadableByteChannel channel, String name) {
+		this(Channels.newInputStream(channel), name);
+	}
+
+	/**
+	 * Open a named input: STDIN ("-") for standard input, else a file or
+	 * named pipe.
+	 */
+	public static StreamSimilaritySource open(String name) throws IOException {
+		if (STDIN.equals(name)) {
+			return new StreamSimilaritySource(System.in, "standard input");
+		}
+		return open(new File(name));
+	}
+
+	public static StreamSimilaritySource open(File file) throws IOException {
+		return new StreamSimilaritySource(new FileInputStream(file),
+		file.toString());
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return bytes of text read by read(), after decompression
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return lines read by read(), including any skipped
+	 */
+	public long getLinesRead() {
+		return linesRead;
+	}
+
+	/**
+	 * Parse the stream, passing each relation to the handler. A stream can
+	 * only be read once.
+	 */
+	public void read(SimilarityHandler handler) throws IOException {
+		if (stream == null) {
+			throw new IOException(name + " has already been read");
+		}
+		ReadAheadInputStream in = decompressed(stream);
+		stream = null;
+		try {
+			linesRead = parse(new InputStreamReader(in, UTF8), handler);
+		} finally {
+			bytesRead = in.getBytesRead();
+			in.close();
+		}
+	}
+
+	/**
+	 * Parse similarity lines from a reader. Lines with fewer than three
+	 * fields are skipped; further fields are ignored.
+	 *
+	 * @return the number of lines read
+	 */
+	public static long parse(Reader input, SimilarityHandler handler)
+	throws IOException {
+		BufferedReader reader = new BufferedReader(input, BUFFER_SIZE);
+		String line;
+		int[] bounds = new int[6];                      //start,end x 3 fields
+		long lines = 0;
+		while ((line = reader.readLine()) != null) {
+			lines++;
+			if (tokenise(line, bounds)) {
+				handler.relation(line.substring(bounds[0], bounds[1]),
+				line.substring(bounds[2], bounds[3]),
+				Double.parseDouble(line.substring(bounds[4], bounds[5])));
+			}
+		}
+		return lines;
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Wrap the raw stream: read ahead on a background thread, inflating
+	 * there if the data starts with the gzip magic number.
+	 */
+	private ReadAheadInputStream decompressed(InputStream raw)
+	throws IOException {
+		BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+		in.mark(2);
+		int magic = in.read() | (in.read() << 8);
+		in.reset();
+		InputStream source = (magic == GZIP_MAGIC)
+		? new GZIPInputStream(in, BUFFER_SIZE) : in;
+		return new ReadAheadInputStream(source, name);
+	}
+
+	/**
+	 * Find the first three whitespace separated fields of a line without
+	 * the cost of a regular expression split.
+	 *
+	 * @return false if the line has fewer than three fields
+	 */
+	private static boolean tokenise(String line, int[] bounds) {
+		int length = line.length();
+		int position = 0;
+		for (int field = 0; field < 3; field++) {
+			while (position < length && isSpace(line.charAt(position))) {
+				position++;
+			}
+			if (position == length) {
+				return false;
+			}
+			bounds[2 * field] = position;
+			while (position < length && !isSpace(line.charAt(position))) {
+				position++;
+			}
+			bounds[2 * field + 1] = position;
+		}
+		return true;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Generates similarity data of any size for scale testing, deterministically
+ * from a seed. Terms "t0", "t1", ... are given ground-truth positions in the
+ * unit square (cube in 3D), either uniformly or around a number of cluster
+ * centres, and each term is linked to its nearest terms by a similarity that
+ * falls with their true distance, exp(-distance / scale). How many terms
+ * each links to is set by the degree distribution:
+ *
+ *   KNN        every term links to its DEGREE nearest terms
+ *   POWER_LAW  degrees follow a Pareto law (exponent 2.5) with mean about
+ *              DEGREE, so a few hub terms link to hundreds of others
+ *   DENSE      every term links to every other term
+ *
+ * Relations come out grouped by head term, nearest first, as in a
+ * distributional thesaurus, so written files can also be opened with
+ * ThesaurusStore. The source can be read any number of times with the same
+ * result; read() streams the relations without storing them, toGraph() holds
+ * them in memory and getGroundTruth() gives the true positions as a Layout
+ * (e.g. to write with writeCoordinates and compare with a solved layout).
+ *
+ * Nearest terms are found with a uniform grid over the first two
+ * coordinates, searched in rings around each term until no nearer term can
+ * remain, so generation costs about linear time in the relations produced;
+ * write() formats lines by hand into a byte buffer. Ten million terms with
+ * ten neighbours each (a hundred million lines) take a few hundred megabytes
+ * of heap.
+ *
+ *     new SyntheticSimilaritySource(100000).setDegree(20)
+ *         .setClusters(50).setSeed(7).write(new File("synthetic.txt"));
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.Layout;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Seeded generator of clustered similarity graphs with known positions.
+ */
+public class SyntheticSimilaritySource implements SimilaritySource {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final String REFERENCE = "t0";       //first term
+	private static final double PARETO_EXPONENT = 2.5;  //power-law degrees
+	private static final double CLUSTER_SPREAD = 0.25;  //of centre spacing
+	private static final int CELL_OCCUPANCY = 2;        //terms per grid cell
+	private static final int MAX_SIDE = 4096;           //grid cells per side
+	private static final double MIN_SIMILARITY = 0.001; //model ignores 0 and 1
+	private static final double MAX_SIMILARITY = 0.999;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final int terms;
+	private int degree = 10;
+	private Degrees distribution = Degrees.KNN;
+	private int clusters;                               //0: uniform
+	private long seed = 1;
+	//Generated on first use
+	private float[] positions;                          //DIMENSIONS per term
+	private int[] degrees;
+	private double scale;                               //similarity falloff
+	private double origin;                              //grid corner
+	private double cellSize;
+	private int side;                                   //grid cells per side
+	private int[] cellStart;
+	private int[] items;                                //terms by grid cell
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param terms number of terms to generate
+	 */
+	public SyntheticSimilaritySource(int terms) {
+		if (terms < 2) {
+			throw new IllegalArgumentException("Need at least 2 terms, not "
+			+ terms);
+		}
+		this.terms = terms;
+	}
+
+	/************************Accessors******************************/
+	public int getNumberOfTerms() {
+		return terms;
+	}
+
+	public static String getIdentifier(int term) {
+		return "t" + term;
+	}
+
+	/**
+	 * @return the true positions of the terms, "t0" as reference term
+	 */
+	public Layout getGroundTruth() {
+		generate();
+		String[] names = new String[terms];
+		double[] coords = new double[terms * DIMENSIONS];
+		for (int i = 0; i < terms; i++) {
+			names[i] = getIdentifier(i);
+		}
+		for (int c = 0; c < coords.length; c++) {
+			coords[c] = positions[c];
+		}
+		return new Layout(names, names, coords, 0, 0, 0);
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * @param d neighbours per term (mean, for POWER_LAW); ignored by DENSE
+	 */
+	public SyntheticSimilaritySource setDegree(int d) {
+		degree = Math.max(1, Math.min(d, terms - 1));
+		positions = null;
+		return this;
+	}
+
+	public SyntheticSimilaritySource setDistribution(Degrees d) {
+		distribution = d;
+		positions = null;
+		return this;
+	}
+
+	/**
+	 * @param c number of clusters, or 0 to spread terms uniformly
+	 */
+	public SyntheticSimilaritySource setClusters(int c) {
+		clusters = Math.max(0, c);
+		positions = null;
+		return this;
+	}
+
+	public SyntheticSimilaritySource setSeed(long s) {
+		seed = s;
+		positions = null;
+		return this;
+	}
+
+	/**
+	 * Stream every relation to the handler, grouped by head term
+	 */
+	public void read(final SimilarityHandler handler) {
+		generate();
+		forEachTerm(new Relations() {
+			public void term(int head, int[] neighbours, double[] similarity,
+			                 int count) {
+				String name = getIdentifier(head);
+				for (int k = 0; k < count; k++) {
+					handler.relation(name, getIdentifier(neighbours[k]),
+					similarity[k]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return every relation, held in memory
+	 */
+	public SimilarityGraph toGraph() {
+		generate();
+		final SimilarityGraph graph = new SimilarityGraph();
+		for (int i = 0; i < terms; i++) {
+			graph.addTerm(getIdentifier(i));            //same indices
+		}
+		forEachTerm(new Relations() {
+			public void term(int head, int[] neighbours, double[] similarity,
+			                 int count) {
+				for (int k = 0; k < count; k++) {
+					graph.addEdge(head, neighbours[k], similarity[k]);
+				}
+			}
+		});
+		return graph;
+	}
+
+	/**
+	 * Write every relation as a "head neighbour similarity" line
+	 *
+	 * @return number of lines written
+	 */
+	public long write(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+		1 << 16);
+		try {
+			return write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write every relation as a "head neighbour similarity" line. The
+	 * stream is not closed.
+	 *
+	 * @return number of lines written
+	 */
+	public long write(final OutputStream out) throws IOException {
+		generate();
+		final byte[] buffer = new byte[1 << 16];
+		final byte[] head = new byte[24];
+		final long[] lines = new long[1];
+		final IOException[] failure = new IOException[1];
+		forEachTerm(new Relations() {
+			private int used;
+
+			public void term(int term, int[] neighbours, double[] similarity,
+			                 int count) {
+				if (failure[0] != null) {
+					return;
+				}
+				int headLength = putName(head, 0, term);
+				try {
+					for (int k = 0; k < count; k++) {
+						if (used + 64 > buffer.length) {
+							out.write(buffer, 0, used);
+							used = 0;
+						}
+						System.arraycopy(head, 0, buffer, used, headLength);
+						used += headLength;
+						buffer[used++] = '\t';
+						used = putName(buffer, used, neighbours[k]);
+						buffer[used++] = '\t';
+						used = putSimilarity(buffer, used, similarity[k]);
+						buffer[used++] = '\n';
+					}
+					lines[0] += count;
+					if (term == terms - 1) {
+						out.write(buffer, 0, used);     //last term
+						used = 0;
+					}
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		out.flush();
+		return lines[0];
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return "synthetic " + distribution + " graph of " + terms
+		+ " terms, degree " + degree + ", " + clusters + " clusters, seed "
+		+ seed;
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Positions, degrees and the grid, once per setting
+	 */
+	private void generate() {
+		if (positions != null) {
+			return;
+		}
+		Random random = new Random(seed);
+		float[] p = new float[terms * DIMENSIONS];
+		double[] centres = new double[Math.max(clusters, 1) * DIMENSIONS];
+		for (int c = 0; c < centres.length; c++) {
+			centres[c] = random.nextDouble();
+		}
+		double spread = CLUSTER_SPREAD / Math.pow(Math.max(clusters, 1),
+		1.0 / DIMENSIONS);
+		for (int i = 0; i < terms; i++) {
+			int cluster = (clusters > 0) ? random.nextInt(clusters) : 0;
+			for (int k = 0; k < DIMENSIONS; k++) {
+				double x = (clusters > 0) ? centres[cluster * DIMENSIONS + k]
+				+ spread * random.nextGaussian() : random.nextDouble();
+				p[i * DIMENSIONS + k] = (float) x;
+			}
+		}
+		degrees = new int[terms];
+		int maxDegree = (int) Math.min(terms - 1, 100L * degree);
+		double minimum = degree * (PARETO_EXPONENT - 2) / (PARETO_EXPONENT - 1);
+		for (int i = 0; i < terms; i++) {
+			switch (distribution) {
+				case KNN:
+					degrees[i] = degree;
+					break;
+				case POWER_LAW:
+					double d = Math.max(1, minimum) * Math.pow(1
+					- random.nextDouble(), -1 / (PARETO_EXPONENT - 1));
+					degrees[i] = (int) Math.min(maxDegree, Math.round(d));
+					break;
+				case DENSE:
+					degrees[i] = terms - 1;
+					break;
+			}
+		}
+		//Distance of about the DEGREE-th neighbour gives similarity 1/e
+		scale = (distribution == Degrees.DENSE) ? 0.5
+		: Math.pow((double) degree / terms, 1.0 / DIMENSIONS);
+		positions = p;
+		if (distribution != Degrees.DENSE) {
+			buildGrid();
+		}
+	}
+
+	/**
+	 * Counting sort of the terms into square cells over x and y
+	 */
+	private void buildGrid() {
+		float lo = Float.MAX_VALUE;
+		float hi = -Float.MAX_VALUE;
+		for (int i = 0; i < terms; i++) {
+			for (int k = 0; k < Math.min(2, DIMENSIONS); k++) {
+				lo = Math.min(lo, positions[i * DIMENSIONS + k]);
+				hi = Math.max(hi, positions[i * DIMENSIONS + k]);
+			}
+		}
+		side = (int) Math.max(1, Math.min(Math.sqrt((double) terms
+		/ CELL_OCCUPANCY), MAX_SIDE));
+		cellSize = Math.max((hi - lo) / side, 1e-9);
+		origin = lo;
+		cellStart = new int[side * side + 1];
+		int[] cellOf = new int[terms];
+		for (int i = 0; i < terms; i++) {
+			cellOf[i] = row(i) * side + column(i);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < side * side; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		items = new int[terms];
+		int[] fill = Arrays.copyOf(cellStart, side * side);
+		for (int i = 0; i < terms; i++) {
+			items[fill[cellOf[i]]++] = i;
+		}
+	}
+
+	private int column(int i) {
+		return cell(positions[i * DIMENSIONS]);
+	}
+
+	private int row(int i) {
+		return (DIMENSIONS > 1) ? cell(positions[i * DIMENSIONS + 1]) : 0;
+	}
+
+	private int cell(double x) {
+		return Math.max(0, Math.min(side - 1, (int) ((x - origin)
+		/ cellSize)));
+	}
+
+	/**
+	 * Find each term's neighbours, nearest first, and pass them on
+	 */
+	private void forEachTerm(Relations relations) {
+		int[] neighbours = new int[0];
+		double[] similarity = new double[0];
+		long[] sorted = new long[0];
+		for (int i = 0; i < terms; i++) {
+			int count = degrees[i];
+			if (neighbours.length < count) {
+				neighbours = new int[count];
+				similarity = new double[count];
+				sorted = new long[count];
+			}
+			if (distribution == Degrees.DENSE) {
+				for (int j = 0, k = 0; j < terms; j++) {
+					if (j != i) {
+						sorted[k++] = ((long) Float.floatToIntBits((float)
+						distance(i, j)) << 32) | j;
+					}
+				}
+			} else {
+				nearest(i, count, sorted);
+			}
+			Arrays.sort(sorted, 0, count);
+			for (int k = 0; k < count; k++) {
+				neighbours[k] = (int) sorted[k];
+				similarity[k] = similarity(Float.intBitsToFloat(
+				(int) (sorted[k] >>> 32)));
+			}
+			relations.term(i, neighbours, similarity, count);
+		}
+	}
+
+	/**
+	 * The count nearest terms to term i, by searching rings of grid cells
+	 * until the next ring is further away than the furthest kept
+	 *
+	 * @param result receives (distance bits, term) keys, unsorted
+	 */
+	private void nearest(int i, int count, long[] result) {
+		BoundedMinHeap heap = new BoundedMinHeap(count);
+		int column = column(i);
+		int row = row(i);
+		for (int ring = 0; ring < side; ring++) {
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= side) {
+					continue;
+				}
+				boolean edge = (r == row - ring || r == row + ring);
+				int step = (edge || ring == 0) ? 1 : 2 * ring;
+				for (int c = column - ring; c <= column + ring; c += step) {
+					if (c < 0 || c >= side) {
+						continue;
+					}
+					int cell = r * side + c;
+					for (int k = cellStart[cell]; k < cellStart[cell + 1];
+					     k++) {
+						int j = items[k];
+						if (j != i) {
+							heap.offer(j, -distance(i, j));
+						}
+					}
+				}
+			}
+			if (heap.size() == count && ring * cellSize >= -heap.getKey(0)) {
+				break;                                  //nothing nearer left
+			}
+		}
+		for (int k = 0; k < count; k++) {
+			result[k] = ((long) Float.floatToIntBits((float) -heap.getKey(k))
+			<< 32) | heap.getItem(k);
+		}
+	}
+
+	private double distance(int i, int j) {
+		double sum = 0;
+		for (int k = 0; k < DIMENSIONS; k++) {
+			double d = positions[i * DIMENSIONS + k]
+			- positions[j * DIMENSIONS + k];
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	private double similarity(double distance) {
+		double s = Math.round(1000 * Math.exp(-distance / scale)) / 1000.0;
+		return Math.max(MIN_SIMILARITY, Math.min(MAX_SIMILARITY, s));
+	}
+
+	/**
+	 * Write "t" and a term number as ASCII
+	 */
+	private static int putName(byte[] buffer, int at, int term) {
+		buffer[at++] = 't';
+		return putDigits(buffer, at, term, 0);
+	}
+
+	/**
+	 * Write a similarity from MIN_SIMILARITY to MAX_SIMILARITY as "0.ddd"
+	 */
+	private static int putSimilarity(byte[] buffer, int at, double s) {
+		buffer[at++] = '0';
+		buffer[at++] = '.';
+		return putDigits(buffer, at, (int) Math.round(s * 1000), 3);
+	}
+
+	/**
+	 * Write a non-negative number in decimal, zero padded to a width
+	 */
+	private static int putDigits(byte[] buffer, int at, int value,
+	                             int width) {
+		int digits = 1;
+		for (int v = value / 10; v > 0; v /= 10) {
+			digits++;
+		}
+		digits = Math.max(digits, width);
+		for (int d = digits - 1; d >= 0; d--) {
+			buffer[at + d] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return at + digits;
+	}
+
+	/**
+	 * Receives each head term's relations in turn
+	 */
+	private interface Relations {
+
+		void term(int head, int[] neighbours, double[] similarity, int count);
+	}
+
+	/**
+	 * **********************ENUMS********************************
+	 */
+	public enum Degrees {
+
+		KNN, POWER_LAW, DENSE
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * Write a synthetic similarity file, and its ground truth coordinates
+	 * beside it as file.tsv
+	 *
+	 * @param args file terms [degree [KNN|POWER_LAW|DENSE [clusters [seed]]]]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: SyntheticSimilaritySource file terms"
+			+ " [degree [KNN|POWER_LAW|DENSE [clusters [seed]]]]");
+			System.exit(1);
+		}
+		SyntheticSimilaritySource source = new SyntheticSimilaritySource(
+		Integer.parseInt(args[1]));
+		if (args.length > 2) {
+			source.setDegree(Integer.parseInt(args[2]));
+		}
+		if (args.length > 3) {
+			source.setDistribution(Degrees.valueOf(args[3].toUpperCase()));
+		}
+		if (args.length > 4) {
+			source.setClusters(Integer.parseInt(args[4]));
+		}
+		if (args.length > 5) {
+			source.setSeed(Long.parseLong(args[5]));
+		}
+		long start = System.nanoTime();
+		long lines = source.write(new File(args[0]));
+		BufferedWriter truth = new BufferedWriter(new FileWriter(args[0]
+		+ ".tsv"));
+		try {
+			source.getGroundTruth().writeCoordinates(truth);
+		} finally {
+			truth.close();
+		}
+		System.out.println("Wrote " + lines + " lines of " + source + " in "
+		+ (System.nanoTime() - start) / 1e9 + " s");
+	}
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Random-access view of a distributional thesaurus. The thesaurus is a text
+ * file of "head neighbour similarity" lines in which all lines for a head
+ * term are contiguous. A companion index file (<thesaurus>.idx) maps each
+ * head term to the byte range of its block, so that the neighbourhood of any
+ * entry can be read with a handful of positioned reads instead of a scan.
+ *
+ * Index layout (big-endian):
+ *   header : int MAGIC, int VERSION, int number of slots, int number of heads
+ *   slots  : open-addressed hash table, linear probing, SLOT_SIZE bytes each
+ *            int hash, int block length (0 = empty), long block offset
+ * Collisions are resolved by checking the head term at the start of the block.
+ */
+package visualiser.distancemodel.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * Indexed, read-only thesaurus from which ego-networks are extracted.
+ */
+public class ThesaurusStore implements Closeable {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final String INDEX_SUFFIX = ".idx";
+	private static final int MAGIC = 0x54485358;         //"THSX"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final File thesaurus;
+	private final RandomAccessFile data;                //thesaurus text
+	private final FileChannel dataChannel;              //positioned reads
+	private final MappedByteBuffer index;               //hash table
+	private final int slots;                            //power of 2
+	private final int numberOfHeads;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Open a thesaurus, building its index first if none exists or the
+	 * thesaurus is newer than the index.
+	 *
+	 * @param file thesaurus text file, grouped by head term
+	 * @return the opened store
+	 * @throws IOException if the thesaurus or its index cannot be read
+	 */
+	public static ThesaurusStore open(File file) throws IOException {
+		File indexFile = indexFor(file);
+		if (!indexFile.exists()
+		|| indexFile.lastModified() < file.lastModified()) {
+			buildIndex(file, indexFile);
+		}
+		return new ThesaurusStore(file, indexFile);
+	}
+
+	/**
+	 * Constructor. Opens an existing thesaurus and index
+	 *
+	 * @param file      thesaurus text file
+	 * @param indexFile index built by buildIndex
+	 */
+	public ThesaurusStore(File file, File indexFile) throws IOException {
+		thesaurus = file;
+		RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = indexRaf.getChannel();
+			index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+			channel.size());
+		} finally {
+			indexRaf.close();                   //mapping outlives channel
+		}
+		if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+			throw new IOException("Not a thesaurus index: " + indexFile);
+		}
+		slots = index.getInt(8);
+		numberOfHeads = index.getInt(12);
+		data = new RandomAccessFile(file, "r");
+		dataChannel = data.getChannel();
+	}
+
+	/************************Accessors******************************/
+	public int getNumberOfHeads() {
+		return numberOfHeads;
+	}
+
+	public static File indexFor(File file) {
+		return new File(file.getPath() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Read the neighbour list of a head term
+	 *
+	 * @param head the head term
+	 * @return its neighbours in file order, or null if the term is not a head
+	 * @throws IOException if the thesaurus cannot be read
+	 */
+	public Neighbours getNeighbours(String head) throws IOException {
+		int hash = hash(head);
+		int mask = slots - 1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int position = HEADER_SIZE + slot * SLOT_SIZE;
+			int length = index.getInt(position + 4);
+			if (length == 0) {
+				return null;                            //empty slot: absent
+			}
+			if (index.getInt(position) == hash) {
+				Neighbours result = readBlock(index.getLong(position + 8),
+				length);
+				if (result.getHead().equals(head)) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * List every head term in the store (in index order, not file order)
+	 */
+	public ArrayList<String> getHeads() throws IOException {
+		ArrayList<String> heads = new ArrayList<String>(numberOfHeads);
+		for (int slot = 0; slot < slots; slot++) {
+			int position = HEADER_SIZE + slot * SLOT_SIZE;
+			int length = index.getInt(position + 4);
+			if (length != 0) {
+				heads.add(readHead(index.getLong(position + 8), length));
+			}
+		}
+		return heads;
+	}
+
+	/**
+	 * Extract the ego-network of a reference term: the terms reachable in up
+	 * to hops steps, and every similarity the thesaurus holds between them.
+	 *
+	 * @param refTerm       term at the centre of the network
+	 * @param hops          1 = direct neighbours only, 2 = their neighbours too
+	 * @param maxNeighbours neighbours followed from each term (0 = all)
+	 * @return the network, ready to be loaded into a Model
+	 * @throws IOException if refTerm is not in the thesaurus or it can't be read
+	 */
+	public SimilarityGraph getNeighbourhood(String refTerm, int hops,
+	                                        int maxNeighbours) throws IOException {
+		HashMap<String, Neighbours> lists = new HashMap<String, Neighbours>();
+		LinkedHashSet<String> members = new LinkedHashSet<String>();
+		ArrayList<String> frontier = new ArrayList<String>();
+		members.add(refTerm);
+		frontier.add(refTerm);
+		for (int hop = 0; hop < hops; hop++) {          //breadth first
+			ArrayList<String> next = new ArrayList<String>();
+			for (String term : frontier) {
+				Neighbours neighbours = getCached(term, lists);
+				if (neighbours == null) {
+					if (term.equals(refTerm)) {
+						throw new IOException("Unknown term " + refTerm
+						+ " in " + thesaurus);
+					}
+					continue;                           //not itself a head
+				}
+				int count = neighbours.size();
+				if (maxNeighbours > 0 && count > maxNeighbours) {
+					count = maxNeighbours;
+				}
+				for (int i = 0; i < count; i++) {
+					String term2 = neighbours.getTerm(i);
+					if (members.add(term2)) {
+						next.add(term2);
+					}
+				}
+			}
+			frontier = next;
+		}
+		//Mutual similarities between all members
+		SimilarityGraph graph = new SimilarityGraph();
+		for (String term : members) {
+			graph.addTerm(term);
+		}
+		for (String term : members) {
+			Neighbours neighbours = getCached(term, lists);
+			if (neighbours == null) {
+				continue;
+			}
+			int index1 = graph.getIndex(term);
+			for (int i = 0; i < neighbours.size(); i++) {
+				int index2 = graph.getIndex(neighbours.getTerm(i));
+				if (index2 >= 0 && index2 != index1) {
+					graph.addEdge(index1, index2, neighbours.getSimilarity(i));
+				}
+			}
+		}
+		return graph;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Build the index for a thesaurus with a single sequential pass.
+	 *
+	 * @param file      thesaurus text file, grouped by head term
+	 * @param indexFile file to which the index is written
+	 * @throws IOException if a head term's lines are not contiguous
+	 */
+	public static void buildIndex(File file, File indexFile)
+	throws IOException {
+		ArrayList<String> heads = new ArrayList<String>();
+		long[] offsets = new long[1024];
+		int[] lengths;
+		HashSet<String> seen = new HashSet<String>();
+		InputStream in = new BufferedInputStream(new FileInputStream(file),
+		1 << 16);
+		try {
+			byte[] token = new byte[256];
+			long position = 0;                          //start of this line
+			String current = null;
+			int b = in.read();
+			while (b != -1) {
+				//head is the first token of the line
+				int length = 0;
+				long lineStart = position;
+				while (b != -1 && b != ' ' && b != '\t' && b != '\n'
+				&& b != '\r') {
+					if (length == token.length) {
+						token = Arrays.copyOf(token, length * 2);
+					}
+					token[length++] = (byte) b;
+					b = in.read();
+					position++;
+				}
+				while (b != -1 && b != '\n') {          //skip rest of line
+					b = in.read();
+					position++;
+				}
+				if (b == '\n') {
+					b = in.read();
+					position++;
+				}
+				if (length == 0) {
+					continue;                           //blank line
+				}
+				String head = new String(token, 0, length, UTF8);
+				if (!head.equals(current)) {            //start of a new block
+					if (!seen.add(head)) {
+						throw new IOException("Thesaurus not grouped by head:"
+						+ " lines for " + head + " are not contiguous");
+					}
+					if (heads.size() == offsets.length) {
+						offsets = Arrays.copyOf(offsets, offsets.length * 2);
+					}
+					offsets[heads.size()] = lineStart;
+					heads.add(head);
+					current = head;
+				}
+			}
+			lengths = collectLengths(heads, offsets, position);
+		} finally {
+			in.close();
+		}
+		writeIndex(indexFile, heads, offsets, lengths);
+	}
+
+	/**
+	 * Close the thesaurus file. The index mapping is released by the GC.
+	 */
+	public void close() throws IOException {
+		data.close();
+	}
+
+	/*********************Utility Methods***************************/
+	private Neighbours getCached(String term,
+	                             HashMap<String, Neighbours> lists) throws IOException {
+		if (!lists.containsKey(term)) {
+			lists.put(term, getNeighbours(term));
+		}
+		return lists.get(term);
+	}
+
+	/**
+	 * Read and parse the block of lines for one head term
+	 */
+	private Neighbours readBlock(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (dataChannel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Index does not match " + thesaurus);
+			}
+		}
+		return Neighbours.parse(new String(buffer.array(), 0, length, UTF8));
+	}
+
+	/**
+	 * Read just the head term of a block
+	 */
+	private String readHead(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, 1024));
+		dataChannel.read(buffer, offset);
+		String line = new String(buffer.array(), 0, buffer.position(), UTF8);
+		return line.split("\\s+", 2)[0];
+	}
+
+	/**
+	 * Block lengths are the gaps between successive block offsets
+	 */
+	private static int[] collectLengths(ArrayList<String> heads,
+	                                    long[] offsets, long end) throws IOException {
+		int[] lengths = new int[heads.size()];
+		for (int i = 0; i < heads.size(); i++) {
+			long blockEnd = (i + 1 < heads.size()) ? offsets[i + 1] : end;
+			long length = blockEnd - offsets[i];
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Entry too large: " + heads.get(i));
+			}
+			lengths[i] = (int) length;
+		}
+		return lengths;
+	}
+
+	private static void writeIndex(File indexFile, ArrayList<String> heads,
+	                               long[] offsets, int[] lengths) throws IOException {
+		int slots = Integer.highestOneBit(Math.max(heads.size(), 1)) * 4;
+		int mask = slots - 1;
+		int[] slotHash = new int[slots];
+		int[] slotLength = new int[slots];
+		long[] slotOffset = new long[slots];
+		for (int i = 0; i < heads.size(); i++) {
+			int hash = hash(heads.get(i));
+			int slot = hash & mask;
+			while (slotLength[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slotHash[slot] = hash;
+			slotLength[slot] = lengths[i];
+			slotOffset[slot] = offsets[i];
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		new FileOutputStream(indexFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(slots);
+			out.writeInt(heads.size());
+			for (int slot = 0; slot < slots; slot++) {
+				out.writeInt(slotHash[slot]);
+				out.writeInt(slotLength[slot]);
+				out.writeLong(slotOffset[slot]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * String.hashCode is fixed by the language spec so is stable on disk.
+	 * Spread it so that similar terms don't cluster in the table.
+	 */
+	private static int hash(String term) {
+		int h = term.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * ***************STATIC INNER CLASSES************************
+	 */
+	/**
+	 * The neighbour list of one head term
+	 */
+	public static class Neighbours {
+
+		private final String head;
+		private final String[] neighbours;
+		private final double[] similarities;
+
+		private Neighbours(String h, String[] n, double[] s) {
+			head = h;
+			neighbours = n;
+			similarities = s;
+		}
+
+		private static Neighbours parse(String block) {
+			String[] lines = block.split("\n");
+			String head = null;
+			String[] terms = new String[lines.length];
+			double[] sims = new double[lines.length];
+			int count = 0;
+			for (String line : lines) {
+				String[] fields = line.trim().split("\\s+");
+				if (head == null) {
+					head = fields[0];
+				}
+				if (fields.length < 3) {
+					continue;
+				}
+				if (!fields[1].equals(head)) {          //skip self-similarity
+					terms[count] = fields[1];
+					sims[count++] = Double.parseDouble(fields[2]);
+				}
+			}
+			return new Neighbours(head, Arrays.copyOf(terms, count),
+			Arrays.copyOf(sims, count));
+		}
+
+		public String getHead() {
+			return head;
+		}
+
+		public int size() {
+			return neighbours.length;
+		}
+
+		public String getTerm(int i) {
+			return neighbours[i];
+		}
+
+		public double getSimilarity(int i) {
+			return similarities[i];
+		}
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return "ThesaurusStore: " + thesaurus + " (" + numberOfHeads
+		+ " heads)";
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * args[0] = thesaurus file, args[1] = term to look up
+	 */
+	public static void main(String[] args) throws IOException {
+		File file = new File(args.length > 0 ? args[0] : "sampledata/tim_lewis");
+		String term = args.length > 1 ? args[1] : "tim_lewis";
+		ThesaurusStore store = open(file);
+		try {
+			System.out.println(store);
+			long start = System.nanoTime();
+			SimilarityGraph graph = store.getNeighbourhood(term, 1, 0);
+			System.out.println(graph + " in "
+			+ (System.nanoTime() - start) / 1e6 + " ms");
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Plays back a trace written by TraceWriter. Opening a trace reads its header
+ * and then walks the frame headers only, skipping the payloads, to index
+ * where each frame starts, its iteration and whether it is a keyframe; a
+ * trace cut short ends at its last complete frame.
+ *
+ * read(frame) decodes from the nearest keyframe at or before the frame
+ * asked for, or carries on from the frame decoded last if that is nearer, so
+ * stepping forwards costs one delta per frame and a seek at most
+ * KEYFRAME_INTERVAL frames. A reader keeps decoding state, so it belongs to
+ * one thread.
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.Layout;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+import static visualiser.distancemodel.io.TraceWriter.*;
+
+/**
+ * Random access to the frames of a layout trace.
+ */
+public class TraceReader implements Closeable {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final RandomAccessFile file;
+	private final String[] identifiers;
+	private final String[] labels;
+	private final float[] importance;                   //or null
+	private final int refTermIndex;
+	private final double quantum;
+	//Frame index
+	private final int frames;
+	private final long[] offsets;                       //frame header position
+	private final int[] iterations;
+	private final double[] errors;
+	private final boolean[] keyframes;
+	//Decoding state
+	private final long[] coords;                        //quantised, last frame
+	private int decoded = -1;                           //frame in coords
+	private byte[] payload = new byte[0];
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Open a trace and index its frames
+	 *
+	 * @throws IOException if it can't be read or isn't a trace
+	 */
+	public TraceReader(File trace) throws IOException {
+		file = new RandomAccessFile(trace, "r");
+		try {
+			if (file.length() < 12 || file.readInt() != MAGIC) {
+				throw new IOException(trace + " is not a layout trace");
+			}
+			int version = file.readInt();
+			if (version != VERSION) {
+				throw new IOException(trace + " is trace version " + version
+				+ ", not " + VERSION);
+			}
+			byte[] headerBytes = new byte[file.readInt()];
+			file.readFully(headerBytes);
+			DataInputStream header = new DataInputStream(
+			new ByteArrayInputStream(headerBytes));
+			int dimensions = header.readInt();
+			if (dimensions != DIMENSIONS) {
+				throw new IOException(trace + " has " + dimensions
+				+ " dimensions, not " + DIMENSIONS);
+			}
+			int n = header.readInt();
+			refTermIndex = header.readInt();
+			quantum = header.readDouble();
+			identifiers = new String[n];
+			labels = new String[n];
+			for (int i = 0; i < n; i++) {
+				identifiers[i] = header.readUTF();
+				labels[i] = header.readUTF();
+			}
+			if (header.readBoolean()) {
+				importance = new float[n];
+				for (int i = 0; i < n; i++) {
+					importance[i] = header.readFloat();
+				}
+			} else {
+				importance = null;
+			}
+			coords = new long[n * DIMENSIONS];
+
+			//Index the frames
+			long[] at = new long[256];
+			int[] iteration = new int[256];
+			double[] error = new double[256];
+			boolean[] key = new boolean[256];
+			int count = 0;
+			long position = file.getFilePointer();
+			long end = file.length();
+			ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER);
+			while (position + FRAME_HEADER <= end) {
+				file.seek(position);
+				file.readFully(frameHeader.array());
+				int length = frameHeader.getInt(13);
+				if (length < 0 || position + FRAME_HEADER + length > end) {
+					break;                              //cut short
+				}
+				if (count == at.length) {
+					at = Arrays.copyOf(at, count * 2);
+					iteration = Arrays.copyOf(iteration, count * 2);
+					error = Arrays.copyOf(error, count * 2);
+					key = Arrays.copyOf(key, count * 2);
+				}
+				at[count] = position;
+				key[count] = frameHeader.get(0) == KEYFRAME;
+				iteration[count] = frameHeader.getInt(1);
+				error[count] = frameHeader.getDouble(5);
+				count++;
+				position += FRAME_HEADER + length;
+			}
+			frames = count;
+			offsets = at;
+			iterations = iteration;
+			errors = error;
+			keyframes = key;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/************************Accessors******************************/
+	public int getFrameCount() {
+		return frames;
+	}
+
+	public int size() {
+		return identifiers.length;
+	}
+
+	/**
+	 * @return model iteration at which a frame was recorded
+	 */
+	public int getIteration(int frame) {
+		return iterations[frame];
+	}
+
+	/**
+	 * @return the last frame recorded at or before an iteration, or the first
+	 * frame if the iteration is before the trace starts
+	 */
+	public int findFrame(int iteration) {
+		int found = Arrays.binarySearch(iterations, 0, frames, iteration);
+		return (found >= 0) ? found : Math.max(0, -found - 2);
+	}
+
+	/**
+	 * Decode the positions of one frame
+	 *
+	 * @param frame frame number, from 0 to getFrameCount() - 1
+	 * @return the frame as a layout
+	 */
+	public Layout read(int frame) throws IOException {
+		if (frame < 0 || frame >= frames) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " of "
+			+ frames);
+		}
+		int start = frame;
+		while (!keyframes[start]) {
+			start--;
+		}
+		if (decoded >= start && decoded <= frame) {
+			start = decoded + 1;                        //carry on from there
+		}
+		for (int f = start; f <= frame; f++) {
+			decode(f);
+		}
+		double[] positions = new double[coords.length];
+		for (int c = 0; c < coords.length; c++) {
+			positions[c] = coords[c] * quantum;
+		}
+		return new Layout(identifiers, labels, positions, importance,
+		refTermIndex, iterations[frame], errors[frame]);
+	}
+
+	/************************Mutators*******************************/
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Apply one frame to the decoding state
+	 */
+	private void decode(int frame) throws IOException {
+		int length = (int) (((frame + 1 < frames) ? offsets[frame + 1]
+		: file.length()) - offsets[frame] - FRAME_HEADER);
+		if (payload.length < length) {
+			payload = new byte[length];
+		}
+		file.seek(offsets[frame] + FRAME_HEADER);
+		file.readFully(payload, 0, length);
+		boolean key = keyframes[frame];
+		int at = 0;
+		for (int c = 0; c < coords.length; c++) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (at == length) {
+					decoded = -1;
+					throw new IOException("Trace frame " + frame
+					+ " is corrupt");
+				}
+				b = payload[at++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			value = (value >>> 1) ^ -(value & 1);      //zigzag
+			coords[c] = key ? value : coords[c] + value;
+		}
+		decoded = frame;
+	}
+}
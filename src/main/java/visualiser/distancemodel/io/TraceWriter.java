@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Records the animation of a layout to a compact binary trace file, to be
+ * played back later by TraceReader (e.g. in the TraceViewer) without
+ * recomputing any forces.
+ *
+ * The file starts with a header: MAGIC, VERSION, the length of the rest of
+ * the header, then DIMENSIONS, the number of terms, the reference term, the
+ * quantum, each term's identifier and label, and the terms' importance if the
+ * layout has one. Frames follow, each with a fixed FRAME_HEADER bytes (type,
+ * iteration, error, payload length) and a payload of one varint per
+ * coordinate. Positions are quantised to multiples of the quantum, chosen
+ * from the extent of the first frame so that about QUANTUM_STEPS steps span
+ * it. A keyframe holds every quantised coordinate; the frames between hold the
+ * change from the frame before, which is small once the layout settles and so
+ * takes a byte or two instead of the eight of a double. Every
+ * KEYFRAME_INTERVAL-th frame is a keyframe, so a reader can seek anywhere by
+ * decoding at most that many frames. Deltas are taken against the quantised
+ * previous frame, so rounding errors never accumulate.
+ *
+ * The simulation hands over Layout snapshots with record(), which only puts
+ * them on a bounded queue: encoding and writing are done by a background
+ * thread. If the writer falls behind, the queue fills and record() drops the
+ * frame rather than waiting, so the simulation never stalls; hasRoom() lets
+ * the caller skip building a snapshot that would be dropped. A trace cut short
+ * (e.g. by a crash) is still readable up to its last complete frame.
+ */
+package visualiser.distancemodel.io;
+
+import visualiser.distancemodel.Layout;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Background writer of delta-encoded layout traces.
+ */
+public class TraceWriter implements Closeable {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int MAGIC = 0x56545243;         //"VTRC"
+	public static final int VERSION = 1;
+	public static final int FRAME_HEADER = 17;          //type,iter,error,length
+	public static final byte KEYFRAME = 1;
+	public static final byte DELTA = 0;
+	public static final int KEYFRAME_INTERVAL = 100;    //frames
+	private static final double QUANTUM_STEPS = 1 << 18;//across first frame
+	private static final int QUEUE_SIZE = 64;           //frames in flight
+	private static final Layout END = new Layout(new String[0], new String[0],
+	new double[0], 0, 0, 0);                            //closes the queue
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final BlockingQueue<Layout> queue =
+	new ArrayBlockingQueue<Layout>(QUEUE_SIZE);
+	private final Thread thread;
+	private final DataOutputStream out;
+	private volatile IOException failure;               //writer thread error
+	private volatile long dropped;                      //frames not recorded
+	private volatile long written;
+	//Writer thread only
+	private double quantum;                             //0 until first frame
+	private long[] previous;                            //quantised coordinates
+	private byte[] payload = new byte[4096];
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Create (or overwrite) a trace file and start its writer thread
+	 */
+	public TraceWriter(File file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(
+		new FileOutputStream(file), 1 << 16));
+		thread = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "trace-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return false if record() would drop a frame now, so a snapshot need
+	 * not be built
+	 */
+	public boolean hasRoom() {
+		return queue.remainingCapacity() > 0 && failure == null;
+	}
+
+	/**
+	 * @return number of frames dropped because the writer was behind
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return number of frames written so far
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Queue a frame for writing. Never blocks.
+	 *
+	 * @param frame snapshot of the positions; every frame of a trace must
+	 *              have the same terms, in the same order
+	 * @return false if the frame was dropped
+	 */
+	public boolean record(Layout frame) {
+		if (failure == null && queue.offer(frame)) {
+			return true;
+		}
+		dropped++;                                      //simulation thread only
+		return false;
+	}
+
+	/**
+	 * Write out the frames still queued and close the file
+	 *
+	 * @throws IOException if any write failed
+	 */
+	public void close() throws IOException {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(END);
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Writer thread: encode frames until END
+	 */
+	private void write() {
+		try {
+			try {
+				for (Layout frame = queue.take(); frame != END;
+				     frame = queue.take()) {
+					writeFrame(frame);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			fail(e);
+		} catch (InterruptedException e) {
+			fail(new IOException("Trace writer interrupted", e));
+		}
+	}
+
+	private void writeFrame(Layout frame) throws IOException {
+		if (previous == null) {
+			writeHeader(frame);
+		} else if (frame.size() * DIMENSIONS != previous.length) {
+			throw new IOException("Trace frame at iteration "
+			+ frame.getIteration() + " has " + frame.size()
+			+ " terms, not " + previous.length / DIMENSIONS);
+		}
+		boolean key = (written % KEYFRAME_INTERVAL == 0);
+		int length = 0;
+		for (int i = 0; i < frame.size(); i++) {
+			for (int k = 0; k < DIMENSIONS; k++) {
+				int c = i * DIMENSIONS + k;
+				long q = Math.round(frame.getCoord(i, k) / quantum);
+				long value = key ? q : q - previous[c];
+				previous[c] = q;
+				if (length + 10 > payload.length) {
+					payload = Arrays.copyOf(payload, payload.length * 2);
+				}
+				length = putVarLong(payload, length,
+				(value << 1) ^ (value >> 63));      //zigzag
+			}
+		}
+		out.writeByte(key ? KEYFRAME : DELTA);
+		out.writeInt(frame.getIteration());
+		out.writeDouble(frame.getError());
+		out.writeInt(length);
+		out.write(payload, 0, length);
+		written++;
+	}
+
+	/**
+	 * Stop accepting frames after an error, and free the queue so close()
+	 * can end it
+	 */
+	private void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		queue.clear();
+	}
+
+	/**
+	 * The header, and the quantum from the extent of the first frame
+	 */
+	private void writeHeader(Layout frame) throws IOException {
+		double lo = Double.MAX_VALUE;
+		double hi = -Double.MAX_VALUE;
+		for (int i = 0; i < frame.size(); i++) {
+			for (int k = 0; k < DIMENSIONS; k++) {
+				lo = Math.min(lo, frame.getCoord(i, k));
+				hi = Math.max(hi, frame.getCoord(i, k));
+			}
+		}
+		double extent = (hi > lo) ? hi - lo : 1;
+		quantum = extent / QUANTUM_STEPS;
+		previous = new long[frame.size() * DIMENSIONS];
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(DIMENSIONS);
+		header.writeInt(frame.size());
+		header.writeInt(frame.getRefTermIndex());
+		header.writeDouble(quantum);
+		for (int i = 0; i < frame.size(); i++) {
+			header.writeUTF(frame.getIdentifier(i));
+			header.writeUTF(frame.getLabel(i));
+		}
+		boolean hasImportance = frame.hasImportance();
+		header.writeBoolean(hasImportance);
+		if (hasImportance) {
+			for (int i = 0; i < frame.size(); i++) {
+				header.writeFloat(frame.getImportance(i));
+			}
+		}
+		header.flush();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static int putVarLong(byte[] buffer, int at, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[at++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[at++] = (byte) value;
+		return at;
+	}
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Builds a similarity graph from feature vectors rather than reading one.
+ * Input lines are a term followed by either a dense vector
+ *     term 0.1 0.0 0.7 ...
+ * or a sparse one of index:value pairs
+ *     term 3:0.1 17:0.7 ...
+ * Similarity is cosine. Rather than comparing all n^2 pairs, candidates come
+ * from a random-projection forest: each tree recursively splits the points
+ * by which of two randomly chosen points they are angularly closer to, and
+ * only points sharing a leaf in some tree are compared. Two rounds of
+ * neighbour-of-neighbour refinement then recover most of the neighbours
+ * the forest missed. Trees are built, and neighbours found, in parallel.
+ *
+ * The graph holds each term's k nearest neighbours. It can be loaded into a
+ * Model directly (for small n) or written in thesaurus format for a
+ * ThesaurusStore, from which per-entry neighbourhoods are then laid out.
+ */
+package visualiser.distancemodel.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Similarity source computing approximate k-nearest-neighbour cosine
+ * similarities from a file of term vectors.
+ */
+public class VectorSimilaritySource implements SimilaritySource {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int DEFAULT_TREES = 8;          //trees in forest
+	public static final int DEFAULT_LEAF_SIZE = 64;     //max points per leaf
+	public static final long DEFAULT_SEED = 20110822L;
+	private static final int REFINEMENT_ROUNDS = 2;     //neighbour-of-neighbour
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final File file;
+	private final int k;                                //neighbours per term
+	private final int trees;
+	private final int leafSize;
+	private final long seed;
+	private String[] identifiers;
+	private int[][] indices;                            //sparse: null if dense
+	private float[][] values;                           //unit length vectors
+	private int[][] neighbours;                         //k nearest per term
+	private float[][] similarities;                     //and their cosines
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param f file of term vectors
+	 * @param k number of neighbours kept per term
+	 */
+	public VectorSimilaritySource(File f, int k) {
+		this(f, k, DEFAULT_TREES, DEFAULT_LEAF_SIZE, DEFAULT_SEED);
+	}
+
+	/**
+	 * @param f        file of term vectors
+	 * @param k        number of neighbours kept per term
+	 * @param trees    random-projection trees (more = better recall, slower)
+	 * @param leafSize largest leaf (more = better recall, slower)
+	 * @param seed     random seed, so graphs are reproducible
+	 */
+	public VectorSimilaritySource(File f, int k, int trees, int leafSize,
+	                              long seed) {
+		file = f;
+		this.k = k;
+		this.trees = trees;
+		this.leafSize = Math.max(leafSize, 2);
+		this.seed = seed;
+	}
+
+	/************************Accessors******************************/
+	public int getNumberOfTerms() {
+		return identifiers == null ? 0 : identifiers.length;
+	}
+
+	/**
+	 * Pass each neighbour pair once. The graph is built on first use.
+	 */
+	public void read(SimilarityHandler handler) throws IOException {
+		build();
+		for (int i = 0; i < identifiers.length; i++) {
+			for (int n = 0; n < neighbours[i].length; n++) {
+				int j = neighbours[i][n];
+				if (i < j || !isNeighbour(j, i)) {          //each pair once
+					handler.relation(identifiers[i], identifiers[j],
+					similarities[i][n]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the graph as a thesaurus ("head neighbour similarity", grouped
+	 * by head, most similar first) for use with ThesaurusStore.
+	 */
+	public void writeThesaurus(File out) throws IOException {
+		build();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+		new FileOutputStream(out), UTF8), 1 << 16);
+		try {
+			for (int i = 0; i < identifiers.length; i++) {
+				for (int n = 0; n < neighbours[i].length; n++) {
+					writer.write(identifiers[i]);
+					writer.write('\t');
+					writer.write(identifiers[neighbours[i][n]]);
+					writer.write('\t');
+					writer.write(Float.toString(similarities[i][n]));
+					writer.write('\n');
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Read the vectors and find every term's approximate neighbours
+	 */
+	public void build() throws IOException {
+		if (neighbours != null) {
+			return;
+		}
+		readVectors();
+		final int n = identifiers.length;
+		final int[][] leafOf = new int[trees][];
+		final int[][] leafStart = new int[trees][];
+		final int[][] order = new int[trees][];
+		IntStream.range(0, trees).parallel().forEach(t -> {
+			order[t] = new int[n];
+			leafOf[t] = new int[n];
+			leafStart[t] = buildTree(new Random(seed + t), order[t], leafOf[t]);
+		});
+		final BoundedMinHeap[] heaps = new BoundedMinHeap[n];
+		final ThreadLocal<int[]> seen = ThreadLocal.withInitial(() -> {
+			int[] stamps = new int[n];
+			Arrays.fill(stamps, Integer.MIN_VALUE);
+			return stamps;
+		});
+		IntStream.range(0, n).parallel().forEach(i -> {
+			int[] stamps = seen.get();
+			BoundedMinHeap heap = new BoundedMinHeap(k);
+			stamps[i] = i;
+			for (int t = 0; t < trees; t++) {
+				int leaf = leafOf[t][i];
+				for (int p = leafStart[t][leaf]; p < leafStart[t][leaf + 1]; p++) {
+					offer(heap, stamps, i, i, order[t][p]);
+				}
+			}
+			heaps[i] = heap;
+		});
+		//Refinement: a neighbour's neighbours are likely to be neighbours
+		for (int round = 0; round < REFINEMENT_ROUNDS; round++) {
+			final int[][] previous = toNeighbourLists(heaps);
+			final int base = -1 - round * n;            //fresh stamps per round
+			IntStream.range(0, n).parallel().forEach(i -> {
+				int[] stamps = seen.get();
+				int stamp = base - i;
+				stamps[i] = stamp;
+				BoundedMinHeap heap = heaps[i];
+				for (int a = 0; a < heap.size(); a++) {
+					stamps[heap.getItem(a)] = stamp;
+				}
+				for (int j : previous[i]) {
+					for (int m : previous[j]) {
+						offer(heap, stamps, stamp, i, m);
+					}
+				}
+			});
+		}
+		neighbours = toNeighbourLists(heaps);
+		similarities = new float[n][];
+		for (int i = 0; i < n; i++) {
+			similarities[i] = new float[neighbours[i].length];
+			for (int a = 0; a < neighbours[i].length; a++) {
+				similarities[i][a] = (float) dot(i, neighbours[i][a]);
+			}
+		}
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Score candidate j for point i unless already seen with this stamp.
+	 * Stamps are unique per (point, round): i first, then negative values.
+	 */
+	private void offer(BoundedMinHeap heap, int[] stamps, int stamp, int i,
+	                   int j) {
+		if (stamps[j] != stamp) {
+			stamps[j] = stamp;
+			heap.offer(j, dot(i, j));
+		}
+	}
+
+	/**
+	 * Neighbour lists, most similar first
+	 */
+	private int[][] toNeighbourLists(BoundedMinHeap[] heaps) {
+		int[][] lists = new int[heaps.length][];
+		for (int i = 0; i < heaps.length; i++) {
+			BoundedMinHeap heap = heaps[i];
+			Integer[] byKey = new Integer[heap.size()];
+			for (int a = 0; a < byKey.length; a++) {
+				byKey[a] = a;
+			}
+			Arrays.sort(byKey, (a, b) -> Double.compare(heap.getKey(b),
+			heap.getKey(a)));
+			lists[i] = new int[byKey.length];
+			for (int a = 0; a < byKey.length; a++) {
+				lists[i][a] = heap.getItem(byKey[a]);
+			}
+		}
+		return lists;
+	}
+
+	private boolean isNeighbour(int i, int j) {
+		for (int m : neighbours[i]) {
+			if (m == j) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build one tree over all points.
+	 *
+	 * @param order  filled with the points, grouped by leaf
+	 * @param leafOf filled with the leaf of each point
+	 * @return start of each leaf in order, plus a final end marker
+	 */
+	private int[] buildTree(Random random, int[] order, int[] leafOf) {
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		double[] margin = new double[order.length];
+		int[] starts = new int[16];
+		int leaves = 0;
+		int[] stack = new int[64];                      //pending [lo,hi) ranges
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = order.length;
+		while (top > 0) {
+			int hi = stack[--top];
+			int lo = stack[--top];
+			if (hi - lo <= leafSize) {
+				if (leaves + 1 >= starts.length) {
+					starts = Arrays.copyOf(starts, starts.length * 2);
+				}
+				for (int p = lo; p < hi; p++) {
+					leafOf[order[p]] = leaves;
+				}
+				starts[leaves++] = lo;
+				continue;
+			}
+			int mid = split(random, order, margin, lo, hi);
+			if (top + 4 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[top++] = mid;                         //push right then left
+			stack[top++] = hi;                          //so leaves are found
+			stack[top++] = lo;                          //in ascending order
+			stack[top++] = mid;
+		}
+		int[] result = Arrays.copyOf(starts, leaves + 1);
+		result[leaves] = order.length;
+		return result;
+	}
+
+	/**
+	 * Partition order[lo,hi) by the hyperplane equidistant (in angle) from
+	 * two random points of the range.
+	 *
+	 * @return start of the second part
+	 */
+	private int split(Random random, int[] order, double[] margin,
+	                  int lo, int hi) {
+		int a = order[lo + random.nextInt(hi - lo)];
+		int b = order[lo + random.nextInt(hi - lo)];
+		for (int p = lo; p < hi; p++) {
+			margin[p] = dot(order[p], a) - dot(order[p], b);
+		}
+		int left = lo;
+		int right = hi - 1;
+		while (left <= right) {
+			boolean goLeft = margin[left] > 0
+			|| (margin[left] == 0 && random.nextBoolean());
+			if (goLeft) {
+				left++;
+			} else {
+				swap(order, left, right);
+				double m = margin[left];
+				margin[left] = margin[right];
+				margin[right--] = m;
+			}
+		}
+		if (left == lo || left == hi) {                 //degenerate: halve
+			return (lo + hi) >>> 1;
+		}
+		return left;
+	}
+
+	private static void swap(int[] array, int a, int b) {
+		int temp = array[a];
+		array[a] = array[b];
+		array[b] = temp;
+	}
+
+	/**
+	 * Cosine of two unit vectors
+	 */
+	private double dot(int i, int j) {
+		float[] x = values[i];
+		float[] y = values[j];
+		double sum = 0;
+		if (indices == null) {
+			for (int d = 0; d < x.length; d++) {
+				sum += x[d] * y[d];
+			}
+			return sum;
+		}
+		int[] xi = indices[i];
+		int[] yi = indices[j];
+		int p = 0;
+		int q = 0;
+		while (p < xi.length && q < yi.length) {        //merge sorted indices
+			if (xi[p] == yi[q]) {
+				sum += x[p++] * y[q++];
+			} else if (xi[p] < yi[q]) {
+				p++;
+			} else {
+				q++;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Read the vector file, normalising each vector to unit length
+	 */
+	private void readVectors() throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<int[]> sparseIndices = new ArrayList<int[]>();
+		ArrayList<float[]> vectors = new ArrayList<float[]>();
+		boolean sparse = false;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+		new FileInputStream(file), UTF8), 1 << 16);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if (fields.length < 2) {
+					continue;
+				}
+				sparse |= fields[1].indexOf(':') >= 0;
+				int[] index = new int[fields.length - 1];
+				float[] value = new float[fields.length - 1];
+				for (int f = 1; f < fields.length; f++) {
+					int colon = fields[f].indexOf(':');
+					if (colon >= 0) {
+						index[f - 1] = Integer.parseInt(fields[f].substring(0,
+						colon));
+						value[f - 1] = Float.parseFloat(fields[f].substring(
+						colon + 1));
+					} else {
+						index[f - 1] = f - 1;
+						value[f - 1] = Float.parseFloat(fields[f]);
+					}
+				}
+				names.add(fields[0]);
+				sparseIndices.add(index);
+				vectors.add(value);
+			}
+		} finally {
+			reader.close();
+		}
+		identifiers = names.toArray(new String[names.size()]);
+		values = vectors.toArray(new float[vectors.size()][]);
+		indices = sparse ? sortSparse(sparseIndices) : null;
+		if (!sparse) {
+			checkDense();
+		}
+		for (float[] vector : values) {
+			normalise(vector);
+		}
+	}
+
+	/**
+	 * Dense vectors must all have the same length
+	 */
+	private void checkDense() throws IOException {
+		for (int i = 1; i < values.length; i++) {
+			if (values[i].length != values[0].length) {
+				throw new IOException("Vector for " + identifiers[i]
+				+ " has " + values[i].length + " dimensions, expected "
+				+ values[0].length);
+			}
+		}
+	}
+
+	/**
+	 * Sort each sparse vector's entries by index (needed for the merge)
+	 */
+	private int[][] sortSparse(ArrayList<int[]> sparseIndices) {
+		int[][] result = new int[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			final int[] index = sparseIndices.get(i);
+			float[] value = values[i];
+			Integer[] byIndex = new Integer[index.length];
+			for (int a = 0; a < byIndex.length; a++) {
+				byIndex[a] = a;
+			}
+			Arrays.sort(byIndex, (a, b) -> Integer.compare(index[a], index[b]));
+			int[] sortedIndex = new int[index.length];
+			float[] sortedValue = new float[index.length];
+			for (int a = 0; a < byIndex.length; a++) {
+				sortedIndex[a] = index[byIndex[a]];
+				sortedValue[a] = value[byIndex[a]];
+			}
+			result[i] = sortedIndex;
+			values[i] = sortedValue;
+		}
+		return result;
+	}
+
+	private static void normalise(float[] vector) {
+		double norm = 0;
+		for (float v : vector) {
+			norm += v * v;
+		}
+		if (norm > 0) {
+			float scale = (float) (1 / Math.sqrt(norm));
+			for (int d = 0; d < vector.length; d++) {
+				vector[d] *= scale;
+			}
+		}
+	}
+
+	/**
+	 * ****************Standard Overrides*************************
+	 */
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * args[0] = vector file, args[1] = k, args[2] = thesaurus file to write
+	 */
+	public static void main(String[] args) throws IOException {
+		VectorSimilaritySource source = new VectorSimilaritySource(
+		new File(args[0]), Integer.parseInt(args[1]));
+		long start = System.nanoTime();
+		source.build();
+		System.out.println(source.getNumberOfTerms() + " terms in "
+		+ (System.nanoTime() - start) / 1e9 + " s");
+		if (args.length > 2) {
+			source.writeThesaurus(new File(args[2]));
+		}
+	}
+}
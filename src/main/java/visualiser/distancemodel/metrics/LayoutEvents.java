@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Java Flight Recorder events for the phases of a layout, so that a
+ * recording (java -XX:StartFlightRecording ..., or jcmd <pid> JFR.start)
+ * shows where a slow layout spent its time alongside the GC, CPU and
+ * allocation events of the same interval. They appear under "Visualiser" in
+ * JDK Mission Control.
+ *
+ * An event is created, begun, and committed only if shouldCommit() says
+ * recording is on and it is over any threshold, so the fields are filled in
+ * only then. With no recording running, the JIT reduces all of this to a
+ * check of a flag; the events can stay compiled in.
+ *
+ *   visualiser.Layout      ControlFlowAbs.run, load to final layout
+ *   visualiser.Load        Model.readData
+ *   visualiser.Start       one exploratory run of findBestStartingPositions
+ *   visualiser.Iterations  METRICS_SAMPLE iterations of getSolution
+ *   visualiser.Paint       one PlotDistances.paintComponent
+ */
+package visualiser.distancemodel.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event types of the layout phases.
+ */
+public final class LayoutEvents {
+
+	/**
+	 * ********Constructors and Static Factory Methods************
+	 */
+	private LayoutEvents() {
+		throw new AssertionError();                     //prevents construction
+	}
+
+	/**
+	 * **************************EVENTS*****************************
+	 */
+	@Name("visualiser.Layout")
+	@Label("Layout")
+	@Category("Visualiser")
+	@Description("A whole layout: loading, exploratory starts and final run")
+	public static final class Layout extends Event {
+
+		@Label("Control Flow")
+		public String controlFlow;
+
+		@Label("Reference Term")
+		public String referenceTerm;
+
+		@Label("Terms")
+		public int terms;
+
+		@Label("Starts")
+		@Description("Exploratory runs; 0 if the model was warm started")
+		public int starts;
+
+		@Label("Error")
+		@Description("Total distortion of the final layout")
+		public double error;
+	}
+
+	@Name("visualiser.Load")
+	@Label("Load")
+	@Category("Visualiser")
+	@Description("Reading a similarity source into a model")
+	public static final class Load extends Event {
+
+		@Label("Source")
+		public String source;
+
+		@Label("Bytes")
+		@Description("Text read from a file or stream, after decompression; "
+		+ "0 for other sources")
+		@DataAmount
+		public long bytes;
+
+		@Label("Lines")
+		@Description("Lines of a file or stream, or relations of another "
+		+ "source, read before any sparsification")
+		public long lines;
+
+		@Label("Terms")
+		public int terms;
+	}
+
+	@Name("visualiser.Start")
+	@Label("Exploratory Start")
+	@Category("Visualiser")
+	@Description("One exploratory run from random positions")
+	public static final class Start extends Event {
+
+		@Label("Start")
+		public int start;
+
+		@Label("Iterations")
+		public int iterations;
+
+		@Label("Error")
+		@Description("Total distortion at the end of the run")
+		public double error;
+
+		@Label("Best")
+		@Description("Whether this is the best start so far")
+		public boolean best;
+	}
+
+	@Name("visualiser.Iterations")
+	@Label("Iterations")
+	@Category("Visualiser")
+	@Description("A sample of iterations of the final run")
+	public static final class Iterations extends Event {
+
+		@Label("Iteration")
+		@Description("Last iteration of the sample")
+		public int iteration;
+
+		@Label("Iterations")
+		@Description("Iterations in the sample")
+		public int iterations;
+
+		@Label("Error")
+		@Description("Total distortion at the last iteration")
+		public double error;
+
+		@Label("Kinetic Energy")
+		public double kineticEnergy;
+
+		@Label("Terms")
+		public int terms;
+
+		@Label("Active Terms")
+		@Description("Terms still moving faster than ACTIVE_SPEED")
+		public int activeTerms;
+	}
+
+	@Name("visualiser.Paint")
+	@Label("Paint")
+	@Category("Visualiser")
+	@Description("Drawing one frame of the plot")
+	public static final class Paint extends Event {
+
+		@Label("Terms")
+		@Description("Terms in the frame")
+		public int terms;
+
+		@Label("Iteration")
+		@Description("Iteration the frame was taken at")
+		public int iteration;
+	}
+}
@@ -0,0 +1,653 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Counters, gauges and timers describing a running layout, for watching a
+ * headless process from outside. Instruments are registered once, under a
+ * fixed name, by the classes that update them (Model, ControlFlowAbs) and
+ * updated from the simulation thread: counters and timers are LongAdders, a
+ * gauge is a volatile, so nothing on the hot path takes a lock. The only
+ * synchronised update is a Series, which is fed every METRICS_SAMPLE
+ * iterations rather than every iteration.
+ *
+ * Counters and timers add up over the whole process. Gauges and series that
+ * describe one layout (its error, its speed) would be meaningless shared by
+ * layouts running side by side, so they may carry a layout label, e.g.
+ * error{layout="tim_lewis-3"}; each layout registers its own and removes
+ * them when it is done.
+ *
+ * A snapshot of everything registered can be written as JSON or in the
+ * Prometheus text exposition format. With METRICS_DIRECTORY set, both are
+ * written every METRICS_INTERVAL seconds (and at exit) to metrics.json and
+ * metrics.prom there, each replaced atomically, so a scraper or the
+ * node_exporter textfile collector never sees a partial file.
+ */
+package visualiser.distancemodel.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Registry of the process's instruments, with JSON and Prometheus export.
+ */
+public final class Metrics {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final String JSON_FILE = "metrics.json";
+	public static final String PROMETHEUS_FILE = "metrics.prom";
+	private static final String PREFIX = "visualiser_";   //Prometheus names
+	private static final int SERIES_CAPACITY = 512;     //points per series
+	private static final Map<String, Metric> REGISTRY =
+	new LinkedHashMap<String, Metric>();                //guarded by itself
+	private static final ThreadMXBean THREADS =
+	ManagementFactory.getThreadMXBean();
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private static Thread exporter;                     //or null
+
+	/**
+	 * ********Constructors and Static Factory Methods************
+	 */
+	private Metrics() {
+		throw new AssertionError();                     //prevents construction
+	}
+
+	/**
+	 * @param name lower case, underscore separated, without the _total
+	 *             suffix Prometheus gives counters
+	 * @param help one line description
+	 * @return the counter registered under name, created if new
+	 */
+	public static Counter counter(String name, String help) {
+		return register(new Counter(name, help));
+	}
+
+	public static Gauge gauge(String name, String help) {
+		return register(new Gauge(name, help, null));
+	}
+
+	/**
+	 * @param layout label value telling this gauge from those of other
+	 *               layouts; remove() it when the layout is done
+	 */
+	public static Gauge gauge(String name, String help, String layout) {
+		return register(new Gauge(name, help, layout));
+	}
+
+	public static Timer timer(String name, String help) {
+		return register(new Timer(name, help));
+	}
+
+	public static Series series(String name, String help) {
+		return register(new Series(name, help, null));
+	}
+
+	public static Series series(String name, String help, String layout) {
+		return register(new Series(name, help, layout));
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Unregister an instrument, e.g. a finished layout's gauge, so it is no
+	 * longer exported
+	 */
+	public static void remove(Metric metric) {
+		synchronized (REGISTRY) {
+			if (REGISTRY.get(metric.key()) == metric) {
+				REGISTRY.remove(metric.key());
+			}
+		}
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * @return bytes allocated so far by the calling thread, or 0 if the JVM
+	 * doesn't measure it; the difference over a phase is what it allocated
+	 */
+	public static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported()
+			&& threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(
+				Thread.currentThread().getId());
+			}
+		}
+		return 0;
+	}
+
+	/*********************Export Methods****************************/
+	/**
+	 * Write a snapshot of every instrument as one JSON object, e.g.
+	 * {"timestamp":..., "counters":{...}, "gauges":{...}, "timers":{...},
+	 * "series":{...}}. Series are lists of [x, y] points.
+	 */
+	public static void writeJson(Writer out) throws IOException {
+		List<Metric> metrics = snapshot();
+		StringBuilder s = new StringBuilder();
+		s.append("{\n  \"timestamp\": ").append(System.currentTimeMillis());
+		String[] sections = {"counters", "gauges", "timers", "series"};
+		Class<?>[] kinds = {Counter.class, Gauge.class, Timer.class,
+		Series.class};
+		for (int k = 0; k < kinds.length; k++) {
+			s.append(",\n  \"").append(sections[k]).append("\": {");
+			String separator = "\n";
+			for (Metric metric : metrics) {
+				if (kinds[k].isInstance(metric)) {
+					s.append(separator).append("    ")
+					.append(quote(metric.key())).append(": ");
+					metric.appendJson(s);
+					separator = ",\n";
+				}
+			}
+			s.append("\n  }");
+		}
+		s.append("\n}\n");
+		out.write(s.toString());
+		out.flush();
+	}
+
+	/**
+	 * Write every instrument, except series, in the Prometheus text
+	 * exposition format (version 0.0.4). Names are prefixed "visualiser_";
+	 * timers appear as summaries in seconds with their maximum and the
+	 * bytes allocated alongside. Labelled instruments of one name are
+	 * written together, under one header.
+	 */
+	public static void writePrometheus(Writer out) throws IOException {
+		Map<String, List<Metric>> families =
+		new LinkedHashMap<String, List<Metric>>();
+		for (Metric metric : snapshot()) {
+			List<Metric> family = families.get(metric.name);
+			if (family == null) {
+				family = new ArrayList<Metric>();
+				families.put(metric.name, family);
+			}
+			family.add(metric);
+		}
+		StringBuilder s = new StringBuilder();
+		for (List<Metric> family : families.values()) {
+			for (int k = 0; k < family.size(); k++) {
+				family.get(k).appendPrometheus(s, k == 0);
+			}
+		}
+		out.write(s.toString());
+		out.flush();
+	}
+
+	/**
+	 * Write JSON_FILE and PROMETHEUS_FILE into a directory, each by way of a
+	 * temporary file renamed into place; one export at a time
+	 */
+	public static synchronized void export(File directory)
+	throws IOException {
+		File json = new File(directory, JSON_FILE);
+		File temp = new File(directory, "." + JSON_FILE + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(temp),
+		"UTF-8");
+		try {
+			writeJson(out);
+		} finally {
+			out.close();
+		}
+		replace(temp, json);
+		File prom = new File(directory, PROMETHEUS_FILE);
+		temp = new File(directory, "." + PROMETHEUS_FILE + ".tmp");
+		out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+		try {
+			writePrometheus(out);
+		} finally {
+			out.close();
+		}
+		replace(temp, prom);
+	}
+
+	/**
+	 * Export to a directory every so often from a daemon thread, and once
+	 * more as the JVM exits. Only the first call has any effect.
+	 *
+	 * @param directory where to write, created if need be
+	 * @param seconds   interval between exports
+	 */
+	public static synchronized void startExport(final File directory,
+	                                            final int seconds) {
+		if (exporter != null) {
+			return;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("Unable to create " + directory
+			+ " for metrics");
+			return;
+		}
+		exporter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(seconds * 1000L);
+						exportQuietly(directory);
+					}
+				} catch (InterruptedException e) {
+					//stop exporting
+				}
+			}
+		}, "metrics-export");
+		exporter.setDaemon(true);
+		exporter.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				exportQuietly(directory);
+			}
+		}, "metrics-final-export"));
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Register a new instrument, or return the one already under its name
+	 */
+	@SuppressWarnings("unchecked")
+	private static <M extends Metric> M register(M metric) {
+		synchronized (REGISTRY) {
+			Metric existing = REGISTRY.get(metric.key());
+			if (existing == null) {
+				REGISTRY.put(metric.key(), metric);
+				return metric;
+			}
+			if (existing.getClass() != metric.getClass()) {
+				throw new IllegalArgumentException("Metric " + metric.key()
+				+ " is already registered as a "
+				+ existing.getClass().getSimpleName());
+			}
+			return (M) existing;
+		}
+	}
+
+	private static List<Metric> snapshot() {
+		synchronized (REGISTRY) {
+			return new ArrayList<Metric>(REGISTRY.values());
+		}
+	}
+
+	private static void replace(File from, File to) throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {                   //e.g. no atomic move
+			Files.move(from.toPath(), to.toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void exportQuietly(File directory) {
+		try {
+			export(directory);
+		} catch (IOException e) {
+			System.err.println("Unable to write metrics to " + directory
+			+ ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a number as JSON, which has no NaN or infinities
+	 */
+	private static String json(double value) {
+		return (Double.isNaN(value) || Double.isInfinite(value)) ? "null"
+		: Double.toString(value);
+	}
+
+	/**
+	 * @return a number as Prometheus writes it
+	 */
+	private static String prometheus(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return (value > 0) ? "+Inf" : "-Inf";
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * @return a string as a JSON string literal
+	 */
+	private static String quote(String value) {
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				s.append('\\').append(c);
+			} else if (c < ' ') {
+				s.append(String.format("\\u%04x", (int) c));
+			} else {
+				s.append(c);
+			}
+		}
+		return s.append('"').toString();
+	}
+
+	/**
+	 * @return a label value escaped as the Prometheus text format requires
+	 */
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"")
+		.replace("\n", "\\n");
+	}
+
+	private static void header(StringBuilder s, String name, String help,
+	                           String type) {
+		s.append("# HELP ").append(name).append(' ').append(help)
+		.append("\n# TYPE ").append(name).append(' ').append(type)
+		.append('\n');
+	}
+
+	/**
+	 * ***********************INSTRUMENTS***************************
+	 */
+	abstract static class Metric {
+
+		final String name;
+		final String help;
+		final String layout;                            //label value, or null
+
+		Metric(String name, String help, String layout) {
+			this.name = name;
+			this.help = help;
+			this.layout = layout;
+		}
+
+		/**
+		 * @return name and label, as Prometheus writes them
+		 */
+		String key() {
+			return (layout == null) ? name : name + labels();
+		}
+
+		/**
+		 * @return the label set, {layout="..."}, or "" if unlabelled
+		 */
+		String labels() {
+			return (layout == null) ? ""
+			: "{layout=\"" + escapeLabel(layout) + "\"}";
+		}
+
+		abstract void appendJson(StringBuilder s);
+
+		/**
+		 * @param header whether to write the HELP and TYPE lines, i.e. this
+		 *               is the first of its name
+		 */
+		abstract void appendPrometheus(StringBuilder s, boolean header);
+	}
+
+	/**
+	 * A count that only goes up, e.g. of edges read
+	 */
+	public static final class Counter extends Metric {
+
+		private final LongAdder count = new LongAdder();
+
+		Counter(String name, String help) {
+			super(name, help, null);
+		}
+
+		public void increment() {
+			count.increment();
+		}
+
+		public void add(long n) {
+			count.add(n);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+
+		void appendJson(StringBuilder s) {
+			s.append(get());
+		}
+
+		void appendPrometheus(StringBuilder s, boolean header) {
+			String total = PREFIX + name + "_total";
+			header(s, total, help, "counter");
+			s.append(total).append(' ').append(get()).append('\n');
+		}
+	}
+
+	/**
+	 * The latest value of something, e.g. the error of the last iteration
+	 */
+	public static final class Gauge extends Metric {
+
+		private volatile double value = Double.NaN;     //NaN until set
+
+		Gauge(String name, String help, String layout) {
+			super(name, help, layout);
+		}
+
+		public void set(double v) {
+			value = v;
+		}
+
+		public double get() {
+			return value;
+		}
+
+		void appendJson(StringBuilder s) {
+			s.append(json(value));
+		}
+
+		void appendPrometheus(StringBuilder s, boolean header) {
+			if (header) {
+				header(s, PREFIX + name, help, "gauge");
+			}
+			s.append(PREFIX).append(name).append(labels()).append(' ')
+			.append(prometheus(value)).append('\n');
+		}
+	}
+
+	/**
+	 * Durations and allocation of a repeated phase, e.g. one exploratory
+	 * run: how many, total and longest time, total bytes allocated
+	 */
+	public static final class Timer extends Metric {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAccumulator longest = new LongAccumulator(
+		new LongBinaryOperator() {
+			public long applyAsLong(long left, long right) {
+				return Math.max(left, right);
+			}
+		}, 0);
+
+		Timer(String name, String help) {
+			super(name, help, null);
+		}
+
+		/**
+		 * @param elapsed   nanoseconds the phase took
+		 * @param allocated bytes it allocated (see allocatedBytes)
+		 */
+		public void record(long elapsed, long allocated) {
+			count.increment();
+			nanos.add(elapsed);
+			bytes.add(allocated);
+			longest.accumulate(elapsed);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public double getSeconds() {
+			return nanos.sum() / 1e9;
+		}
+
+		public double getMaxSeconds() {
+			return longest.get() / 1e9;
+		}
+
+		public long getAllocatedBytes() {
+			return bytes.sum();
+		}
+
+		void appendJson(StringBuilder s) {
+			s.append(String.format(Locale.ROOT, "{\"count\": %d, "
+			+ "\"seconds\": %s, \"max_seconds\": %s, "
+			+ "\"allocated_bytes\": %d}", getCount(), json(getSeconds()),
+			json(getMaxSeconds()), getAllocatedBytes()));
+		}
+
+		void appendPrometheus(StringBuilder s, boolean header) {
+			String seconds = PREFIX + name + "_seconds";
+			header(s, seconds, help, "summary");
+			s.append(seconds).append("_count ").append(getCount())
+			.append('\n').append(seconds).append("_sum ")
+			.append(prometheus(getSeconds())).append('\n');
+			header(s, seconds + "_max", "Longest: " + help, "gauge");
+			s.append(seconds).append("_max ")
+			.append(prometheus(getMaxSeconds())).append('\n');
+			String allocated = PREFIX + name + "_allocated_bytes_total";
+			header(s, allocated, "Bytes allocated: " + help, "counter");
+			s.append(allocated).append(' ').append(getAllocatedBytes())
+			.append('\n');
+		}
+	}
+
+	/**
+	 * A trajectory of (x, y) points, e.g. error against iteration, held in
+	 * SERIES_CAPACITY points however long it runs: when full, every other
+	 * point is dropped and from then on only every other one offered is
+	 * kept. JSON only.
+	 */
+	public static final class Series extends Metric {
+
+		private final double[] xs = new double[SERIES_CAPACITY];
+		private final double[] ys = new double[SERIES_CAPACITY];
+		private int size;                       //points held
+		private long offered;                   //points offered since clear
+		private long stride = 1;                //keep every stride-th
+
+		Series(String name, String help, String layout) {
+			super(name, help, layout);
+		}
+
+		public synchronized void add(double x, double y) {
+			if (offered++ % stride != 0) {
+				return;
+			}
+			if (size == SERIES_CAPACITY) {
+				for (int i = 0; i < size / 2; i++) {
+					xs[i] = xs[2 * i];
+					ys[i] = ys[2 * i];
+				}
+				size /= 2;
+				stride *= 2;
+				if ((offered - 1) % stride != 0) {
+					return;
+				}
+			}
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+
+		/**
+		 * Start a new trajectory, e.g. for the next layout
+		 */
+		public synchronized void clear() {
+			size = 0;
+			offered = 0;
+			stride = 1;
+		}
+
+		public synchronized int size() {
+			return size;
+		}
+
+		synchronized void appendJson(StringBuilder s) {
+			s.append('[');
+			for (int i = 0; i < size; i++) {
+				s.append((i == 0) ? "[" : ", [").append(json(xs[i]))
+				.append(", ").append(json(ys[i])).append(']');
+			}
+			s.append(']');
+		}
+
+		void appendPrometheus(StringBuilder s, boolean header) {
+			//a trajectory has no place in a scrape; see the gauges
+		}
+	}
+
+	/**
+	 * ***********************TEST SUITE****************************
+	 */
+	public static void main(String[] args) throws IOException {
+		Counter edges = counter("test_edges", "Edges read");
+		Timer phase = timer("test_phase", "A phase");
+		Series series = series("test_series", "A trajectory");
+		gauge("test_gauge", "A gauge").set(0.5);
+		gauge("test_layout_gauge", "A layout's gauge", "a").set(1);
+		gauge("test_layout_gauge", "A layout's gauge", "b\"c").set(2);
+		for (int i = 0; i < 1000; i++) {
+			edges.increment();
+			series.add(i, 1000 - i);
+		}
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		phase.record(System.nanoTime() - start, allocatedBytes() - bytes);
+		Writer out = new OutputStreamWriter(System.out, "UTF-8");
+		writeJson(out);
+		writePrometheus(out);
+	}
+}
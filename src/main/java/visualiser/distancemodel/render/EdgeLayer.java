@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Draws similarity links between terms under the plot. Each edge falls into
+ * one of a few style buckets by its strength, and all the edges of a bucket
+ * are drawn as one Path2D, so a frame costs a few draw calls whatever the
+ * number of edges rather than one shape per edge.
+ *
+ * The paths are built in screen coordinates, holding only the edges that
+ * cross the screen, and kept until the view is zoomed or panned or a new
+ * frame has moved some term by more than TOLERANCE pixels since they were
+ * built; once the layout settles they are simply redrawn. Building them is
+ * linear in the number of edges.
+ *
+ * Strength is shown by colour (pale to dark, blended against the white
+ * background rather than translucent) and the strongest quarter of edges is
+ * drawn two pixels wide, by drawing its path twice a pixel apart, so every
+ * path stays an opaque one pixel stroke that Java2D draws quickly.
+ *
+ * A layer keeps its paths between frames, so it belongs to one drawing
+ * surface and must only be used by the thread painting it.
+ */
+package visualiser.distancemodel.render;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Similarity edges, batched into one path per style.
+ */
+public class EdgeLayer {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final double TOLERANCE = 0.5;        //pixels moved
+	private static final Color[] COLOURS = {            //weak..strong
+	new Color(225, 230, 240), new Color(195, 205, 225),
+	new Color(150, 170, 205), new Color(90, 115, 170)};
+	private static final int BUCKETS = COLOURS.length;
+	private static final int THICK = BUCKETS - 1;       //drawn 2 pixels wide
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final int[] from;                           //edge k: from-to
+	private final int[] to;
+	private final byte[] bucket;                        //style of edge k
+	private final Path2D.Float[] paths = new Path2D.Float[BUCKETS];
+	private float[] builtX = new float[0];              //screen positions
+	private float[] builtY = new float[0];              //...paths were built at
+	private SpatialGrid builtFrame;
+	private double builtScale;                          //view paths were built
+	private double builtLeft;                           //...for
+	private double builtTop;
+	private int builtWidth;
+	private int builtHeight;
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param from     first term of each edge
+	 * @param to       second term of each edge
+	 * @param strength strength of each edge, greater is stronger; edges are
+	 *                 split into equal sized buckets by rank
+	 */
+	public EdgeLayer(int[] from, int[] to, float[] strength) {
+		if (from.length != to.length || from.length != strength.length) {
+			throw new IllegalArgumentException("Edge arrays differ in length: "
+			+ from.length + ", " + to.length + ", " + strength.length);
+		}
+		this.from = from;
+		this.to = to;
+		bucket = new byte[from.length];
+		float[] sorted = strength.clone();
+		Arrays.sort(sorted);
+		float[] bounds = new float[BUCKETS - 1];        //lower bounds 1..
+		for (int b = 1; b < BUCKETS; b++) {
+			bounds[b - 1] = sorted.length == 0 ? 0
+			: sorted[sorted.length * b / BUCKETS];
+		}
+		for (int k = 0; k < strength.length; k++) {
+			int b = 0;
+			while (b < bounds.length && strength[k] >= bounds[b]) {
+				b++;
+			}
+			bucket[k] = (byte) b;
+		}
+	}
+
+	/************************Accessors******************************/
+	public int size() {
+		return from.length;
+	}
+
+	/**
+	 * Draw the edges of a frame in a view. The paths are rebuilt first if
+	 * the view has changed or any term has moved more than TOLERANCE pixels
+	 * since they were built; edges wholly off screen are left out.
+	 *
+	 * @param grid index of the frame, giving plot positions
+	 * @param view visible region and scale
+	 */
+	public void paint(SpatialGrid grid, Viewport view, Graphics2D g2) {
+		if (hasViewChanged(view) || hasMoved(grid, view)) {
+			build(grid, view);
+		}
+		builtFrame = grid;
+		//Opaque one pixel lines without antialiasing are drawn line by line;
+		//translucent, wider or antialiased strokes make Java2D rasterise
+		//the whole path as one shape, which is orders of magnitude slower.
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+		RenderingHints.VALUE_ANTIALIAS_OFF);
+		Stroke saved = g2.getStroke();
+		g2.setStroke(new BasicStroke(1));
+		for (int b = 0; b < BUCKETS; b++) {           //strongest on top
+			if (paths[b] != null) {
+				g2.setPaint(COLOURS[b]);
+				g2.draw(paths[b]);
+				if (b == THICK) {
+					g2.translate(1, 0);
+					g2.draw(paths[b]);
+					g2.translate(-1, 0);
+				}
+			}
+		}
+		g2.setStroke(saved);
+	}
+
+	/*********************Utility Methods***************************/
+	private boolean hasViewChanged(Viewport view) {
+		return view.getScale() != builtScale || view.toPlotX(0) != builtLeft
+		|| view.toPlotY(0) != builtTop || view.getWidth() != builtWidth
+		|| view.getHeight() != builtHeight;
+	}
+
+	/**
+	 * @return true if the frame has a different number of terms from the one
+	 * the paths were built for, or a term has moved more than TOLERANCE
+	 * pixels on screen
+	 */
+	private boolean hasMoved(SpatialGrid grid, Viewport view) {
+		if (grid == builtFrame) {
+			return false;
+		}
+		int n = grid.getLayout().size();
+		if (n != builtX.length) {
+			return true;
+		}
+		for (int i = 0; i < n; i++) {
+			if (Math.abs(view.toScreenX(grid.getX(i)) - builtX[i]) > TOLERANCE
+			|| Math.abs(view.toScreenY(grid.getY(i)) - builtY[i]) > TOLERANCE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void build(SpatialGrid grid, Viewport view) {
+		int n = grid.getLayout().size();
+		if (builtX.length != n) {
+			builtX = new float[n];
+			builtY = new float[n];
+		}
+		for (int i = 0; i < n; i++) {
+			builtX[i] = (float) view.toScreenX(grid.getX(i));
+			builtY[i] = (float) view.toScreenY(grid.getY(i));
+		}
+		builtScale = view.getScale();
+		builtLeft = view.toPlotX(0);
+		builtTop = view.toPlotY(0);
+		builtWidth = view.getWidth();
+		builtHeight = view.getHeight();
+		for (int b = 0; b < BUCKETS; b++) {
+			paths[b] = null;
+		}
+		for (int k = 0; k < from.length; k++) {
+			if (from[k] >= n || to[k] >= n) {
+				continue;
+			}
+			float x0 = builtX[from[k]];
+			float y0 = builtY[from[k]];
+			float x1 = builtX[to[k]];
+			float y1 = builtY[to[k]];
+			if (Math.max(x0, x1) < 0 || Math.min(x0, x1) > builtWidth
+			|| Math.max(y0, y1) < 0 || Math.min(y0, y1) > builtHeight) {
+				continue;                               //off screen
+			}
+			Path2D.Float path = paths[bucket[k]];
+			if (path == null) {
+				path = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+				paths[bucket[k]] = path;
+			}
+			path.moveTo(x0, y0);
+			path.lineTo(x1, y1);
+		}
+	}
+}
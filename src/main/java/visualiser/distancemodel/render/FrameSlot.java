@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Hands position frames from the simulation thread to the display without
+ * locks. The simulation publishes immutable Layout snapshots into a single
+ * slot, overwriting any frame not yet shown; the display takes whatever is
+ * latest when it is ready to paint. Neither side ever waits for the other, so
+ * the simulation runs at full speed and the display never sees a frame that
+ * is half updated.
+ *
+ * Snapshots cost an allocation, so the simulation asks isWanted() first and
+ * only builds a new frame once the display has taken the previous one: at
+ * most one snapshot per displayed frame, whatever the iteration rate. Each
+ * frame is indexed in a SpatialGrid as it is published, on the simulation
+ * thread, so the display can hit-test and cull it without building anything
+ * itself.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-writer, single-reader latest-value slot for layout frames.
+ */
+public class FrameSlot {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final AtomicReference<SpatialGrid> latest =
+	new AtomicReference<SpatialGrid>();
+	private volatile SpatialGrid taken;                 //last frame read
+
+	/************************Accessors******************************/
+	/**
+	 * Writer side: is a new frame worth building?
+	 *
+	 * @return true if the reader has taken the latest frame (or none has been
+	 * published)
+	 */
+	public boolean isWanted() {
+		return latest.get() == taken;
+	}
+
+	/**
+	 * Reader side: has a frame arrived since the last take?
+	 */
+	public boolean hasNewFrame() {
+		return latest.get() != taken;
+	}
+
+	/**
+	 * Reader side: the most recent frame, indexed, or null if none has been
+	 * published
+	 */
+	public SpatialGrid take() {
+		SpatialGrid frame = latest.get();
+		taken = frame;
+		return frame;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Writer side: index a frame and make it the current one, dropping the
+	 * previous one if not yet taken
+	 */
+	public void publish(Layout frame) {
+		latest.set(new SpatialGrid(frame));
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Keeps each term's label shaped and measured between frames. Shaping text
+ * (font lookup, glyph layout, measuring) is far more expensive than drawing
+ * the resulting glyphs, and during an animation the same labels are drawn
+ * thousands of times, so each label is laid out once as a GlyphVector and
+ * only re-laid out if its text, font or the rendering context changes.
+ *
+ * A cache belongs to one drawing surface (e.g. one PlotDistances panel) and
+ * must only be used by the thread painting it.
+ */
+package visualiser.distancemodel.render;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.util.Arrays;
+
+/**
+ * Per-term cache of laid out, pre-measured labels.
+ */
+public class LabelCache {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private String[] labels = new String[0];            //text of each entry
+	private Font[] fonts = new Font[0];                 //font of each entry
+	private GlyphVector[] glyphs = new GlyphVector[0];
+	private float[] widths = new float[0];
+	private float[] ascents = new float[0];
+	private float[] heights = new float[0];             //ascent + descent
+	private FontRenderContext context;                  //all entries shaped for
+
+	/************************Accessors******************************/
+	/**
+	 * Draw label i centred on (x,y), shaping it first only if needed
+	 *
+	 * @param i     term index
+	 * @param label text of the label
+	 * @param font  font to draw it in
+	 * @param x     centre
+	 * @param y     centre
+	 * @param g2    graphics, with paint already set
+	 */
+	public void draw(int i, String label, Font font, double x, double y,
+	                 Graphics2D g2) {
+		int entry = lookup(i, label, font, g2.getFontRenderContext());
+		g2.drawGlyphVector(glyphs[entry], (float) x - widths[entry] / 2,
+		(float) y + ascents[entry] / 2);
+	}
+
+	/**
+	 * @return width in pixels of label i, shaping it first if needed
+	 */
+	public float getWidth(int i, String label, Font font,
+	                      FontRenderContext frc) {
+		int entry = lookup(i, label, font, frc);     //may grow widths
+		return widths[entry];
+	}
+
+	/**
+	 * @return ascent in pixels of label i, shaping it first if needed
+	 */
+	public float getAscent(int i, String label, Font font,
+	                       FontRenderContext frc) {
+		int entry = lookup(i, label, font, frc);     //may grow ascents
+		return ascents[entry];
+	}
+
+	/**
+	 * @return height in pixels (ascent plus descent) of label i, shaping it
+	 * first if needed
+	 */
+	public float getHeight(int i, String label, Font font,
+	                       FontRenderContext frc) {
+		int entry = lookup(i, label, font, frc);     //may grow heights
+		return heights[entry];
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Make sure entry i holds the given label shaped in the given font and
+	 * context
+	 *
+	 * @return i
+	 */
+	private int lookup(int i, String label, Font font, FontRenderContext frc) {
+		if (!frc.equals(context)) {
+			Arrays.fill(labels, null);                  //all entries stale
+			context = frc;
+		}
+		if (i >= labels.length) {
+			grow(i + 1);
+		}
+		if (!label.equals(labels[i]) || !font.equals(fonts[i])) {
+			GlyphVector glyph = font.createGlyphVector(frc, label);
+			glyphs[i] = glyph;
+			widths[i] = (float) glyph.getLogicalBounds().getWidth();
+			LineMetrics metrics = font.getLineMetrics(label, frc);
+			ascents[i] = metrics.getAscent();
+			heights[i] = metrics.getAscent() + metrics.getDescent();
+			labels[i] = label;
+			fonts[i] = font;
+		}
+		return i;
+	}
+
+	private void grow(int size) {
+		size = Math.max(size, labels.length * 2);
+		labels = Arrays.copyOf(labels, size);
+		fonts = Arrays.copyOf(fonts, size);
+		glyphs = Arrays.copyOf(glyphs, size);
+		widths = Arrays.copyOf(widths, size);
+		ascents = Arrays.copyOf(ascents, size);
+		heights = Arrays.copyOf(heights, size);
+	}
+}
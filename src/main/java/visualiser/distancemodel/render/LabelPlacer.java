@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Greedy label placement without overlaps. Labels are offered in priority
+ * order; each is tried at a few positions around its point (centred, above,
+ * below, right, left) and takes the first that lies within the area and
+ * overlaps no label already placed, or is suppressed if none is free. Placed boxes are kept in a
+ * uniform grid of screen cells, so each test only looks at the few labels
+ * nearby and a whole frame costs about linear time in the labels offered.
+ *
+ * Between frames the placer remembers where each term's label went. A term
+ * that has moved less than STICKY_DISTANCE pixels tries its previous
+ * position first, so labels stay put while the animation settles instead of
+ * jumping between positions, and most tests succeed at the first attempt.
+ *
+ * A placer belongs to one drawing surface and its painting thread.
+ */
+package visualiser.distancemodel.render;
+
+import java.util.Arrays;
+
+/**
+ * Collision-free greedy label placement over a screen grid.
+ */
+public class LabelPlacer {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int CELL_WIDTH = 64;           //grid cell, pixels
+	private static final int CELL_HEIGHT = 16;
+	private static final long MAX_CELLS = 1 << 22;      //larger cells beyond
+	private static final float GAP = 3;                 //point to label
+	private static final float MARGIN = 2;              //label to label
+	private static final double STICKY_DISTANCE = 4;    //pixels
+	private static final int POSITIONS = 5;             //centre,up,down,r,l
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	//Boxes placed this frame
+	private float[] boxes = new float[4 * 256];         //x0,y0,x1,y1 per box
+	private int placed;
+	//Grid: per cell a linked list of box numbers
+	private int cellWidth;
+	private int cellHeight;
+	private int columns;
+	private int rows;
+	private int width;                                  //area labels must fit
+	private int height;
+	private int[] cellHead = new int[0];                //first node, or -1
+	private int[] nodeBox = new int[1024];
+	private int[] nodeNext = new int[1024];
+	private int nodes;
+	//Memory of the previous frames, by term index
+	private float[] lastX = new float[0];
+	private float[] lastY = new float[0];
+	private byte[] lastPosition = new byte[0];          //-1: suppressed/none
+
+	/************************Mutators*******************************/
+	/**
+	 * Start a frame: forget this frame's boxes, keep the placement memory.
+	 * Very large areas (e.g. a whole tile pyramid level) get coarser cells,
+	 * so the grid stays under MAX_CELLS.
+	 *
+	 * @param width  screen width
+	 * @param height screen height
+	 */
+	public void begin(int width, int height) {
+		this.width = width;
+		this.height = height;
+		cellWidth = CELL_WIDTH;
+		cellHeight = CELL_HEIGHT;
+		while ((long) (width / cellWidth + 1) * (height / cellHeight + 1)
+		> MAX_CELLS) {
+			cellWidth *= 2;
+			cellHeight *= 2;
+		}
+		columns = Math.max(1, width / cellWidth + 1);
+		rows = Math.max(1, height / cellHeight + 1);
+		if (cellHead.length < columns * rows) {
+			cellHead = new int[columns * rows];
+		}
+		Arrays.fill(cellHead, 0, columns * rows, -1);
+		placed = 0;
+		nodes = 0;
+	}
+
+	/**
+	 * Try to place the label of a term whose point is at (x, y)
+	 *
+	 * @param term   term index, for the memory of previous frames
+	 * @param width  label width
+	 * @param height label height
+	 * @param force  place it (centred) even if it overlaps or leaves the
+	 *               area, e.g. for the reference term
+	 * @param centre receives the centre of the placed label
+	 * @return true if placed, false if suppressed
+	 */
+	public boolean place(int term, double x, double y, float width,
+	                     float height, boolean force, float[] centre) {
+		remember(term);
+		width += 2 * MARGIN;
+		height += 2 * MARGIN;
+		int first = lastPosition[term];
+		double moved = Math.abs(x - lastX[term]) + Math.abs(y - lastY[term]);
+		if (first < 0 || moved > STICKY_DISTANCE) {
+			first = 0;
+		}
+		lastX[term] = (float) x;
+		lastY[term] = (float) y;
+		for (int attempt = 0; attempt < POSITIONS; attempt++) {
+			int position = (attempt == 0) ? first
+			: (attempt <= first) ? attempt - 1 : attempt;
+			offset(position, x, y, width, height, centre);
+			if (isFree(centre[0], centre[1], width, height)) {
+				add(centre[0], centre[1], width, height);
+				lastPosition[term] = (byte) position;
+				return true;
+			}
+		}
+		if (force) {
+			offset(0, x, y, width, height, centre);
+			add(centre[0], centre[1], width, height);
+			lastPosition[term] = 0;
+			return true;
+		}
+		lastPosition[term] = -1;
+		return false;
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Centre of a label at one of the candidate positions
+	 */
+	private static void offset(int position, double x, double y, float width,
+	                           float height, float[] centre) {
+		float dx = 0;
+		float dy = 0;
+		switch (position) {
+			case 1:
+				dy = -(height / 2 + GAP);               //above
+				break;
+			case 2:
+				dy = height / 2 + GAP;                  //below
+				break;
+			case 3:
+				dx = width / 2 + GAP;                   //right
+				break;
+			case 4:
+				dx = -(width / 2 + GAP);                //left
+				break;
+		}
+		centre[0] = (float) x + dx;
+		centre[1] = (float) y + dy;
+	}
+
+	private boolean isFree(float cx, float cy, float boxWidth,
+	                       float boxHeight) {
+		float x0 = cx - boxWidth / 2;
+		float y0 = cy - boxHeight / 2;
+		float x1 = x0 + boxWidth;
+		float y1 = y0 + boxHeight;
+		if (x0 < 0 || y0 < 0 || x1 > width || y1 > height) {
+			return false;
+		}
+		int c0 = column(x0);
+		int c1 = column(x1);
+		int r0 = row(y0);
+		int r1 = row(y1);
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				for (int node = cellHead[r * columns + c]; node >= 0;
+				     node = nodeNext[node]) {
+					int box = 4 * nodeBox[node];
+					if (x0 < boxes[box + 2] && boxes[box] < x1
+					&& y0 < boxes[box + 3] && boxes[box + 1] < y1) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private void add(float cx, float cy, float width, float height) {
+		if (4 * placed + 4 > boxes.length) {
+			boxes = Arrays.copyOf(boxes, boxes.length * 2);
+		}
+		int box = 4 * placed;
+		boxes[box] = cx - width / 2;
+		boxes[box + 1] = cy - height / 2;
+		boxes[box + 2] = boxes[box] + width;
+		boxes[box + 3] = boxes[box + 1] + height;
+		for (int r = row(boxes[box + 1]); r <= row(boxes[box + 3]); r++) {
+			for (int c = column(boxes[box]); c <= column(boxes[box + 2]); c++) {
+				if (nodes == nodeBox.length) {
+					nodeBox = Arrays.copyOf(nodeBox, nodes * 2);
+					nodeNext = Arrays.copyOf(nodeNext, nodes * 2);
+				}
+				int cell = r * columns + c;
+				nodeBox[nodes] = placed;
+				nodeNext[nodes] = cellHead[cell];
+				cellHead[cell] = nodes++;
+			}
+		}
+		placed++;
+	}
+
+	/**
+	 * Grow the placement memory to cover a term
+	 */
+	private void remember(int term) {
+		if (term >= lastPosition.length) {
+			int size = Math.max(term + 1, lastPosition.length * 2);
+			int old = lastPosition.length;
+			lastX = Arrays.copyOf(lastX, size);
+			lastY = Arrays.copyOf(lastY, size);
+			lastPosition = Arrays.copyOf(lastPosition, size);
+			Arrays.fill(lastPosition, old, size, (byte) -1);
+		}
+	}
+
+	private int column(float x) {
+		return Math.max(0, Math.min(columns - 1, (int) (x / cellWidth)));
+	}
+
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) (y / cellHeight)));
+	}
+}
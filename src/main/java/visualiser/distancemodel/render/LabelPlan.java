@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Where each term's label goes in one large picture that is drawn in pieces,
+ * such as a level of a tile pyramid. Labels are placed once for the whole
+ * picture (see LayoutRenderer.planLabels) and each piece then draws the
+ * labels that reach into it, so a label cut by a tile edge is completed by
+ * the neighbouring tile and no two tiles disagree about what is labelled.
+ *
+ * Positions are kept as offsets in pixels from each term's point, so the
+ * same plan serves every tile of the level whatever its origin. A plan is
+ * immutable once made and may be shared by the threads drawing tiles.
+ */
+package visualiser.distancemodel.render;
+
+/**
+ * Precomputed label placement for a picture drawn in tiles.
+ */
+public class LabelPlan {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final float[] dx;                           //centre - point, or NaN
+	private final float[] dy;
+	private final float reach;                          //furthest label extent
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * @param dx    horizontal offset of each label's centre from its point,
+	 *              NaN if the term is not labelled (not copied)
+	 * @param dy    vertical offset
+	 * @param reach greatest distance in pixels from a point to the far edge
+	 *              of its label, on either axis
+	 */
+	LabelPlan(float[] dx, float[] dy, float reach) {
+		this.dx = dx;
+		this.dy = dy;
+		this.reach = reach;
+	}
+
+	/************************Accessors******************************/
+	public boolean isLabelled(int i) {
+		return !Float.isNaN(dx[i]);
+	}
+
+	public float getOffsetX(int i) {
+		return dx[i];
+	}
+
+	public float getOffsetY(int i) {
+		return dy[i];
+	}
+
+	/**
+	 * @return margin in pixels round a tile within which points may have
+	 * labels reaching into it
+	 */
+	public float getReach() {
+		return reach;
+	}
+}
@@ -0,0 +1,781 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Draws a Layout: a point for each term with its label next to it, the
+ * reference term highlighted, scaled equally on both axes to fit the image
+ * less a PAD border. On images labels never overlap: where terms are dense
+ * the less important ones go unlabelled (see LabelPlacer); SVG output, which
+ * can be zoomed by its viewer, keeps every label centred on its point.
+ *
+ * This is the drawing that used to live in PlotDistances.paintComponent,
+ * taken out of Swing so that it can target any Graphics2D (a window, a
+ * BufferedImage) or be written as SVG text, and so that it works under
+ * java.awt.headless=true.
+ *
+ * A renderer holds no per-drawing state (that is in a RenderState owned by
+ * the caller), and Layouts are immutable, so one renderer can be used from
+ * many threads at once.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+import visualiser.distancemodel.exceptions.WrongDimensionsException;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Thread-safe renderer of layouts to Graphics2D, PNG or SVG.
+ */
+public class LayoutRenderer {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int PAD = 80;                  //border to image edge
+	private static final Color BACKGROUND = Color.WHITE;
+
+	/**
+	 * GlobalParameters for points showing position
+	 */
+	private static final boolean DRAW_POINT = true;             //draw point ?
+	static final int POINT_SIZE = 4;                            //Size of point
+	private static final Color POINT_COLOUR = Color.BLACK;      //point colour
+
+	/**
+	 * GlobalParameters for legends describing terms
+	 */
+	private static final Color TERM_COLOUR = Color.BLUE;        //term colour
+	private static final String TERM_FONT = "Lucida Grande";    //term font
+	private static final int TERM_FONT_SIZE = 16;               //term font size
+	private static final Color REFTERM_COLOUR = Color.RED;      //ref term colour
+	private static final String REFTERM_FONT = "Lucida Grande"; //ref term font
+	private static final int REFTERM_FONT_SIZE = 16;            //ref term size
+
+	/**
+	 * Level of detail when drawing through a Viewport
+	 */
+	private static final int LABEL_AREA = 2000;         //screen px per label
+	private static final int CLUSTER_THRESHOLD = 2000;  //visible terms before
+	private static final int CLUSTER_CELL = 24;         //...points aggregate
+	private static final Color CLUSTER_COLOUR = new Color(0, 0, 0, 96);
+	private static final int CANDIDATES_PER_LABEL = 4;  //offered per label
+
+	/**
+	 * Search matches and the selected term
+	 */
+	private static final Color MATCH_COLOUR = new Color(255, 140, 0);
+	private static final Color SELECTED_COLOUR = new Color(0, 150, 0);
+	private static final Color RELATED_COLOUR = new Color(0, 150, 0, 80);
+	private static final int MARK_SIZE = 12;            //ring diameter
+	private static final Stroke MARK_STROKE = new BasicStroke(2);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final FontRenderContext FRC =        //for SVG, tile metrics
+	new FontRenderContext(null, true, true);
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final Font termFont;                        //Fonts are immutable
+	private final Font refTermFont;
+
+	/***********Constructors and Static Factory Methods*************/
+	public LayoutRenderer() {
+		checkPlotDimensions();
+		termFont = new Font(TERM_FONT, Font.PLAIN, TERM_FONT_SIZE);
+		refTermFont = new Font(REFTERM_FONT, Font.BOLD, REFTERM_FONT_SIZE);
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * Draw a whole layout onto a graphics context covering
+	 * (0,0)-(width,height), as paint through a fitted Viewport. The background
+	 * is not painted.
+	 */
+	public void paint(Layout layout, Graphics2D g2, int width, int height) {
+		SpatialGrid grid = new SpatialGrid(layout);
+		Viewport view = new Viewport();
+		view.setSize(width, height);
+		view.fit(grid);
+		paint(grid, view, g2, null);
+	}
+
+	/**
+	 * Draw the part of an indexed layout inside a viewport, with detail
+	 * reduced to what is readable: when more than CLUSTER_THRESHOLD terms
+	 * are visible, nearby points merge into markers sized by their count,
+	 * and at most one label per LABEL_AREA pixels is drawn. Labels are
+	 * offered to a LabelPlacer most important first (the reference term
+	 * before all others) and each takes a free position next to its point or
+	 * is left out, so no two labels overlap. Zooming in makes room for more.
+	 * Cost is proportional to the number of visible terms.
+	 *
+	 * @param grid  index of the layout frame
+	 * @param view  visible region and scale; its size must be set
+	 * @param state state owned by the painting thread and kept between
+	 *              frames, or null for a one-off drawing
+	 */
+	public void paint(SpatialGrid grid, Viewport view, Graphics2D g2,
+	                  RenderState state) {
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+		RenderingHints.VALUE_ANTIALIAS_ON);
+		if (state == null) {
+			state = new RenderState();
+		}
+		IntList visible = state.getVisible();
+		grid.query(view.toPlotX(0), view.toPlotY(view.getHeight()),
+		view.toPlotX(view.getWidth()), view.toPlotY(0), visible);
+		if (DRAW_POINT) {
+			g2.setPaint(POINT_COLOUR);
+			if (visible.size() > CLUSTER_THRESHOLD) {
+				drawClusters(grid, view, visible, g2);
+			} else {
+				Ellipse2D.Double point = new Ellipse2D.Double();
+				for (int k = 0; k < visible.size(); k++) {
+					int i = visible.get(k);
+					drawPoint(view.toScreenX(grid.getX(i)),
+					view.toScreenY(grid.getY(i)), point, g2);
+				}
+			}
+		}
+		int budget = Math.max(1,
+		view.getWidth() * view.getHeight() / LABEL_AREA);
+		int placed = placeLabels(grid, view, g2.getFontRenderContext(), budget,
+		state);
+		LabelCache labels = state.getLabels();
+		float[] x = state.getPlacedX();
+		float[] y = state.getPlacedY();
+		int[] term = state.getPlacedTerm();
+		Layout layout = grid.getLayout();
+		int ref = layout.getRefTermIndex();
+		g2.setPaint(TERM_COLOUR);
+		for (int k = 0; k < placed; k++) {
+			if (term[k] != ref) {
+				labels.draw(term[k], layout.getLabel(term[k]), termFont, x[k],
+				y[k], g2);
+			}
+		}
+		for (int k = 0; k < placed; k++) {              //ref term on top
+			if (term[k] == ref) {
+				g2.setPaint(REFTERM_COLOUR);
+				labels.draw(ref, layout.getLabel(ref), refTermFont, x[k], y[k],
+				g2);
+			}
+		}
+	}
+
+	/**
+	 * Draw search matches and a selection over a frame already painted:
+	 * rings round the matching points, lines from the selected term to its
+	 * related terms, and the selected term ringed and labelled on top.
+	 *
+	 * @param matches  terms to ring, or null
+	 * @param selected selected term, or -1
+	 * @param related  terms related to the selected one, or null
+	 * @param state    the state the frame was painted with, or null
+	 */
+	public void paintMarks(SpatialGrid grid, Viewport view, Graphics2D g2,
+	                       IntList matches, int selected, int[] related,
+	                       RenderState state) {
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+		RenderingHints.VALUE_ANTIALIAS_ON);
+		Stroke stroke = g2.getStroke();
+		g2.setStroke(MARK_STROKE);
+		Ellipse2D.Double ring = new Ellipse2D.Double();
+		if (selected >= 0 && related != null) {
+			g2.setPaint(RELATED_COLOUR);
+			double x = view.toScreenX(grid.getX(selected));
+			double y = view.toScreenY(grid.getY(selected));
+			Line2D.Double line = new Line2D.Double();   //reused
+			for (int j : related) {
+				line.setLine(x, y, view.toScreenX(grid.getX(j)),
+				view.toScreenY(grid.getY(j)));
+				g2.draw(line);
+			}
+		}
+		if (matches != null) {
+			g2.setPaint(MATCH_COLOUR);
+			for (int k = 0; k < matches.size(); k++) {
+				int i = matches.get(k);
+				if (contains(view, grid, i)) {
+					drawRing(view.toScreenX(grid.getX(i)),
+					view.toScreenY(grid.getY(i)), ring, g2);
+				}
+			}
+		}
+		if (selected >= 0 && contains(view, grid, selected)) {
+			double x = view.toScreenX(grid.getX(selected));
+			double y = view.toScreenY(grid.getY(selected));
+			g2.setPaint(SELECTED_COLOUR);
+			drawRing(x, y, ring, g2);
+			LabelCache labels = (state == null) ? new LabelCache()
+			: state.getLabels();
+			String label = grid.getLayout().getLabel(selected);
+			FontRenderContext frc = g2.getFontRenderContext();
+			float width = labels.getWidth(selected, label, refTermFont, frc);
+			float height = labels.getHeight(selected, label, refTermFont, frc);
+			y -= (MARK_SIZE + height) / 2;                //above the ring
+			g2.setPaint(BACKGROUND);
+			g2.fill(new Rectangle2D.Double(x - width / 2 - 2, y - height / 2,
+			width + 4, height));
+			g2.setPaint(SELECTED_COLOUR);
+			labels.draw(selected, label, refTermFont, x, y, g2);
+		}
+		g2.setStroke(stroke);
+	}
+
+	/**
+	 * Place labels over the whole of a viewport too large to draw at once
+	 * (e.g. a level of a tile pyramid), as paint would but independently of
+	 * how the picture is later cut into tiles: every term in view is offered,
+	 * reference term first and then by importance, until one label per
+	 * LABEL_AREA pixels is placed.
+	 *
+	 * @param grid index of the layout
+	 * @param view the whole picture
+	 */
+	public LabelPlan planLabels(SpatialGrid grid, Viewport view) {
+		Layout layout = grid.getLayout();
+		int n = layout.size();
+		int ref = layout.getRefTermIndex();
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++) {
+			//Ascending order of key is descending importance, then index
+			float importance = (i == ref) ? Float.MAX_VALUE
+			: Math.max(0, layout.getImportance(i));
+			order[i] = ((long) (Integer.MAX_VALUE
+			- Float.floatToIntBits(importance)) << 32) | i;
+		}
+		Arrays.sort(order);
+		float[] dx = new float[n];
+		float[] dy = new float[n];
+		Arrays.fill(dx, Float.NaN);
+		Arrays.fill(dy, Float.NaN);
+		long budget = Math.max(1,
+		(long) view.getWidth() * view.getHeight() / LABEL_AREA);
+		LabelPlacer placer = new LabelPlacer();
+		placer.begin(view.getWidth(), view.getHeight());
+		float[] centre = new float[2];
+		float reach = 0;
+		for (int k = 0; k < n && budget > 0; k++) {
+			int i = (int) order[k];
+			if (!contains(view, grid, i)) {
+				continue;
+			}
+			Font font = (i == ref) ? refTermFont : termFont;
+			String label = layout.getLabel(i);
+			float width = (float) font.getStringBounds(label, FRC).getWidth();
+			LineMetrics metrics = font.getLineMetrics(label, FRC);
+			float height = metrics.getAscent() + metrics.getDescent();
+			double x = view.toScreenX(grid.getX(i));
+			double y = view.toScreenY(grid.getY(i));
+			if (placer.place(i, x, y, width, height, i == ref, centre)) {
+				dx[i] = (float) (centre[0] - x);
+				dy[i] = (float) (centre[1] - y);
+				reach = Math.max(reach, Math.max(Math.abs(dx[i]) + width / 2,
+				Math.abs(dy[i]) + height / 2));
+				budget--;
+			}
+		}
+		return new LabelPlan(dx, dy, reach);
+	}
+
+	/**
+	 * Draw one tile of a picture whose labels were placed by planLabels:
+	 * the points inside the tile, and every planned label reaching into it,
+	 * even from a point in a neighbouring tile. Only terms near the tile are
+	 * looked at. The background is not painted.
+	 *
+	 * @param view    the tile's part of the picture, at the plan's scale
+	 * @param scratch reusable list for terms near the tile, or null
+	 * @return true if anything was drawn
+	 */
+	public boolean paintTile(SpatialGrid grid, Viewport view, Graphics2D g2,
+	                         LabelPlan plan, IntList scratch) {
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+		RenderingHints.VALUE_ANTIALIAS_ON);
+		//Measure text as FRC does, which planLabels used
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+		RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+		RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		Layout layout = grid.getLayout();
+		IntList near = (scratch == null) ? new IntList() : scratch;
+		double margin = Math.max(POINT_SIZE, plan.getReach()) / view.getScale();
+		grid.query(view.toPlotX(0) - margin,
+		view.toPlotY(view.getHeight()) - margin,
+		view.toPlotX(view.getWidth()) + margin, view.toPlotY(0) + margin,
+		near);
+		if (near.size() == 0) {
+			return false;
+		}
+		boolean drawn = false;
+		if (DRAW_POINT) {
+			g2.setPaint(POINT_COLOUR);
+			if (near.size() > CLUSTER_THRESHOLD) {
+				drawn = drawClusters(grid, view, near, g2);
+			} else {
+				Ellipse2D.Double point = new Ellipse2D.Double();
+				double size = POINT_SIZE;
+				for (int k = 0; k < near.size(); k++) {
+					int i = near.get(k);
+					double x = view.toScreenX(grid.getX(i));
+					double y = view.toScreenY(grid.getY(i));
+					if (x >= -size && y >= -size && x <= view.getWidth() + size
+					&& y <= view.getHeight() + size) {
+						drawPoint(x, y, point, g2);
+						drawn = true;
+					}
+				}
+			}
+		}
+		int ref = layout.getRefTermIndex();
+		for (int pass = 0; pass < 2; pass++) {          //ref term on top
+			Font font = (pass == 0) ? termFont : refTermFont;
+			g2.setPaint((pass == 0) ? TERM_COLOUR : REFTERM_COLOUR);
+			g2.setFont(font);
+			FontMetrics fm = g2.getFontMetrics();
+			for (int k = 0; k < near.size(); k++) {
+				int i = near.get(k);
+				if ((i == ref) == (pass == 1) && plan.isLabelled(i)) {
+					String label = layout.getLabel(i);
+					double x = view.toScreenX(grid.getX(i)) + plan.getOffsetX(i)
+					- fm.stringWidth(label) / 2.0;
+					double y = view.toScreenY(grid.getY(i)) + plan.getOffsetY(i)
+					+ fm.getAscent() / 2.0;
+					if (x < view.getWidth() && y > 0
+					&& x + fm.stringWidth(label) > 0
+					&& y - fm.getAscent() < view.getHeight()) {
+						g2.drawString(label, (float) x, (float) y);
+						drawn = true;
+					}
+				}
+			}
+		}
+		return drawn;
+	}
+
+	/**
+	 * @return the layout drawn on a white background
+	 */
+	public BufferedImage renderImage(Layout layout, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height,
+		BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.setPaint(BACKGROUND);
+			g2.fillRect(0, 0, width, height);
+			paint(layout, g2, width, height);
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Render and encode as PNG. The stream is not closed.
+	 */
+	public void writePng(Layout layout, int width, int height,
+	                     OutputStream out) throws IOException {
+		ImageIO.write(renderImage(layout, width, height), "png", out);
+	}
+
+	/**
+	 * Stream the layout as an SVG document, without rasterising it. The
+	 * stream is not closed.
+	 */
+	public void writeSvg(Layout layout, int width, int height,
+	                     OutputStream out) throws IOException {
+		Writer svg = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+		Projection projection = new Projection(layout, width, height);
+		svg.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		svg.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width
+		+ "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " "
+		+ height + "\">\n");
+		svg.write("<rect width=\"100%\" height=\"100%\" fill=\""
+		+ hex(BACKGROUND) + "\"/>\n");
+		String termStyle = textStyle(termFont, TERM_COLOUR);
+		String refTermStyle = textStyle(refTermFont, REFTERM_COLOUR);
+		float termShift = ascent(termFont) / 2;
+		float refTermShift = ascent(refTermFont) / 2;
+		for (int i = 0; i < layout.size(); i++) {
+			double x = projection.x(layout, i);
+			double y = projection.y(layout, i);
+			if (DRAW_POINT) {
+				svg.write("<circle cx=\"" + format(x) + "\" cy=\""
+				+ format(y) + "\" r=\"" + (POINT_SIZE / 2.0) + "\" fill=\""
+				+ hex(POINT_COLOUR) + "\"/>\n");
+			}
+			boolean reference = (i == layout.getRefTermIndex());
+			svg.write("<text x=\"" + format(x) + "\" y=\""
+			+ format(y + (reference ? refTermShift : termShift)) + "\" "
+			+ (reference ? refTermStyle : termStyle) + ">"
+			+ escape(layout.getLabel(i)) + "</text>\n");
+		}
+		svg.write("</svg>\n");
+		svg.flush();
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Check for incorrect number of DIMENSIONS
+	 *
+	 * @throws WrongDimensionsException
+	 */
+	private static void checkPlotDimensions() throws WrongDimensionsException {
+		if (DIMENSIONS < 2 || DIMENSIONS > 3) {
+			throw new WrongDimensionsException("Can't plot in " + DIMENSIONS
+			+ " dimensions");
+		}
+	}
+
+	private void drawPoint(double x, double y, Ellipse2D.Double point,
+	                       Graphics2D g2) {
+		point.setFrame(x - (POINT_SIZE / 2), y - (POINT_SIZE / 2), POINT_SIZE,
+		POINT_SIZE);
+		g2.fill(point);
+	}
+
+	private void drawRing(double x, double y, Ellipse2D.Double ring,
+	                      Graphics2D g2) {
+		ring.setFrame(x - MARK_SIZE / 2, y - MARK_SIZE / 2, MARK_SIZE,
+		MARK_SIZE);
+		g2.draw(ring);
+	}
+
+	/**
+	 * Choose which visible terms are labelled and where. The most important
+	 * CANDIDATES_PER_LABEL * budget visible terms are sorted by importance
+	 * and placed greedily until budget labels are placed or none are left.
+	 * The reference term, if visible, goes first and is always placed.
+	 *
+	 * @return number of labels placed; their centres and terms are in the
+	 * state's placed arrays
+	 */
+	private int placeLabels(SpatialGrid grid, Viewport view,
+	                        FontRenderContext frc, int budget,
+	                        RenderState state) {
+		Layout layout = grid.getLayout();
+		IntList visible = state.getVisible();
+		int ref = layout.getRefTermIndex();
+		float threshold = importanceThreshold(layout, visible,
+		CANDIDATES_PER_LABEL * budget);
+		state.reserve(visible.size(), budget);
+		long[] candidates = state.getCandidates();
+		int count = 0;
+		for (int k = 0; k < visible.size(); k++) {
+			int i = visible.get(k);
+			float importance = Math.max(0, layout.getImportance(i));
+			if (i != ref && importance >= threshold) {
+				//Ascending order of key is descending importance, then index
+				candidates[count++] = ((long) (Integer.MAX_VALUE
+				- Float.floatToIntBits(importance)) << 32) | i;
+			}
+		}
+		Arrays.sort(candidates, 0, count);
+		LabelCache labels = state.getLabels();
+		LabelPlacer placer = state.getPlacer();
+		float[] centre = state.getCentre();
+		float[] placedX = state.getPlacedX();
+		float[] placedY = state.getPlacedY();
+		int[] placedTerm = state.getPlacedTerm();
+		placer.begin(view.getWidth(), view.getHeight());
+		int placed = 0;
+		if (ref >= 0 && ref < layout.size() && contains(view, grid, ref)) {
+			String label = layout.getLabel(ref);
+			placer.place(ref, view.toScreenX(grid.getX(ref)),
+			view.toScreenY(grid.getY(ref)),
+			labels.getWidth(ref, label, refTermFont, frc),
+			labels.getHeight(ref, label, refTermFont, frc), true, centre);
+			placedX[placed] = centre[0];
+			placedY[placed] = centre[1];
+			placedTerm[placed++] = ref;
+		}
+		for (int k = 0; k < count && placed < budget; k++) {
+			int i = (int) candidates[k];
+			String label = layout.getLabel(i);
+			if (placer.place(i, view.toScreenX(grid.getX(i)),
+			view.toScreenY(grid.getY(i)),
+			labels.getWidth(i, label, termFont, frc),
+			labels.getHeight(i, label, termFont, frc), false, centre)) {
+				placedX[placed] = centre[0];
+				placedY[placed] = centre[1];
+				placedTerm[placed++] = i;
+			}
+		}
+		return placed;
+	}
+
+	/**
+	 * Merge visible points into one marker per CLUSTER_CELL screen cell,
+	 * at the cell's centroid with area growing with the log of its count.
+	 * Points off screen are ignored.
+	 *
+	 * @return true if any marker was drawn
+	 */
+	private boolean drawClusters(SpatialGrid grid, Viewport view,
+	                             IntList visible, Graphics2D g2) {
+		int columns = view.getWidth() / CLUSTER_CELL + 1;
+		int rows = view.getHeight() / CLUSTER_CELL + 1;
+		int[] count = new int[columns * rows];
+		double[] sumX = new double[columns * rows];
+		double[] sumY = new double[columns * rows];
+		for (int k = 0; k < visible.size(); k++) {
+			int i = visible.get(k);
+			double x = view.toScreenX(grid.getX(i));
+			double y = view.toScreenY(grid.getY(i));
+			if (x < 0 || y < 0 || x >= view.getWidth()
+			|| y >= view.getHeight()) {
+				continue;
+			}
+			int cell = (int) (y / CLUSTER_CELL) * columns
+			+ (int) (x / CLUSTER_CELL);
+			count[cell]++;
+			sumX[cell] += x;
+			sumY[cell] += y;
+		}
+		Ellipse2D.Double marker = new Ellipse2D.Double();
+		g2.setPaint(CLUSTER_COLOUR);
+		boolean drawn = false;
+		for (int cell = 0; cell < count.length; cell++) {
+			if (count[cell] > 0) {
+				double size = POINT_SIZE * (1 + Math.log(count[cell]));
+				marker.setFrame(sumX[cell] / count[cell] - size / 2,
+				sumY[cell] / count[cell] - size / 2, size, size);
+				g2.fill(marker);
+				drawn = true;
+			}
+		}
+		return drawn;
+	}
+
+	/**
+	 * Smallest importance among the budget most important visible terms
+	 * (quickselect, so linear in the number visible)
+	 */
+	private static float importanceThreshold(Layout layout, IntList visible,
+	                                         int budget) {
+		int n = visible.size();
+		if (n <= budget) {
+			return -Float.MAX_VALUE;                    //label them all
+		}
+		float[] values = new float[n];
+		for (int k = 0; k < n; k++) {
+			values[k] = layout.getImportance(visible.get(k));
+		}
+		int target = n - budget;                        //ascending position
+		int lo = 0;
+		int hi = n - 1;
+		while (lo < hi) {
+			float pivot = values[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					float swap = values[i];
+					values[i++] = values[j];
+					values[j--] = swap;
+				}
+			}
+			if (target <= j) {
+				hi = j;
+			} else if (target >= i) {
+				lo = i;
+			} else {
+				break;
+			}
+		}
+		return values[target];
+	}
+
+	private static boolean contains(Viewport view, SpatialGrid grid, int i) {
+		double x = view.toScreenX(grid.getX(i));
+		double y = view.toScreenY(grid.getY(i));
+		return x >= 0 && y >= 0 && x <= view.getWidth()
+		&& y <= view.getHeight();
+	}
+
+	private static float ascent(Font font) {
+		return font.getLineMetrics("", FRC).getAscent();
+	}
+
+	private static String textStyle(Font font, Color colour) {
+		return "font-family=\"" + escape(font.getName()) + ", sans-serif\""
+		+ " font-size=\"" + font.getSize() + "\""
+		+ (font.isBold() ? " font-weight=\"bold\"" : "")
+		+ " text-anchor=\"middle\" fill=\"" + hex(colour) + "\"";
+	}
+
+	private static String hex(Color colour) {
+		return String.format("#%06x", colour.getRGB() & 0xffffff);
+	}
+
+	private static String format(double value) {
+		return Float.toString((float) value);
+	}
+
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '<':
+					escaped.append("&lt;");
+					break;
+				case '>':
+					escaped.append("&gt;");
+					break;
+				case '&':
+					escaped.append("&amp;");
+					break;
+				case '"':
+					escaped.append("&quot;");
+					break;
+				default:
+					escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * ***************STATIC INNER CLASSES************************
+	 */
+	/**
+	 * Maps layout coordinates to SVG coordinates: equal scale on each
+	 * dimension, PAD pixels of border, y increasing up the image. In 3D the
+	 * z-axis is drawn at 45 degrees.
+	 */
+	private static class Projection {
+
+		private final double[] min = new double[DIMENSIONS];
+		private final double[] scale = new double[DIMENSIONS];
+		private final int height;
+
+		Projection(Layout layout, int width, int height) {
+			this.height = height;
+			double[] max = new double[DIMENSIONS];
+			double[] screen = new double[DIMENSIONS];
+			screen[0] = width;
+			screen[1] = height;
+			if (DIMENSIONS == 3) {
+				screen[2] = Math.min(screen[0], screen[1]) * Math.sqrt(2);
+			}
+			for (int k = 0; k < DIMENSIONS; k++) {
+				max[k] = -Double.MAX_VALUE;
+				min[k] = Double.MAX_VALUE;
+			}
+			for (int i = 0; i < layout.size(); i++) {
+				for (int k = 0; k < DIMENSIONS; k++) {
+					double coord = layout.getCoord(i, k);
+					max[k] = Math.max(max[k], coord);
+					min[k] = Math.min(min[k], coord);
+				}
+			}
+			double dif = 0;
+			for (int k = 0; k < DIMENSIONS; k++) {  //equal scale on each dim
+				dif = Math.max(dif, max[k] - min[k]);
+			}
+			for (int k = 0; k < DIMENSIONS; k++) {
+				scale[k] = (dif == 0) ? 0 : (screen[k] - 2 * PAD) / dif;
+			}
+		}
+
+		double x(Layout layout, int i) {
+			double x = PAD + (layout.getCoord(i, 0) - min[0]) * scale[0];
+			if (DIMENSIONS == 3) {
+				x += depth(layout, i);
+			}
+			return x;
+		}
+
+		double y(Layout layout, int i) {
+			double y = height - (PAD + (layout.getCoord(i, 1) - min[1])
+			* scale[1]);
+			if (DIMENSIONS == 3) {
+				y -= depth(layout, i);
+			}
+			return y;
+		}
+
+		private double depth(Layout layout, int i) {
+			return (layout.getCoord(i, 2) - min[2]) * scale[2] / Math.sqrt(2);
+		}
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * Render a coordinates file written by BatchMain (identifier, then
+	 * coordinates, tab separated; first line the reference term) to PNG or
+	 * SVG according to the output file's suffix.
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+		new FileInputStream(args[0]), UTF8));
+		Layout layout;
+		try {
+			layout = Layout.readCoordinates(reader);
+		} finally {
+			reader.close();
+		}
+		OutputStream out = new BufferedOutputStream(
+		new FileOutputStream(args[1]));
+		try {
+			if (args[1].endsWith(".svg")) {
+				new LayoutRenderer().writeSvg(layout, 700, 700, out);
+			} else {
+				new LayoutRenderer().writePng(layout, 700, 700, out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Sorted index of a layout's identifiers for incremental search. The
+ * identifiers, lower-cased, are sorted once; the terms starting with a prefix
+ * are then a contiguous run found by two binary searches, so each keystroke in
+ * a search box costs O(log n) plus the matches reported.
+ *
+ * Building sorts every identifier, so it should be done off the event
+ * dispatch thread. Once built an index is immutable and may be shared.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Case-insensitive prefix search over term identifiers.
+ */
+public class PrefixIndex {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final String[] keys;                        //sorted, lower case
+	private final int[] terms;                          //term of each key
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Index the identifiers of a layout
+	 */
+	public PrefixIndex(Layout layout) {
+		int n = layout.size();
+		final String[] lower = new String[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			lower[i] = layout.getIdentifier(i).toLowerCase(Locale.ROOT);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return lower[a].compareTo(lower[b]);
+			}
+		});
+		keys = new String[n];
+		terms = new int[n];
+		for (int k = 0; k < n; k++) {
+			keys[k] = lower[order[k]];
+			terms[k] = order[k];
+		}
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * Find the terms whose identifier starts with a prefix, ignoring case
+	 *
+	 * @param prefix text typed so far; empty matches nothing
+	 * @param result receives up to max term indices in identifier order; it
+	 *               is cleared first
+	 * @param max    most matches to report
+	 * @return number of terms matching, which may be more than reported
+	 */
+	public int find(String prefix, IntList result, int max) {
+		result.clear();
+		if (prefix.isEmpty()) {
+			return 0;
+		}
+		String key = prefix.toLowerCase(Locale.ROOT);
+		int lo = lowerBound(key);
+		int hi = lowerBound(key + Character.MAX_VALUE);
+		for (int k = lo; k < hi && k - lo < max; k++) {
+			result.add(terms[k]);
+		}
+		return hi - lo;
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * @return first position whose key is not less than key
+	 */
+	private int lowerBound(String key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid].compareTo(key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * What a drawing surface keeps from one frame to the next so that painting
+ * does not start from nothing each time: shaped labels, where labels were
+ * placed, and scratch arrays for the visible terms and label candidates.
+ * Nothing in it affects what is drawn except the label placer's memory, which
+ * keeps labels from jumping between positions while terms move slightly.
+ *
+ * A state belongs to one drawing surface (e.g. one PlotDistances panel) and
+ * must only be used by the thread painting it.
+ */
+package visualiser.distancemodel.render;
+
+/**
+ * Per-surface cache and scratch space for LayoutRenderer.
+ */
+public class RenderState {
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final LabelCache labels = new LabelCache();
+	private final LabelPlacer placer = new LabelPlacer();
+	private final IntList visible = new IntList();      //terms in view
+	private long[] candidates = new long[64];           //sort keys of labels
+	private float[] placedX = new float[64];            //centres of labels
+	private float[] placedY = new float[64];
+	private int[] placedTerm = new int[64];
+	private final float[] centre = new float[2];
+
+	/************************Accessors******************************/
+	LabelCache getLabels() {
+		return labels;
+	}
+
+	LabelPlacer getPlacer() {
+		return placer;
+	}
+
+	IntList getVisible() {
+		return visible;
+	}
+
+	float[] getCentre() {
+		return centre;
+	}
+
+	long[] getCandidates() {
+		return candidates;
+	}
+
+	float[] getPlacedX() {
+		return placedX;
+	}
+
+	float[] getPlacedY() {
+		return placedY;
+	}
+
+	int[] getPlacedTerm() {
+		return placedTerm;
+	}
+
+	/************************Mutators*******************************/
+	/**
+	 * Make room for a frame's label candidates and placed labels
+	 */
+	void reserve(int candidateCount, int labelCount) {
+		if (candidates.length < candidateCount) {
+			candidates = new long[Math.max(candidateCount,
+			candidates.length * 2)];
+		}
+		if (placedTerm.length < labelCount) {
+			int size = Math.max(labelCount, placedTerm.length * 2);
+			placedX = new float[size];
+			placedY = new float[size];
+			placedTerm = new int[size];
+		}
+	}
+}
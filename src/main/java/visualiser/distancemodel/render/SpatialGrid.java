@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Uniform grid over the plotted positions of a Layout, so that the terms in
+ * a rectangle can be found without looking at every term. Built in linear
+ * time by a counting sort of terms into cells (about CELL_OCCUPANCY terms per
+ * cell on average) held in two int arrays, so rebuilding it for every
+ * displayed animation frame is cheap.
+ *
+ * Positions are in plot coordinates (Viewport.planeX / planeY), which for
+ * 3D layouts include the oblique projection of the z-axis.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+
+/**
+ * Static spatial index of one layout frame.
+ */
+public class SpatialGrid {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	private static final int CELL_OCCUPANCY = 4;        //mean terms per cell
+	private static final int MAX_CELLS_PER_SIDE = 4096;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final Layout layout;
+	private final double[] x;                           //plot coordinates
+	private final double[] y;
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[] cellStart;                      //cell c: items[start..]
+	private final int[] items;                          //term indices by cell
+
+	/***********Constructors and Static Factory Methods*************/
+	/**
+	 * Index every term of a layout
+	 */
+	public SpatialGrid(Layout layout) {
+		this.layout = layout;
+		int n = layout.size();
+		x = new double[n];
+		y = new double[n];
+		double loX = Double.MAX_VALUE, loY = Double.MAX_VALUE;
+		double hiX = -Double.MAX_VALUE, hiY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			x[i] = Viewport.planeX(layout, i);
+			y[i] = Viewport.planeY(layout, i);
+			loX = Math.min(loX, x[i]);
+			hiX = Math.max(hiX, x[i]);
+			loY = Math.min(loY, y[i]);
+			hiY = Math.max(hiY, y[i]);
+		}
+		if (n == 0) {
+			loX = loY = hiX = hiY = 0;
+		}
+		minX = loX;
+		minY = loY;
+		maxX = hiX;
+		maxY = hiY;
+		double width = Math.max(hiX - loX, 1e-9);
+		double height = Math.max(hiY - loY, 1e-9);
+		double size = Math.sqrt(width * height * CELL_OCCUPANCY
+		/ Math.max(n, 1));
+		size = Math.max(size, Math.max(width, height) / MAX_CELLS_PER_SIDE);
+		cellSize = size;
+		columns = (int) (width / size) + 1;
+		rows = (int) (height / size) + 1;
+		//Counting sort of terms into cells
+		cellStart = new int[columns * rows + 1];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = cell(x[i], y[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		items = new int[n];
+		int[] fill = new int[columns * rows];
+		for (int i = 0; i < n; i++) {
+			int c = cellOf[i];
+			items[cellStart[c] + fill[c]++] = i;
+		}
+	}
+
+	/************************Accessors******************************/
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public double getX(int i) {
+		return x[i];
+	}
+
+	public double getY(int i) {
+		return y[i];
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Collect the terms inside a rectangle of plot coordinates
+	 *
+	 * @param result receives the term indices; it is cleared first
+	 */
+	public void query(double x0, double y0, double x1, double y1,
+	                  IntList result) {
+		result.clear();
+		if (x1 < minX || x0 > maxX || y1 < minY || y0 > maxY) {
+			return;
+		}
+		int c0 = column(Math.max(x0, minX));
+		int c1 = column(Math.min(x1, maxX));
+		int r0 = row(Math.max(y0, minY));
+		int r1 = row(Math.min(y1, maxY));
+		for (int r = r0; r <= r1; r++) {
+			boolean edgeRow = (r == r0 || r == r1);
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * columns + c;
+				boolean edge = edgeRow || c == c0 || c == c1;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int i = items[k];
+					if (!edge || (x[i] >= x0 && x[i] <= x1 && y[i] >= y0
+					&& y[i] <= y1)) {
+						result.add(i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Nearest term to a point within a radius
+	 *
+	 * @return term index, or -1 if none is that close
+	 */
+	public int nearest(double px, double py, double radius) {
+		if (items.length == 0) {
+			return -1;
+		}
+		int c0 = column(clamp(px - radius, minX, maxX));
+		int c1 = column(clamp(px + radius, minX, maxX));
+		int r0 = row(clamp(py - radius, minY, maxY));
+		int r1 = row(clamp(py + radius, minY, maxY));
+		int best = -1;
+		double bestDistance = radius * radius;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * columns + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int i = items[k];
+					double dx = x[i] - px;
+					double dy = y[i] - py;
+					double distance = dx * dx + dy * dy;
+					if (distance <= bestDistance) {
+						bestDistance = distance;
+						best = i;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/*********************Utility Methods***************************/
+	private int cell(double px, double py) {
+		return row(py) * columns + column(px);
+	}
+
+	private int column(double px) {
+		return Math.min(columns - 1, (int) ((px - minX) / cellSize));
+	}
+
+	private int row(double py) {
+		return Math.min(rows - 1, (int) ((py - minY) / cellSize));
+	}
+
+	private static double clamp(double value, double lo, double hi) {
+		return Math.max(lo, Math.min(hi, value));
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * Writes a layout as a pyramid of TILE_SIZE square PNG tiles, z/x/y.png, in
+ * the layout used by web map viewers: level z is the whole layout drawn
+ * 2^z tiles across, x counting from the left and y from the top. Level 0 is
+ * a single tile; level 8 is a 65536 pixel square picture.
+ *
+ * The picture of a level is never held in memory. The SpatialGrid of the
+ * layout is built once; each level's labels are placed once over the whole
+ * level (a LabelPlan, linear in the terms) so that tiles agree at their
+ * seams; then the tiles are drawn independently by a pool of workers, each
+ * looking only at the terms near its tile and reusing one tile sized image.
+ * Memory is therefore bounded by the number of terms and workers, not by the
+ * size of the picture. Only the tiles within a point or label's reach of
+ * some term are visited at all, so a deep level, mostly empty, costs in
+ * proportion to its terms rather than to its 4^z tiles.
+ *
+ * Labels get denser with depth: each level may label one term per
+ * LABEL_AREA pixels of its picture, space permitting, so deeper levels show
+ * more of the less important terms.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel z/x/y PNG tile pyramid export of a layout.
+ */
+public class TileExporter {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int TILE_SIZE = 256;            //pixels
+	public static final int MAX_ZOOM = 20;              //picture side in int
+	private static final double BORDER = 0.05;          //of the layout's size
+	private static final Color BACKGROUND = Color.WHITE;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private final LayoutRenderer renderer = new LayoutRenderer();
+	private int workers = Runtime.getRuntime().availableProcessors();
+
+	/************************Mutators*******************************/
+	public void setWorkers(int n) {
+		workers = Math.max(1, n);
+	}
+
+	/************************Accessors******************************/
+	/**
+	 * Write levels 0 to maxZoom of a layout's tile pyramid
+	 *
+	 * @param layout  the layout to draw
+	 * @param maxZoom deepest level
+	 * @param dir     directory to write z/x/y.png under
+	 * @return number of tiles written
+	 * @throws IOException if a tile cannot be written
+	 */
+	public long export(Layout layout, int maxZoom, File dir)
+	throws IOException, InterruptedException {
+		if (maxZoom < 0 || maxZoom > MAX_ZOOM) {
+			throw new IllegalArgumentException("Zoom levels 0 to " + MAX_ZOOM
+			+ " are supported, not " + maxZoom);
+		}
+		final SpatialGrid grid = new SpatialGrid(layout);
+		double size = Math.max(Math.max(grid.getMaxX() - grid.getMinX(),
+		grid.getMaxY() - grid.getMinY()), 1e-9) * (1 + 2 * BORDER);
+		final double left = (grid.getMinX() + grid.getMaxX() - size) / 2;
+		final double top = (grid.getMinY() + grid.getMaxY() + size) / 2;
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		long written = 0;
+		try {
+			for (int z = 0; z <= maxZoom; z++) {
+				final int tiles = 1 << z;               //per side
+				final double scale = (double) TILE_SIZE * tiles / size;
+				Viewport level = new Viewport();
+				level.setSize(TILE_SIZE * tiles, TILE_SIZE * tiles);
+				level.show(left, top - size, scale);
+				final LabelPlan plan = renderer.planLabels(grid, level);
+				double reach = Math.max(LayoutRenderer.POINT_SIZE,
+				plan.getReach());
+				final long[] occupied = occupiedTiles(grid, left, top, scale,
+				tiles, reach);
+				final File levelDir = new File(dir, Integer.toString(z));
+				final AtomicLong next = new AtomicLong();
+				List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+				for (int w = 0; w < workers; w++) {
+					tasks.add(new Callable<Long>() {
+						public Long call() throws IOException {
+							return drawTiles(grid, plan, left, top, scale,
+							tiles, occupied, next, levelDir);
+						}
+					});
+				}
+				for (Future<Long> result : pool.invokeAll(tasks)) {
+					written += result.get();
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return written;
+	}
+
+	/*********************Utility Methods***************************/
+	/**
+	 * Find the tiles of a level that something may be drawn in: those
+	 * within margin pixels of a term
+	 *
+	 * @param margin furthest a point or label is drawn from its term
+	 * @return tile numbers, y * tiles + x, ascending and without repeats
+	 */
+	private static long[] occupiedTiles(SpatialGrid grid, double left,
+	                                    double top, double scale, int tiles,
+	                                    double margin) {
+		int n = grid.getLayout().size();
+		long[] found = new long[Math.max(n, 1) * 4];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			double px = (grid.getX(i) - left) * scale;
+			double py = (top - grid.getY(i)) * scale;
+			int x0 = tile(px - margin, tiles);
+			int x1 = tile(px + margin, tiles);
+			int y0 = tile(py - margin, tiles);
+			int y1 = tile(py + margin, tiles);
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = (long) y * tiles + x;
+				}
+			}
+		}
+		Arrays.sort(found, 0, count);
+		int unique = 0;
+		for (int k = 0; k < count; k++) {
+			if (k == 0 || found[k] != found[k - 1]) {
+				found[unique++] = found[k];
+			}
+		}
+		return Arrays.copyOf(found, unique);
+	}
+
+	/**
+	 * @return the column or row of tiles holding a pixel coordinate
+	 */
+	private static int tile(double pixel, int tiles) {
+		return (int) Math.max(0, Math.min(tiles - 1,
+		Math.floor(pixel / TILE_SIZE)));
+	}
+
+	/**
+	 * Worker loop: draw and write tiles of one level, taking entries of the
+	 * occupied list from a shared counter until none are left
+	 *
+	 * @return number of tiles written
+	 */
+	private long drawTiles(SpatialGrid grid, LabelPlan plan, double left,
+	                       double top, double scale, int tiles,
+	                       long[] occupied, AtomicLong next, File levelDir)
+	throws IOException {
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+		BufferedImage.TYPE_INT_RGB);
+		Viewport view = new Viewport();
+		view.setSize(TILE_SIZE, TILE_SIZE);
+		IntList near = new IntList();
+		long written = 0;
+		for (long k = next.getAndIncrement(); k < occupied.length;
+		     k = next.getAndIncrement()) {
+			long t = occupied[(int) k];
+			int x = (int) (t % tiles);
+			int y = (int) (t / tiles);
+			view.show(left + (double) x * TILE_SIZE / scale,
+			top - (double) (y + 1) * TILE_SIZE / scale, scale);
+			Graphics2D g2 = image.createGraphics();
+			boolean drawn;
+			try {
+				g2.setPaint(BACKGROUND);
+				g2.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+				drawn = renderer.paintTile(grid, view, g2, plan, near);
+			} finally {
+				g2.dispose();
+			}
+			if (drawn) {
+				File column = new File(levelDir, Integer.toString(x));
+				if (!column.isDirectory() && !column.mkdirs()
+				&& !column.isDirectory()) {
+					throw new IOException("Cannot create " + column);
+				}
+				ImageIO.write(image, "png", new File(column, y + ".png"));
+				written++;
+			}
+		}
+		return written;
+	}
+
+	/************************TEST SUITE*****************************/
+	/**
+	 * Export a coordinates file written by BatchMain as a tile pyramid
+	 *
+	 * @param args coordinates file, output directory, deepest level, and
+	 *             optionally the number of worker threads
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 3) {
+			System.err.println("Usage: TileExporter coordinates outputDir"
+			+ " maxZoom [workers]");
+			System.exit(1);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+		new FileInputStream(args[0]), Charset.forName("UTF-8")));
+		Layout layout;
+		try {
+			layout = Layout.readCoordinates(reader);
+		} finally {
+			reader.close();
+		}
+		TileExporter exporter = new TileExporter();
+		if (args.length > 3) {
+			exporter.setWorkers(Integer.parseInt(args[3]));
+		}
+		long start = System.nanoTime();
+		long written = exporter.export(layout, Integer.parseInt(args[2]),
+		new File(args[1]));
+		System.out.println(written + " tiles of " + layout.size()
+		+ " terms written in " + (System.nanoTime() - start) / 1000000
+		+ " ms");
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2012, Jeremy Reffin, University of Sussex
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the University of Sussex nor the names of its
+ *    contributors may be used to endorse or promote products  derived from this
+ *    software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL JEREMY REFFIN OR THE UNIVERSITY OF SUSSEX
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY
+ * OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+ * The visible window onto a layout: which rectangle of plot coordinates is
+ * shown and at what scale. Starts "fitted" (the whole layout with a PAD
+ * border, equal scale on both axes, as the plot has always been drawn) and
+ * stays fitted, following the layout as it moves, until the user zooms or
+ * pans.
+ *
+ * Plot coordinates are the layout's first two coordinates, with the z-axis of
+ * a 3D layout drawn at 45 degrees. Screen y increases downwards.
+ */
+package visualiser.distancemodel.render;
+
+import visualiser.distancemodel.Layout;
+
+import static visualiser.distancemodel.GlobalParameters.DIMENSIONS;
+
+/**
+ * Zoomable, pannable mapping from plot to screen coordinates.
+ */
+public class Viewport {
+
+	/**
+	 * *********************CONSTANTS*****************************
+	 */
+	public static final int PAD = 80;                   //border when fitted
+	private static final double MAX_SCALE = 1e9;
+
+	/**
+	 * **********************FIELDS*******************************
+	 */
+	private int width;                                  //screen size
+	private int height;
+	private double scale = 1;                           //pixels per unit
+	private double left;                                //plot x at screen 0
+	private double bottom;                              //plot y at screen height
+	private boolean fitted = true;
+
+	/************************Accessors******************************/
+	public static double planeX(Layout layout, int i) {
+		double x = layout.getCoord(i, 0);
+		if (DIMENSIONS == 3) {
+			x += layout.getCoord(i, 2) / Math.sqrt(2);
+		}
+		return x;
+	}
+
+	public static double planeY(Layout layout, int i) {
+		double y = layout.getCoord(i, 1);
+		if (DIMENSIONS == 3) {
+			y += layout.getCoord(i, 2) / Math.sqrt(2);
+		}
+		return y;
+	}
+
+	public double toScreenX(double x) {
+		return (x - left) * scale;
+	}
+
+	public double toScreenY(double y) {
+		return height - (y - bottom) * scale;
+	}
+
+	public double toPlotX(double screenX) {
+		return left + screenX / scale;
+	}
+
+	public double toPlotY(double screenY) {
+		return bottom + (height - screenY) / scale;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return pixels per plot unit
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	public boolean isFitted() {
+		return fitted;
+	}
+
+	/************************Mutators*******************************/
+	public void setSize(int w, int h) {
+		width = w;
+		height = h;
+	}
+
+	/**
+	 * Show the whole of the indexed layout with a PAD border, and keep doing
+	 * so on later calls to follow
+	 */
+	public void fit(SpatialGrid grid) {
+		fitted = true;
+		follow(grid);
+	}
+
+	/**
+	 * Refit to a new frame if the view has not been moved by hand
+	 */
+	public void follow(SpatialGrid grid) {
+		if (!fitted) {
+			return;
+		}
+		double dif = Math.max(grid.getMaxX() - grid.getMinX(),
+		grid.getMaxY() - grid.getMinY());
+		double room = Math.min(width, height) - 2 * PAD;
+		scale = (dif > 0 && room > 0) ? room / dif : 1;
+		left = grid.getMinX() - PAD / scale;
+		bottom = grid.getMinY() - PAD / scale;
+	}
+
+	/**
+	 * Show a given region: plot point (x, y) at the bottom left corner of
+	 * the screen, at a given scale
+	 *
+	 * @param scale pixels per plot unit
+	 */
+	public void show(double x, double y, double scale) {
+		left = x;
+		bottom = y;
+		this.scale = scale;
+		fitted = false;
+	}
+
+	/**
+	 * Zoom by a factor keeping the plot point under (screenX, screenY) still
+	 */
+	public void zoom(double factor, double screenX, double screenY) {
+		double x = toPlotX(screenX);
+		double y = toPlotY(screenY);
+		scale = Math.min(scale * factor, MAX_SCALE);
+		left = x - screenX / scale;
+		bottom = y - (height - screenY) / scale;
+		fitted = false;
+	}
+
+	/**
+	 * Move the view by a number of pixels
+	 */
+	public void pan(double dx, double dy) {
+		left -= dx / scale;
+		bottom += dy / scale;
+		fitted = false;
+	}
+}
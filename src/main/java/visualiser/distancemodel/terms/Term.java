@@ -172,6 +172,14 @@ public class Term implements TermI {
 		internalClock = c;
 	}
 
+	/**
+	 * @param a new index in the model's arrays, e.g. after another term is
+	 *          removed
+	 */
+	public void setArray(int a) {
+		arrayIndex = a;
+	}
+
 	/**
 	 * Advance one time tick and change settings accordingly
 	 */
@@ -264,7 +272,7 @@ public class Term implements TermI {
 	 * Constructor utility method. Set up fields
 	 */
 	private void setUp(int a, String i, double[] xy) {
-		identifier = cleanIdentifier(i);
+		identifier = toLabel(i);
 		arrayIndex = a;
 		beforePosition = new Coordinate(dimensions, xy);
 		afterPosition = new Coordinate(dimensions, xy);
@@ -275,7 +283,10 @@ public class Term implements TermI {
 		include = true;
 	}
 
-	private String cleanIdentifier(String i) {
+	/**
+	 * @return display form of an identifier: "tim_lewis" is "Tim Lewis"
+	 */
+	public static String toLabel(String i) {
 		if (!i.equals("")) {
 			return toTitleCase(i.replaceAll("_", " "));
 		} else {
@@ -283,21 +294,19 @@ public class Term implements TermI {
 		}
 	}
 
-	public String toTitleCase(String input) {
-		char[] letters = input.toCharArray();
-		String output = "";
-		String strThisLetter = "";
-		String strPreviousLetter = " ";
-		for (char letter : letters) {
-			strThisLetter = Character.toString(letter);
-			if (strPreviousLetter.equals(" ")) {
-				output += strThisLetter.toUpperCase();
+	public static String toTitleCase(String input) {
+		StringBuilder output = new StringBuilder(input.length());
+		char previousLetter = ' ';
+		for (int i = 0; i < input.length(); i++) {
+			char letter = input.charAt(i);
+			if (previousLetter == ' ') {
+				output.append(Character.toUpperCase(letter));
 			} else {
-				output += strThisLetter;
+				output.append(letter);
 			}
-			strPreviousLetter = strThisLetter;
+			previousLetter = letter;
 		}
-		return output;
+		return output.toString();
 	}
 
 	/**